@@ -19,7 +19,12 @@
 package ch.securify;
 
 import ch.securify.analysis.AbstractDataflow;
+import ch.securify.analysis.CoreBudget;
+import ch.securify.analysis.Dataflow;
 import ch.securify.analysis.DataflowFactory;
+import ch.securify.analysis.FixpointCache;
+import ch.securify.analysis.QueryPlan;
+import ch.securify.analysis.UnknownDataflow;
 import ch.securify.decompiler.*;
 import ch.securify.decompiler.instructions.Instruction;
 import ch.securify.decompiler.instructions._VirtualMethodHead;
@@ -39,6 +44,7 @@ import java.lang.reflect.Modifier;
 import java.nio.file.Files;
 import java.nio.file.Paths;
 import java.util.*;
+import java.util.function.IntConsumer;
 import java.util.stream.Collectors;
 
 import static ch.securify.CompilationHelpers.parseCompilationOutput;
@@ -74,6 +80,12 @@ public class Main {
         @Parameter(names = {"--decompoutputfile"}, description = "output file for the decompiled code")
         private String decompoutputfile;
 
+        @Parameter(names = {"--iroutputfile"}, description = "output file for the decompiled code in binary form, see --irfile")
+        private String iroutputfile;
+
+        @Parameter(names = {"--irfile"}, description = "decompiled contract written with --iroutputfile, to analyze instead of a contract binary")
+        private String irfile;
+
         @Parameter(names = {"-v", "--verbose"}, description = "provide verbose output")
         private boolean verbose;
 
@@ -88,6 +100,39 @@ public class Main {
 
         @Parameter(names = {"--solc-path"}, description = "specify the path of the solc binary")
         private String solcPath = "solc";
+
+        @Parameter(names = {"--dataflow"}, description = "dataflow backend: default (Soufflé binaries) or inmemory")
+        private String dataflow;
+
+        @Parameter(names = {"--batchmethods"}, description = "compute the dataflows of all method bodies in a single fixpoint run")
+        private boolean batchMethods;
+
+        @Parameter(names = {"--decompcache"}, description = "directory of the cache of decompiled contracts")
+        private String decompCache;
+
+        @Parameter(names = {"--decompcachesize"}, description = "size limit of the cache of decompiled contracts, in MB")
+        private long decompCacheSize = 1024;
+
+        @Parameter(names = {"--fixpointcache"}, description = "directory of the cache of dataflow fixpoints")
+        private String fixpointCache;
+
+        @Parameter(names = {"--fixpointcachesize"}, description = "size limit of the cache of dataflow fixpoints, in MB")
+        private long fixpointCacheSize = 1024;
+
+        @Parameter(names = {"--methodcache"}, description = "directory of the cache of pattern results on method bodies")
+        private String methodCache;
+
+        @Parameter(names = {"--methodcachesize"}, description = "size limit of the cache of pattern results on method bodies, in MB")
+        private long methodCacheSize = 1024;
+
+        @Parameter(names = {"--offheapthreshold"}, description = "number of tuples above which an output relation is stored in a memory-mapped file instead of the heap")
+        private int offHeapThreshold = DataflowFactory.getOffHeapThreshold();
+
+        @Parameter(names = {"--cores"}, description = "number of cores shared by the Soufflé evaluations")
+        private int cores = DataflowFactory.getCoreBudget().getCores();
+
+        @Parameter(names = {"--soufflejobs"}, description = "maximum number of threads of one Soufflé evaluation, or 0 for its share of the cores")
+        private int souffleJobs = 0;
     }
 
     private static List<AbstractPattern> patterns;
@@ -95,6 +140,8 @@ public class Main {
     private static PrintStream log = new DevNullPrintStream();
     private static PrintStream progressPrinter = System.out;
     private static Args args;
+    private static DecompilationCache decompilationCache;
+    private static MethodResultCache methodResultCache;
 
 
     public static TreeMap<String, SolidityResult> processSolidityFile(String solcPath, String filesol, String livestatusfile) throws IOException, InterruptedException {
@@ -129,7 +176,7 @@ public class Main {
             Files.write(Paths.get(binFile.getPath()), lines);
 
             try {
-                processHexFile(binFile.getPath(), null, livestatusfile);
+                processHexFile(binFile.getPath(), null, null, livestatusfile);
             } catch(Exception e) {
                 e.printStackTrace();
                 System.err.println("Error, skipping: " + elt.getKey());
@@ -146,7 +193,7 @@ public class Main {
     }
 
 
-    private static void processHexFile(String hexBinaryFile, String decompilationOutputFile, String livestatusfile) throws IOException, InterruptedException {
+    private static void processHexFile(String hexBinaryFile, String decompilationOutputFile, String irOutputFile, String livestatusfile) throws IOException, InterruptedException {
         if (!new File(hexBinaryFile).exists()) {
             throw new IllegalArgumentException("File '" + hexBinaryFile + "' not found");
         }
@@ -155,8 +202,28 @@ public class Main {
         byte[] bin = CompilationHelpers.extractBinaryFromHexFile(hexBinaryFile);
 
         contractResult = new ContractResult();
+
+        // patterns that cannot match any instruction of the contract are not checked
+        OpcodeHistogram opcodes = new OpcodeHistogram(bin);
+        List<AbstractPattern> checkedPatterns = new ArrayList<>();
+        for (AbstractPattern pattern : patterns) {
+            PatternResult status = new PatternResult();
+            contractResult.patternResults.put(pattern.getClass().getSimpleName(), status);
+            if (pattern.mayMatch(opcodes)) {
+                checkedPatterns.add(pattern);
+            } else {
+                status.completed = true;
+                contractResult.prescreenedPatterns.add(pattern.getClass().getSimpleName());
+            }
+        }
         updateContractAnalysisStatus(livestatusfile);
 
+        if (checkedPatterns.isEmpty() && decompilationOutputFile == null && irOutputFile == null) {
+            progressPrinter.println("  No pattern can match the opcodes of the contract, skipping decompilation.");
+            finishContractResult(livestatusfile);
+            return;
+        }
+
         List<Instruction> instructions;
 
         try {
@@ -180,9 +247,42 @@ public class Main {
             updateContractAnalysisStatus(livestatusfile);
         }
 
+        if (irOutputFile != null) {
+            new File(irOutputFile).getAbsoluteFile().getParentFile().mkdirs();
+            InstructionSerializer.write(instructions, new File(irOutputFile));
+        }
+
+        verifyPatterns(instructions, checkedPatterns, livestatusfile);
+    }
+
+    private static void processIrFile(String irFile, String livestatusfile) throws IOException, InterruptedException {
+        if (!new File(irFile).exists()) {
+            throw new IllegalArgumentException("File '" + irFile + "' not found");
+        }
+
+        contractResult = new ContractResult();
+        patterns.forEach(pattern -> contractResult.patternResults.put(pattern.getClass().getSimpleName(), new PatternResult()));
+        updateContractAnalysisStatus(livestatusfile);
+
+        List<Instruction> instructions;
+
+        try {
+            instructions = InstructionSerializer.read(new File(irFile));
+        } catch(Exception e) {
+            handleSecurifyError("decompilation_error", e);
+            finishContractResult(livestatusfile);
+            throw e;
+        }
+
+        contractResult.decompiled = true;
+
+        verifyPatterns(instructions, patterns, livestatusfile);
+    }
+
+    private static void verifyPatterns(List<Instruction> instructions, List<AbstractPattern> patterns, String livestatusfile) throws IOException, InterruptedException {
         progressPrinter.println("  Verifying patterns...");
         try {
-            checkPatterns(instructions, livestatusfile);
+            checkPatterns(instructions, patterns, livestatusfile);
         } catch(Exception e) {
             handleSecurifyError("pattern_error", e);
             throw e;
@@ -220,6 +320,18 @@ public class Main {
             progressPrinter = new DevNullPrintStream();
         }
 
+        DataflowFactory.setDataflowInstanceClass(args.dataflow);
+        DataflowFactory.setOffHeapThreshold(args.offHeapThreshold);
+        DataflowFactory.setCoreBudget(new CoreBudget(args.cores, args.souffleJobs));
+
+        // the caches of a previous call are not kept
+        decompilationCache = args.decompCache == null ? null :
+                new DecompilationCache(new File(args.decompCache), args.decompCacheSize * 1024 * 1024);
+        DataflowFactory.setFixpointCache(args.fixpointCache == null ? null :
+                new FixpointCache(new File(args.fixpointCache), args.fixpointCacheSize * 1024 * 1024));
+        methodResultCache = args.methodCache == null ? null :
+                new MethodResultCache(new File(args.methodCache), args.methodCacheSize * 1024 * 1024, args.dataflow);
+
         initPatterns(args);
 
         File lStatusFile;
@@ -266,11 +378,16 @@ public class Main {
                 OutputGenerator.print(allContractsResults);
             }
 
+            printCacheStatistics();
             return;
         }
 
         if (args.filehex != null) {
-            processHexFile(args.filehex, args.decompoutputfile, livestatusfile);
+            processHexFile(args.filehex, args.decompoutputfile, args.iroutputfile, livestatusfile);
+            printCacheStatistics();
+        } else if (args.irfile != null) {
+            processIrFile(args.irfile, livestatusfile);
+            printCacheStatistics();
         } else {
             new JCommander(args).usage();
             return;
@@ -284,6 +401,14 @@ public class Main {
      * @return decompiled instructions
      */
     public static List<Instruction> decompileContract(byte[] binary) {
+        if (decompilationCache != null) {
+            List<Instruction> instructions = decompilationCache.get(binary);
+            if (instructions != null) {
+                progressPrinter.println("  Found the decompiled contract in the cache.");
+                return instructions;
+            }
+        }
+
         List<Instruction> instructions;
         try {
             progressPrinter.println("  Attempt to decompile the contract with methods...");
@@ -310,9 +435,30 @@ public class Main {
         log.println("Decompiled contract:");
         DecompilationPrinter.printInstructions(instructions, log);
 
+        if (decompilationCache != null) {
+            try {
+                decompilationCache.put(binary, instructions);
+            } catch (IOException e) {
+                log.println("Failed to cache the decompiled contract: " + e.getMessage());
+            }
+        }
+
         return instructions;
     }
 
+    private static void printCacheStatistics() {
+        if (decompilationCache != null) {
+            progressPrinter.println("Decompilation cache: " + decompilationCache.getHits() + " hits, " + decompilationCache.getMisses() + " misses");
+        }
+        FixpointCache fixpointCache = DataflowFactory.getFixpointCache();
+        if (fixpointCache != null) {
+            progressPrinter.println("Fixpoint cache: " + fixpointCache.getHits() + " hits, " + fixpointCache.getMisses() + " misses");
+        }
+        if (methodResultCache != null) {
+            progressPrinter.println("Method result cache: " + methodResultCache.getHits() + " hits, " + methodResultCache.getMisses() + " misses");
+        }
+    }
+
     private static void initPatterns(Args args) {
         patterns = new LinkedList<>();
 
@@ -357,18 +503,21 @@ public class Main {
         }
 
         SolidityResult.setPatternDescriptions(patterns);
+
+        // only derive the precedence relations for the queries of the selected patterns
+        QueryPlan queryPlan = new QueryPlan();
+        patterns.forEach(pattern -> pattern.declareQueries(queryPlan));
+        DataflowFactory.setQueryPlan(queryPlan);
     }
 
     /**
      * Analyze a contract with patterns.
      *
      * @param instructions decompiled contract instructions
+     * @param patterns patterns to check
      * @return Map patterns to the match result.
      */
-    private static void checkPatterns(List<Instruction> instructions, String livestatusfile) throws IOException, InterruptedException {
-        patterns.forEach(pattern -> contractResult.patternResults.put(pattern.getClass().getSimpleName(), new PatternResult()));
-        updateContractAnalysisStatus(livestatusfile);
-
+    private static void checkPatterns(List<Instruction> instructions, List<AbstractPattern> patterns, String livestatusfile) throws IOException, InterruptedException {
         boolean methodsDecompiled = (instructions.stream().anyMatch(instruction -> instruction instanceof _VirtualMethodHead));
 
         if (!methodsDecompiled) {
@@ -394,18 +543,55 @@ public class Main {
             dataflow.dispose();
         } else {
             // split instructions into methods and check them independently
-            for (List<Instruction> body : splitInstructionsIntoMethods(instructions)) {
+            List<List<Instruction>> bodies = new ArrayList<>(splitInstructionsIntoMethods(instructions));
+
+            // patterns to check on each body, the others have their results in the method result cache
+            Map<List<Instruction>, Map<AbstractPattern, String>> uncachedPatterns = new IdentityHashMap<>();
+            for (List<Instruction> body : bodies) {
+                uncachedPatterns.put(body, lookupMethodResults(body, instructions, patterns, livestatusfile));
+            }
+
+            // bodies on which no pattern can match are checked without computing their dataflow
+            List<List<Instruction>> analyzedBodies = new ArrayList<>();
+            for (List<Instruction> body : bodies) {
+                if (needsDataflow(body, uncachedPatterns.get(body).keySet())) {
+                    analyzedBodies.add(body);
+                }
+            }
+            contractResult.methodBodies += bodies.size();
+            contractResult.skippedMethodBodies += bodies.size() - analyzedBodies.size();
+
+            Iterator<AbstractDataflow> bodyDataflows = null;
+            if (args != null && args.batchMethods) {
+                log.println("Computing dataflow fixpoints over " + analyzedBodies.size() + " of " + bodies.size() + " method bodies...");
+                bodyDataflows = DataflowFactory.getDataflows(analyzedBodies).iterator();
+            }
+            int nextAnalyzed = 0;
+            for (List<Instruction> body : bodies) {
                 log.println("Analyzing method with " + body.size() + " instructions:");
                 DecompilationPrinter.printInstructions(body, log);
 
-                log.println("Computing dataflow fixpoint over the method body...");
-                AbstractDataflow bodyDataflow = DataflowFactory.getDataflow(body);
-                for (AbstractPattern pattern : patterns) {
-                    if (!(pattern instanceof AbstractInstructionPattern))
-                        continue;
-
+                AbstractDataflow bodyDataflow = null;
+                if (nextAnalyzed < analyzedBodies.size() && analyzedBodies.get(nextAnalyzed) == body) {
+                    nextAnalyzed++;
+                    if (bodyDataflows != null) {
+                        bodyDataflow = bodyDataflows.next();
+                    } else {
+                        log.println("Computing dataflow fixpoint over the method body...");
+                        bodyDataflow = DataflowFactory.getDataflow(body);
+                    }
+                } else {
+                    log.println("No pattern can match the method body, skipping its dataflow");
+                    bodyDataflow = new UnknownDataflow(body);
+                }
+                for (Map.Entry<AbstractPattern, String> uncachedPattern : uncachedPatterns.get(body).entrySet()) {
+                    AbstractPattern pattern = uncachedPattern.getKey();
                     try {
-                        checkInstructions(body, instructions, pattern, bodyDataflow, livestatusfile);
+                        int[] resultCounts = {pattern.getViolations().size(), pattern.getWarnings().size(),
+                                pattern.getSafe().size(), pattern.getConflicts().size()};
+                        if (checkInstructions(body, instructions, pattern, bodyDataflow, livestatusfile) && uncachedPattern.getValue() != null) {
+                            storeMethodResult(uncachedPattern.getValue(), body, pattern, resultCounts);
+                        }
                     } catch (Exception e) {
                         handleSecurifyError("check_pattern_" + pattern.getClass().getName(), e);
                         e.printStackTrace();
@@ -414,6 +600,9 @@ public class Main {
                 bodyDataflow.dispose();
             }
 
+            if (patterns.stream().noneMatch(pattern -> pattern instanceof AbstractContractPattern))
+                return;
+
             log.println("Computing global dataflow fixpoint over the entire contract...");
             AbstractDataflow globalDataflow = DataflowFactory.getDataflow(instructions);
             for (AbstractPattern pattern : patterns) {
@@ -431,35 +620,109 @@ public class Main {
         }
     }
 
+    /**
+     * @param body instructions of a method body
+     * @param patterns patterns to check
+     * @return true if one of the instruction patterns may match in the body, so that its dataflow is needed
+     */
+    private static boolean needsDataflow(List<Instruction> body, Collection<AbstractPattern> patterns) {
+        for (AbstractPattern pattern : patterns) {
+            if (pattern instanceof AbstractInstructionPattern && ((AbstractInstructionPattern) pattern).needsDataflow(body))
+                return true;
+        }
+        return false;
+    }
+
+    /**
+     * Report the cached results of the instruction patterns on a method body.
+     * @param body instructions of a method body
+     * @param contractInstructions instructions of the contract
+     * @param patterns patterns to check
+     * @return the instruction patterns whose results are not cached, in order, with the keys to store
+     * their results under (null without cache)
+     */
+    private static Map<AbstractPattern, String> lookupMethodResults(List<Instruction> body, List<Instruction> contractInstructions, List<AbstractPattern> patterns, String livestatusfile) throws IOException {
+        Map<AbstractPattern, String> uncached = new LinkedHashMap<>();
+        byte[] bodyHash = methodResultCache != null ? methodResultCache.hashBody(body) : null;
+        List<Instruction> indexedBody = new ArrayList<>(body);
+        for (AbstractPattern pattern : patterns) {
+            if (!(pattern instanceof AbstractInstructionPattern))
+                continue;
+
+            if (methodResultCache == null) {
+                uncached.put(pattern, null);
+                continue;
+            }
+            String key = methodResultCache.getKey(bodyHash, (AbstractInstructionPattern) pattern, contractInstructions);
+            MethodResultCache.Result result = methodResultCache.get(key);
+            if (result == null) {
+                uncached.put(pattern, key);
+                continue;
+            }
+            log.println("Found the results of " + pattern.getClass().getSimpleName() + " on the method body in the cache");
+            PatternResult status = contractResult.patternResults.get(pattern.getClass().getSimpleName());
+            status.completed = true;
+            addResults(result.getViolations(indexedBody), status::addViolation);
+            addResults(result.getWarnings(indexedBody), status::addWarning);
+            addResults(result.getSafe(indexedBody), status::addSafe);
+            addResults(result.getConflicts(indexedBody), status::addConflict);
+            updateContractAnalysisStatus(livestatusfile);
+        }
+        return uncached;
+    }
+
+    /**
+     * Store the results a pattern reported on a method body since it had reported the given number of results.
+     */
+    private static void storeMethodResult(String key, List<Instruction> body, AbstractPattern pattern, int[] resultCounts) {
+        try {
+            methodResultCache.put(key, new MethodResultCache.Result(body,
+                    tail(pattern.getViolations(), resultCounts[0]), tail(pattern.getWarnings(), resultCounts[1]),
+                    tail(pattern.getSafe(), resultCounts[2]), tail(pattern.getConflicts(), resultCounts[3])));
+        } catch (IOException | IllegalArgumentException e) {
+            log.println("Failed to cache the results of " + pattern.getClass().getSimpleName() + ": " + e.getMessage());
+        }
+    }
 
-    private static void checkInstructions(List<Instruction> methodInstructions, List<Instruction> contractInstructions, AbstractPattern pattern, AbstractDataflow dataflow, String livestatusfile) {
+    private static List<Instruction> tail(Collection<Instruction> instructions, int from) {
+        return new ArrayList<>(instructions).subList(from, instructions.size());
+    }
+
+    private static void addResults(Collection<Instruction> instructions, IntConsumer status) {
+        instructions.stream()
+                .filter(instruction -> instruction.getRawInstruction() != null)
+                .forEach(instruction -> status.accept(instruction.getRawInstruction().instrNumber));
+    }
+
+    /**
+     * @return false if checking the pattern failed
+     */
+    private static boolean checkInstructions(List<Instruction> methodInstructions, List<Instruction> contractInstructions, AbstractPattern pattern, AbstractDataflow dataflow, String livestatusfile) {
         log.println();
 
         PatternResult status = contractResult.patternResults.get(pattern.getClass().getSimpleName());
 
         log.println("Checking pattern " + pattern.getClass().getSimpleName() + ": ");
 
+        if (dataflow instanceof Dataflow) {
+            ((Dataflow) dataflow).setQueryStatistics(status.queryStatistics);
+        }
+
+        boolean checked = true;
         try {
             pattern.checkPattern(methodInstructions, contractInstructions, dataflow);
         } catch (Exception e) {
+            checked = false;
             status.error = e instanceof UnsupportedOperationException ? "not supported" : "analysis failed";
             handleSecurifyError("check_instructions" + pattern.getClass().getName(), e);
             e.printStackTrace();
         }
 
         status.completed = true;
-        pattern.getViolations().stream()
-                .filter(instruction -> instruction.getRawInstruction() != null)
-                .forEach(instruction -> status.addViolation(instruction.getRawInstruction().instrNumber));
-        pattern.getWarnings().stream()
-                .filter(instruction -> instruction.getRawInstruction() != null)
-                .forEach(instruction -> status.addWarning(instruction.getRawInstruction().instrNumber));
-        pattern.getSafe().stream()
-                .filter(instruction -> instruction.getRawInstruction() != null)
-                .forEach(instruction -> status.addSafe(instruction.getRawInstruction().instrNumber));
-        pattern.getConflicts().stream()
-                .filter(instruction -> instruction.getRawInstruction() != null)
-                .forEach(instruction -> status.addConflict(instruction.getRawInstruction().instrNumber));
+        addResults(pattern.getViolations(), status::addViolation);
+        addResults(pattern.getWarnings(), status::addWarning);
+        addResults(pattern.getSafe(), status::addSafe);
+        addResults(pattern.getConflicts(), status::addConflict);
 
         log.println("\tViolations:" + pattern.getViolations().stream().map(Object::toString).collect(Collectors.joining("\n\t\t")));
         log.println("\tWarnings: " + pattern.getWarnings().stream().map(Object::toString).collect(Collectors.joining("\n\t\t")));
@@ -468,6 +731,7 @@ public class Main {
         log.println();
 
         updateContractAnalysisStatus(livestatusfile);
+        return checked;
     }
 
     public static List<List<Instruction>> splitInstructionsIntoMethods(List<Instruction> instructions) {
@@ -0,0 +1,246 @@
+/*
+ *  Copyright 2018 Secure, Reliable, and Intelligent Systems Lab, ETH Zurich
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+
+package ch.securify;
+
+import ch.securify.analysis.AbstractDataflow;
+import ch.securify.analysis.Dataflow;
+import ch.securify.analysis.FactBase;
+import ch.securify.analysis.Fixpoint;
+import ch.securify.analysis.FixpointCache;
+import ch.securify.analysis.GuardIndex;
+import ch.securify.analysis.InMemoryDataflow;
+import ch.securify.analysis.MayImplicitDataflow;
+import ch.securify.analysis.MustExplicitDataflow;
+import ch.securify.analysis.QueryPlan;
+import ch.securify.analysis.ReachabilityIndex;
+import ch.securify.analysis.TupleEncoding;
+import ch.securify.analysis.UnknownDataflow;
+import ch.securify.analysis.datalog.MayImplicitProgram;
+import ch.securify.analysis.datalog.MustExplicitProgram;
+import ch.securify.decompiler.InstructionSerializer;
+import ch.securify.decompiler.instructions.Instruction;
+import ch.securify.patterns.AbstractInstructionPattern;
+import ch.securify.utils.DevNull;
+import ch.securify.utils.FileCache;
+
+import java.io.*;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.util.*;
+
+/**
+ * On-disk cache of the results of the instruction patterns on method bodies, keyed by the hash of the
+ * normalized body (see {@link InstructionSerializer#writeNormalized(List, DataOutputStream)}), the
+ * pattern and the contract context of the pattern. Contracts sharing code, e.g. library methods or
+ * redeployed contracts, reuse the results of the bodies analyzed before.
+ *
+ * The code of the patterns and of the dataflow analysis is part of the key, so that changing them
+ * invalidates the cached results. So are the Datalog programs of the dataflow backend, i.e. the Soufflé
+ * binaries or the classes of the in-JVM evaluators (see {@link FixpointCache#getProgramHash}).
+ */
+public class MethodResultCache {
+
+    // version of the entry format
+    private static final int VERSION = 1;
+
+    private static final List<Class<?>> ANALYSIS_CLASSES = Arrays.asList(AbstractDataflow.class, Dataflow.class,
+            InMemoryDataflow.class, MayImplicitDataflow.class, MustExplicitDataflow.class, UnknownDataflow.class,
+            FactBase.class, Fixpoint.class, TupleEncoding.class, QueryPlan.class, ReachabilityIndex.class,
+            GuardIndex.class);
+
+    private final FileCache cache;
+    private final String dataflow;
+    private final Map<Class<?>, byte[]> patternHashes = new HashMap<>();
+
+    /**
+     * Results of a pattern on a method body, as indices of the instructions in the body.
+     */
+    public static class Result {
+        final int[] violations;
+        final int[] warnings;
+        final int[] safe;
+        final int[] conflicts;
+
+        private Result(int[] violations, int[] warnings, int[] safe, int[] conflicts) {
+            this.violations = violations;
+            this.warnings = warnings;
+            this.safe = safe;
+            this.conflicts = conflicts;
+        }
+
+        /**
+         * @throws IllegalArgumentException if a reported instruction is not in the body
+         */
+        public Result(List<Instruction> body, Collection<Instruction> violations, Collection<Instruction> warnings,
+                      Collection<Instruction> safe, Collection<Instruction> conflicts) {
+            Map<Instruction, Integer> indices = new IdentityHashMap<>();
+            int index = 0;
+            for (Instruction instr : body) {
+                indices.putIfAbsent(instr, index++);
+            }
+            this.violations = toIndices(violations, indices);
+            this.warnings = toIndices(warnings, indices);
+            this.safe = toIndices(safe, indices);
+            this.conflicts = toIndices(conflicts, indices);
+        }
+
+        public List<Instruction> getViolations(List<Instruction> body) {
+            return toInstructions(violations, body);
+        }
+
+        public List<Instruction> getWarnings(List<Instruction> body) {
+            return toInstructions(warnings, body);
+        }
+
+        public List<Instruction> getSafe(List<Instruction> body) {
+            return toInstructions(safe, body);
+        }
+
+        public List<Instruction> getConflicts(List<Instruction> body) {
+            return toInstructions(conflicts, body);
+        }
+
+        private static int[] toIndices(Collection<Instruction> instructions, Map<Instruction, Integer> indices) {
+            int[] result = new int[instructions.size()];
+            int i = 0;
+            for (Instruction instr : instructions) {
+                Integer index = indices.get(instr);
+                if (index == null)
+                    throw new IllegalArgumentException("instruction " + instr + " is not in the method body");
+                result[i++] = index;
+            }
+            return result;
+        }
+
+        private static List<Instruction> toInstructions(int[] indices, List<Instruction> body) {
+            List<Instruction> result = new ArrayList<>();
+            for (int index : indices) {
+                result.add(body.get(index));
+            }
+            return result;
+        }
+    }
+
+    /**
+     * @param directory directory of the cache files, created if needed
+     * @param maxBytes size limit of the cache files
+     * @param dataflow name of the dataflow backend, see {@link ch.securify.analysis.DataflowFactory#setDataflowInstanceClass(String)}
+     */
+    public MethodResultCache(File directory, long maxBytes, String dataflow) throws IOException {
+        cache = new FileCache(directory, ".method.gz", maxBytes);
+        this.dataflow = dataflow == null ? "" : dataflow.toLowerCase();
+    }
+
+    /**
+     * @param body instructions of a method body
+     * @return hash of the normalized body, to combine with the patterns in {@link #getKey}
+     */
+    public byte[] hashBody(List<Instruction> body) throws IOException {
+        MessageDigest digest = FileCache.newDigest();
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new DigestOutputStream(new DevNull(), digest)))) {
+            InstructionSerializer.writeNormalized(body, out);
+        }
+        return digest.digest();
+    }
+
+    /**
+     * @param bodyHash hash of the method body, see {@link #hashBody(List)}
+     * @param pattern pattern checked on the body
+     * @param contractInstructions instructions of the contract of the body
+     * @return key of the results of the pattern on the body
+     */
+    public String getKey(byte[] bodyHash, AbstractInstructionPattern pattern, List<Instruction> contractInstructions) throws IOException {
+        MessageDigest digest = FileCache.newDigest();
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new DigestOutputStream(new DevNull(), digest)))) {
+            out.writeInt(VERSION);
+            out.writeUTF(dataflow);
+            out.write(getCodeHash(pattern.getClass()));
+            out.writeUTF(pattern.getClass().getName());
+            String context = pattern.getContractContext(contractInstructions);
+            out.writeBoolean(context != null);
+            if (context != null) {
+                out.writeUTF(context);
+            }
+            out.write(bodyHash);
+        }
+        return FileCache.toKey(digest);
+    }
+
+    /**
+     * @return the results, or null if they are not in the cache
+     */
+    public Result get(String key) {
+        return cache.get(key, in -> new Result(readIndices(in), readIndices(in), readIndices(in), readIndices(in)));
+    }
+
+    public void put(String key, Result result) throws IOException {
+        cache.put(key, out -> {
+            writeIndices(result.violations, out);
+            writeIndices(result.warnings, out);
+            writeIndices(result.safe, out);
+            writeIndices(result.conflicts, out);
+        });
+    }
+
+    public int getHits() {
+        return cache.getHits();
+    }
+
+    public int getMisses() {
+        return cache.getMisses();
+    }
+
+    private synchronized byte[] getCodeHash(Class<?> patternClass) throws IOException {
+        byte[] hash = patternHashes.get(patternClass);
+        if (hash == null) {
+            MessageDigest digest = FileCache.newDigest();
+            for (Class<?> c = patternClass; c != Object.class; c = c.getSuperclass()) {
+                digest.update(FileCache.readClassFile(c));
+            }
+            for (Class<?> c : ANALYSIS_CLASSES) {
+                digest.update(FileCache.readClassFile(c));
+            }
+            if (dataflow.equals("inmemory")) {
+                digest.update(FixpointCache.getProgramHash(null, new MustExplicitProgram()));
+                digest.update(FixpointCache.getProgramHash(null, new MayImplicitProgram()));
+            } else {
+                digest.update(FixpointCache.getProgramHash(MustExplicitDataflow.SOUFFLE_PROGRAM, null));
+                digest.update(FixpointCache.getProgramHash(MayImplicitDataflow.SOUFFLE_PROGRAM, null));
+            }
+            hash = digest.digest();
+            patternHashes.put(patternClass, hash);
+        }
+        return hash;
+    }
+
+    private static void writeIndices(int[] indices, DataOutputStream out) throws IOException {
+        out.writeInt(indices.length);
+        for (int index : indices) {
+            out.writeInt(index);
+        }
+    }
+
+    private static int[] readIndices(DataInputStream in) throws IOException {
+        int[] indices = new int[in.readInt()];
+        for (int i = 0; i < indices.length; i++) {
+            indices[i] = in.readInt();
+        }
+        return indices;
+    }
+}
@@ -19,8 +19,7 @@ class SolidityResult {
      * @param patterns: all the patterns considered in this Securify version
      */
     static void setPatternDescriptions(List<AbstractPattern> patterns) {
-        // only allow initialization once
-        assert patternDescriptions == null;
+        // set again for every contract and every call of Main.main, with the patterns of the call
         patternDescriptions = new LinkedList<>();
         patterns.forEach(pattern -> patternDescriptions.add(pattern.getDescription()));
     }
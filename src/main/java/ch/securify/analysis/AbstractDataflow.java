@@ -18,19 +18,14 @@
 
 package ch.securify.analysis;
 
+import ch.securify.analysis.datalog.DatalogProgram;
 import ch.securify.decompiler.Variable;
 import ch.securify.decompiler.instructions.*;
-import ch.securify.utils.BigIntUtil;
-import com.google.common.collect.BiMap;
-import com.google.common.collect.HashBiMap;
-import org.apache.commons.csv.CSVFormat;
-import org.apache.commons.csv.CSVRecord;
+import ch.securify.utils.IntTupleList;
 
 import java.io.*;
-import java.math.BigInteger;
 import java.nio.ByteBuffer;
 import java.util.*;
-import java.util.concurrent.TimeUnit;
 
 public abstract class AbstractDataflow {
 
@@ -45,24 +40,36 @@ public abstract class AbstractDataflow {
     abstract public int varMustDepOn(Instruction instr1, Variable lhs, Object type);
     abstract public int memoryMustDepOn(Instruction instr1, int offset, Object type);
 
+    // set-valued queries, answered by one scan of the index or relation; null if the fixpoint is not available
+    abstract public List<Instruction> mayFollowAll(Instruction instr, Class<? extends Instruction> type);
+    abstract public Set<Object> varMayDepOnAll(Instruction instr, Variable lhs);
+    abstract public List<Instruction> mustPrecedeAll(Instruction instr, Class<? extends Instruction> type);
+    abstract public Set<Object> varMustDepOnAll(Instruction instr, Variable lhs);
+    // all instructions the query plan declares as targets of the precedence queries from instr, see GuardIndex
+    abstract public List<Instruction> mayFollowTargets(Instruction instr);
+    abstract public List<Instruction> mustPrecedeTargets(Instruction instr);
+
     abstract protected void deriveFollowsPredicates();
     abstract protected void deriveIfPredicates();
-    abstract protected void createSLoadRule(Instruction instr, Variable index, Variable var);
-    abstract protected void createMLoadRule(Instruction instr, Variable offset, Variable var);
+    /**
+     * @return name of the Datalog program of the analysis, see {@link QueryPlan#getOutputs(String)}
+     */
+    abstract protected String getAnalysis();
 
     protected List<Instruction> instructions;
 
-    protected BiMap<Variable, Integer> varToCode;
-    protected BiMap<Instruction, Integer> instrToCode;
-    protected BiMap<Class, Integer> typeToCode;
-    protected BiMap<Integer, Integer> constToCode;
-
-    protected BiMap<Integer, Variable> offsetToStorageVar;
-    protected BiMap<Integer, Variable> offsetToMemoryVar;
-    protected BiMap<String, StringBuffer> ruleToSB;
-    protected Map<String, Set<Long>> fixedpoint;
-
-    protected int bvCounter = 0; // reserve first 100 for types
+    // code table and facts shared with the other analysis of the same instructions
+    protected FactBase facts;
+    // facts specific to this analysis
+    protected Map<String, IntTupleList> relations;
+    // evaluation of the Datalog program, possibly shared with the dataflows of other instructions
+    protected Fixpoint fixpoint;
+    // precedence queries the patterns will ask
+    protected QueryPlan queryPlan;
+    // transitive closure of the control flow edges, answers the precedence queries
+    protected ReachabilityIndex precedence;
+    private Dominators dominators;
+    private GuardIndex guards;
 
     public int unk;
 
@@ -70,526 +77,276 @@ public abstract class AbstractDataflow {
 
     // input predicates
     protected String DL_EXEC;
-    private String WORKSPACE, WORKSPACE_OUT;
-    private final String SOUFFLE_BIN = "souffle";
-    private final String TIMEOUT_COMMAND = System.getProperty("os.name").toLowerCase().startsWith("mac") ? "gtimeout" : "timeout";
+    // in-JVM evaluator used instead of DL_EXEC when set
+    protected DatalogProgram program;
 
-    protected boolean isSouffleInstalled() {
-        try {
-            Process process = new ProcessBuilder(SOUFFLE_BIN).start();
-            process.waitFor();
-            return process.exitValue() == 0;
-        } catch (IOException | InterruptedException e) {
-            e.printStackTrace();
-            return false;
-        }
+    protected void initDataflow() throws IOException, InterruptedException {
+        deriveFacts();
+        computeFixpoint(DataflowFactory.getFixpointTimeout());
     }
 
-    protected void initDataflow() throws IOException, InterruptedException {
-        if(! isSouffleInstalled()){
-            System.err.println("Soufflé does not seem to be installed.");
-            System.exit(7);
+    /**
+     * Derive the input facts of the Datalog program from the instructions.
+     * The fixpoint is computed separately by {@link #computeFixpoint(long)}.
+     */
+    protected void deriveFacts() throws IOException, InterruptedException {
+        if (fixpoint == null) {
+            fixpoint = new Fixpoint(DL_EXEC, program);
         }
+        fixpoint.retain();
+        if (facts == null) {
+            facts = new FactBase(instructions);
+        }
+        facts.retain();
+        unk = facts.unk;
+        if (queryPlan == null) {
+            queryPlan = DataflowFactory.getQueryPlan();
+        }
+        fixpoint.demandOutputs(queryPlan.getOutputs(getAnalysis()));
 
-
-        varToCode = HashBiMap.create();
-        instrToCode = HashBiMap.create();
-        typeToCode = HashBiMap.create();
-        constToCode = HashBiMap.create();
-        fixedpoint = new HashMap<>();
-
-        offsetToStorageVar = HashBiMap.create();
-        offsetToMemoryVar = HashBiMap.create();
-
-        ruleToSB = HashBiMap.create();
-        ruleToSB.put("assignVar", new StringBuffer());
-        ruleToSB.put("assignType", new StringBuffer());
-        ruleToSB.put("taint", new StringBuffer());
-        ruleToSB.put("follows", new StringBuffer());
-        ruleToSB.put("jump", new StringBuffer());
-        ruleToSB.put("tag", new StringBuffer());
-        ruleToSB.put("oneBranchTag", new StringBuffer());
-        ruleToSB.put("join", new StringBuffer());
-        ruleToSB.put("endIf", new StringBuffer());
-        ruleToSB.put("mload", new StringBuffer());
-        ruleToSB.put("mstore", new StringBuffer());
-        ruleToSB.put("sload", new StringBuffer());
-        ruleToSB.put("sstore", new StringBuffer());
-        ruleToSB.put("isStorageVar", new StringBuffer());
-        ruleToSB.put("sha3", new StringBuffer());
-        ruleToSB.put("unk", new StringBuffer());
-
-        unk = getCode(UNK_CONST_VAL);
-        appendRule("unk", unk);
-
-        log("Souffle Analysis");
-
-        // create workspace
-        Random rnd = new Random();
-        WORKSPACE = (new File(System.getProperty("java.io.tmpdir"), "souffle-" + UUID.randomUUID())).getAbsolutePath();
-        WORKSPACE_OUT = WORKSPACE + "_OUT";
-        runCommand("mkdir " + WORKSPACE);
-        runCommand("mkdir " + WORKSPACE_OUT);
-
-        deriveAssignVarPredicates();
-        deriveAssignTypePredicates();
-        deriveHeapPredicates();
-        deriveStorePredicates();
+        relations = new LinkedHashMap<>();
+        relations.put("taint", new IntTupleList(3));
+        relations.put("follows", new IntTupleList(2));
+        relations.put("jump", new IntTupleList(3));
+        relations.put("tag", new IntTupleList(1));
+        relations.put("oneBranchTag", new IntTupleList(1));
+        relations.put("join", new IntTupleList(3));
+        relations.put("endIf", new IntTupleList(2));
 
         deriveFollowsPredicates();
         deriveIfPredicates();
 
-        createProgramRulesFile();
-        log("Number of instructions: " + instrToCode.size());
-        log("Threshold: " + Config.THRESHOLD_COMPILE);
-        String cmd = TIMEOUT_COMMAND + " " + Config.PATTERN_TIMEOUT+ "s " + DL_EXEC + " -F " + WORKSPACE + " -D " + WORKSPACE_OUT;
-        long start = System.currentTimeMillis();
-        log(cmd);
-        runCommand(cmd);
-        long elapsedTime = System.currentTimeMillis() - start;
-        String elapsedTimeStr = String.format("%d min, %d sec",
-                TimeUnit.MILLISECONDS.toMinutes(elapsedTime),
-                TimeUnit.MILLISECONDS.toSeconds(elapsedTime) - TimeUnit.MINUTES.toSeconds(TimeUnit.MILLISECONDS.toMinutes(elapsedTime))
-        );
-        log(elapsedTimeStr);
+        emitFacts();
+        log("Number of instructions: " + facts.getInstructionCount());
     }
 
-    public static int getInt(byte[] data) {
-        byte[] bytes = new byte[4];
-        for (int i = 0; i < Math.min(data.length, 4); ++i) {
-            bytes[i + 4 - Math.min(data.length, 4)] = data[i];
-        }
-        ByteBuffer bb = ByteBuffer.wrap(bytes);
-        return bb.getInt();
+    /**
+     * @return true if the analysis propagates the offset/index of a load from an unknown location
+     * to the loaded variable (see {@link FactBase#UNK_LOAD_ASSIGN_VAR})
+     */
+    protected boolean propagatesUnknownLoadOffset() {
+        return false;
     }
 
-    protected static long Encode(CSVRecord record) {
-        assert(record.size() <= 3);
-        long entry = 0;
-        for (int i = 0; i < record.size(); i++) {
-            //entry.add(Integer.parseInt(record.get(i)));
-            entry *= 80000;
-            entry += (long)Integer.parseInt(record.get(i));
+    /**
+     * Pass the common and the analysis-specific facts to the fixpoint.
+     */
+    private void emitFacts() {
+        for (Map.Entry<String, IntTupleList> relation : facts.getRelations().entrySet()) {
+            if (!relation.getKey().equals(FactBase.UNK_LOAD_ASSIGN_VAR)) {
+                fixpoint.addInput(relation.getKey(), relation.getValue());
+            }
+        }
+        if (propagatesUnknownLoadOffset()) {
+            fixpoint.addInput("assignVar", facts.getRelations().get(FactBase.UNK_LOAD_ASSIGN_VAR));
+        }
+        for (Map.Entry<String, IntTupleList> relation : relations.entrySet()) {
+            fixpoint.addInput(relation.getKey(), relation.getValue());
         }
-        assert(entry >= 0);
-        return entry;
     }
 
-    protected static long Encode(Integer... args) {
-        assert(args.length <= 3);
-        long entry = 0;
-        for (int i = 0; i < args.length; i++) {
-            entry *= 80000;
-            entry += (long)args[i];
+    /**
+     * Compute the fixpoint over the derived facts, see {@link Fixpoint#compute(long)}.
+     * @param timeoutMillis time budget for the computation
+     */
+    public void computeFixpoint(long timeoutMillis) throws InterruptedException {
+        CoreBudget budget = DataflowFactory.getCoreBudget();
+        budget.enter(1);
+        try {
+            fixpoint.compute(timeoutMillis);
+        } finally {
+            budget.leave(1);
         }
-        assert(entry >= 0);
-        return entry;
     }
 
-    protected void createProgramRulesFile() {
-        for (String rule : ruleToSB.keySet()) {
-            BufferedWriter bwr;
-            try {
-                bwr = new BufferedWriter(new FileWriter(new File(WORKSPACE + "/" + rule + ".facts")));
-                bwr.write(ruleToSB.get(rule).toString());
-                bwr.close();
-            } catch (IOException e) {
-                e.printStackTrace();
+    /**
+     * Index the control flow edges of the analysis for the precedence queries of the query plan.
+     * @param relation precedence relation, as named in the query plan
+     * @param edges edges whose transitive closure is the precedence relation
+     */
+    protected void indexPrecedence(String relation, IntTupleList edges) {
+        IntTupleList targets = new IntTupleList(1);
+        for (Instruction instr : instructions) {
+            if (queryPlan.isTarget(relation, instr)) {
+                targets.add(getCode(instr));
             }
         }
+        precedence = new ReachabilityIndex(edges, targets);
     }
 
-    public void dispose() throws IOException, InterruptedException {
-        runCommand("rm -r " + WORKSPACE);
-        runCommand("rm -r " + WORKSPACE_OUT);
+    protected int runPrecedenceQuery(String relation, Instruction from, Instruction to) {
+        if (!queryPlan.isSource(relation, from) || !queryPlan.isTarget(relation, to)) {
+            throw new IllegalStateException(relation + " query from " + from + " to " + to + " is not in the query plan");
+        }
+        return precedence.reaches(getCode(from), getCode(to)) ? Status.SATISFIABLE : Status.UNSATISFIABLE;
     }
 
-    protected void readFixedpoint(String ruleName) throws IOException {
-
-        Reader in = new FileReader(WORKSPACE_OUT + "/" + ruleName + ".csv");
-        /* Tab-delimited format */
-        Iterable<CSVRecord> records = CSVFormat.TDF.parse(in);
-        Set<Long> entries = new HashSet<Long>(100000000);
-
-        long count = 0;
-        for (CSVRecord record : records) {
-            count += 1;
-            entries.add(Encode(record));
+    /**
+     * @param relation precedence relation, as named in the query plan
+     * @param from first instruction
+     * @param type class of the second instructions
+     * @return the instructions of the class in the precedence relation with the first instruction
+     */
+    protected List<Instruction> runPrecedenceSetQuery(String relation, Instruction from, Class<? extends Instruction> type) {
+        if (!queryPlan.isTarget(relation, type)) {
+            throw new IllegalStateException(relation + " query from " + from + " to " + type.getSimpleName() + " is not in the query plan");
         }
-        in.close();
-        fixedpoint.put(ruleName, entries);
+        List<Instruction> result = runPrecedenceTargetsQuery(relation, from);
+        result.removeIf(target -> !type.isInstance(target));
+        return result;
     }
 
-    protected int runQuery(String ruleName, Integer... args) {
-        try {
-            if (!fixedpoint.containsKey(ruleName)) {
-                readFixedpoint(ruleName);
-            }
-            if (fixedpoint.get(ruleName).contains(Encode(args))) {
-                return Status.SATISFIABLE;
-            } else {
-                return Status.UNSATISFIABLE;
-            }
-        } catch (FileNotFoundException e) {
-            log("Souffle TIMEOUT, returns UNKNOWN");
-            return Status.UNKNOWN;
-        } catch (IOException e) {
-            log("Souffle TIMEOUT, returns UNKNOWN");
-            return Status.UNKNOWN;
+    /**
+     * @param relation precedence relation, as named in the query plan
+     * @param from first instruction
+     * @return the targets of the query plan in the precedence relation with the first instruction
+     */
+    protected List<Instruction> runPrecedenceTargetsQuery(String relation, Instruction from) {
+        if (!queryPlan.isSource(relation, from)) {
+            throw new IllegalStateException(relation + " query from " + from + " is not in the query plan");
         }
+        List<Instruction> result = new ArrayList<>();
+        for (int code : precedence.reachableTargets(getCode(from))) {
+            result.add((Instruction) facts.getObject(code));
+        }
+        return result;
     }
 
-    protected String runCommand(String command) throws IOException, InterruptedException {
-        Process proc;
-        String result = "";
-        log("CMD: " + command);
+    /**
+     * @param relation precedence relation, as named in the query plan
+     * @param to second instruction
+     * @throws IllegalStateException if the precedence queries of the query plan cannot end at the instruction
+     */
+    void checkPrecedenceTarget(String relation, Instruction to) {
+        if (!queryPlan.isTarget(relation, to)) {
+            throw new IllegalStateException(relation + " query to " + to + " is not in the query plan");
+        }
+    }
 
-        // Souffle works with this PATH
-        String[] envp = {"PATH=/usr/local/sbin:/usr/local/bin:/usr/sbin:/usr/bin:/sbin:/bin:/home/dani/bin"};
-        proc = Runtime.getRuntime().exec(command, envp);
+    /**
+     * @return the objects in the last column of the tuples of the relation with the given first columns,
+     * or null if the fixpoint is not available
+     */
+    protected Set<Object> runSetQuery(String ruleName, int a) {
+        checkOutput(ruleName);
+        return toObjects(fixpoint.select(ruleName, a));
+    }
 
-        // Read the output
-        BufferedReader reader = new BufferedReader(new InputStreamReader(proc.getInputStream()));
+    protected Set<Object> runSetQuery(String ruleName, int a, int b) {
+        checkOutput(ruleName);
+        return toObjects(fixpoint.select(ruleName, a, b));
+    }
 
-        // Output of the command
-        {
-            String line;
-            while ((line = reader.readLine()) != null) {
-                result = result + line + "\n";
-                log(line);
+    private Set<Object> toObjects(int[] codes) {
+        if (codes == null)
+            return null;
+        Set<Object> objects = new HashSet<>();
+        for (int code : codes) {
+            Object o = facts.getObject(code);
+            if (o != null) {
+                objects.add(o);
             }
         }
+        return objects;
+    }
 
-        // Display the errors
-        {
-            String line;
-            reader = new BufferedReader(new InputStreamReader(proc.getErrorStream()));
-
-            while ((line = reader.readLine()) != null) {
-                result = result + line + "\n";
-                log(line);
-            }
+    /**
+     * @return dominator and post-dominator trees of the control flow graph of the instructions
+     */
+    public Dominators getDominators() {
+        if (dominators == null) {
+            dominators = new Dominators(instructions);
         }
+        return dominators;
+    }
 
-        proc.waitFor();
-        if (proc.exitValue() != 0) {
-            throw new IOException();
+    /**
+     * @return conditional jumps guarding the instructions, answered with the queries of this dataflow
+     */
+    public GuardIndex getGuards() {
+        if (guards == null) {
+            guards = new GuardIndex(this, instructions);
         }
-        return result;
+        return guards;
     }
 
-    public Variable getStorageVarForIndex(int index) {
-        if (!offsetToStorageVar.containsKey(index)) {
-            Variable newVar = new Variable();
-            offsetToStorageVar.put(index, newVar);
-            appendRule("isStorageVar", getCode(newVar));
-            return newVar;
+    public static int getInt(byte[] data) {
+        byte[] bytes = new byte[4];
+        for (int i = 0; i < Math.min(data.length, 4); ++i) {
+            bytes[i + 4 - Math.min(data.length, 4)] = data[i];
         }
-        return offsetToStorageVar.get(index);
+        ByteBuffer bb = ByteBuffer.wrap(bytes);
+        return bb.getInt();
     }
 
-    protected Variable getMemoryVarForIndex(int index) {
-        if (!offsetToMemoryVar.containsKey(index)) {
-            Variable newVar = new Variable();
-            offsetToMemoryVar.put(index, newVar);
-            return newVar;
-        }
-        return offsetToMemoryVar.get(index);
+    public void dispose() throws IOException, InterruptedException {
+        fixpoint.dispose();
+        facts.release();
     }
 
-    protected void log(String msg) {
-        if (DEBUG)
-            System.out.println(this.getClass().getSimpleName() + ": " + msg);
+    protected int runQuery(String ruleName, int a) {
+        checkOutput(ruleName);
+        return fixpoint.query(ruleName, a);
     }
 
-    protected void createMStoreRule(Instruction instr, Variable offset, Variable var) {
-        int offsetCode;
-        if (offset.hasConstantValue()) {
-            log("Offset " + offset + ", int offset " + getInt(offset.getConstantValue()) + "memory var " + getMemoryVarForIndex(getInt(offset.getConstantValue())) + ", code " + getCode(getMemoryVarForIndex(getInt(offset.getConstantValue()))));
-            offsetCode = getCode(getMemoryVarForIndex(getInt(offset.getConstantValue())));
-        } else {
-            offsetCode = unk;
-        }
+    protected int runQuery(String ruleName, int a, int b) {
+        checkOutput(ruleName);
+        return fixpoint.query(ruleName, a, b);
+    }
 
-        appendRule("mstore", getCode(instr), offsetCode, getCode(var));
+    protected int runQuery(String ruleName, int a, int b, int c) {
+        checkOutput(ruleName);
+        return fixpoint.query(ruleName, a, b, c);
     }
 
-    protected void createSStoreRule(Instruction instr, Variable index, Variable var) {
-        int indexCode;
-        if (index.hasConstantValue()) {
-            indexCode = getCode(getStorageVarForIndex(getInt(index.getConstantValue())));
-        } else {
-            indexCode = unk;
+    private void checkOutput(String ruleName) {
+        if (!queryPlan.getOutputs(getAnalysis()).contains(ruleName)) {
+            throw new IllegalStateException(getAnalysis() + " query on " + ruleName + " is not in the query plan");
         }
-        appendRule("sstore", getCode(instr), indexCode, getCode(var));
     }
 
-    protected void createAssignVarRule(Instruction instr, Variable output, Variable input) {
-        appendRule("assignVar", getCode(instr), getCode(output), getCode(input));
+    public Variable getStorageVarForIndex(int index) {
+        return facts.getStorageVarForIndex(index);
     }
 
-    protected void createAssignTypeRule(Instruction instr, Variable var, Class type) {
-        appendRule("assignType", getCode(instr), getCode(var), getCode(type));
+    protected Variable getMemoryVarForIndex(int index) {
+        return facts.getMemoryVarForIndex(index);
     }
 
-    protected void createAssignTopRule(Instruction instr, Variable var) {
-        appendRule("assignType", getCode(instr), getCode(var), unk);
+    protected void log(String msg) {
+        if (DEBUG)
+            System.out.println(this.getClass().getSimpleName() + ": " + msg);
     }
 
     protected void createEndIfRule(Instruction start, Instruction end) {
         appendRule("endIf", getCode(start), getCode(end));
     }
 
-    protected void appendRule(String ruleName, Object... args) {
-        StringBuffer sb;
-        if (ruleToSB.containsKey(ruleName)) {
-            sb = ruleToSB.get(ruleName);
-        } else {
+    protected void appendRule(String ruleName, int... args) {
+        IntTupleList relation = relations.get(ruleName);
+        if (relation == null) {
             throw new RuntimeException("unknown rule: " + ruleName);
         }
-        for (int i = 0; i < args.length - 1; i++) {
-            sb.append(args[i]);
-            sb.append("\t");
-        }
-        sb.append(args[args.length - 1]);
-        sb.append("\n");
-    }
-
-    protected int getFreshCode() {
-        if (bvCounter == Integer.MAX_VALUE) {
-            throw new RuntimeException("Integer overflow.");
-        }
-        int freshCode = bvCounter;
-        bvCounter++;
-        return freshCode;
+        relation.add(args);
     }
 
     protected int getCode(Variable var) {
-        if (!varToCode.containsKey(var))
-            varToCode.put(var, getFreshCode());
-        return varToCode.get(var);
+        return facts.getCode(var);
     }
 
     protected int getCode(Instruction instr) {
-        if (!instrToCode.containsKey(instr))
-            instrToCode.put(instr, getFreshCode());
-        return instrToCode.get(instr);
+        return facts.getCode(instr);
     }
 
-    protected int getCode(Class instructionClass) {
-        if (!typeToCode.containsKey(instructionClass))
-            typeToCode.put(instructionClass, getFreshCode());
-        return typeToCode.get(instructionClass);
+    protected int getCode(Class<?> instructionClass) {
+        return facts.getCode(instructionClass);
     }
 
     protected int getCode(Integer constVal) {
-        if (!constToCode.containsKey(constVal))
-            constToCode.put(constVal, getFreshCode());
-        return constToCode.get(constVal);
+        return facts.getCode(constVal);
     }
 
     protected int getCode(Object o) {
-        if (o instanceof Instruction) {
-            return getCode((Instruction) o);
-        } else if (o instanceof Class) {
-            return getCode((Class) o);
-        } else if (o instanceof Integer) {
-            return getCode((Integer) o);
-        } else if (o instanceof Variable) {
-            return getCode((Variable) o);
-        } else {
-            throw new RuntimeException("Not supported object of a bit vector");
-        }
-    }
-
-    protected void deriveAssignTypePredicates() {
-        log(">> Derive AssignType predicates <<");
-        for (Instruction instr : instructions) {
-            if (instr instanceof Push
-                    || instr instanceof CallValue
-                    || instr instanceof Caller
-                    || instr instanceof CallDataLoad
-                    || instr instanceof CallDataSize
-                    || instr instanceof Coinbase
-                    || instr instanceof Gas
-                    || instr instanceof IsZero
-                    || instr instanceof Not
-                    || instr instanceof BlockTimestamp
-                    || instr instanceof BlockNumber
-                    || instr instanceof GasLimit
-                    || instr instanceof GasPrice
-                    || instr instanceof Balance
-                    || instr instanceof Difficulty
-                    || instr instanceof SLoad
-                    || instr instanceof Address) {
-                createAssignTypeRule(instr, instr.getOutput()[0], instr.getClass());
-            } else if (instr instanceof Div) {
-                if (instr.getInput()[1].hasConstantValue() &&
-                        (getInt(instr.getInput()[1].getConstantValue()) == 1
-                                // X = Y / 1 , do not taint as value of X does not depend on division in this case
-                                || (instr.getInput()[1].getConstantValue().length == 29 && instr.getInput()[1].getConstantValue()[0] == 1)
-                                || getInt(instr.getInput()[1].getConstantValue()) == 32
-                                || getInt(instr.getInput()[1].getConstantValue()) == 2
-                                // X = Y / 10^29 , do not taint as value of X because div by 10^29 is often used for aligning
-                        )) {
-
-                    continue;
-                }
-                createAssignTypeRule(instr, instr.getOutput()[0], instr.getClass());
-            } else if (instr instanceof _VirtualMethodHead) {
-                for (Variable arg : instr.getOutput()) {
-                    log("Type of " + arg + " is unk");
-                    createAssignTopRule(instr, arg);
-                    // assign the arguments as an abstract type (to check later
-                    // for missing input validation)
-                    appendRule("assignType", getCode(instr), getCode(arg), getCode(arg));
-                    // tag the arguments to depend on user input (CallDataLoad)
-                    createAssignTypeRule(instr, arg, CallDataLoad.class);
-                }
-            } else if (instr instanceof Call || instr instanceof StaticCall) {
-                log("Type of " + instr.getOutput()[0] + " is Call");
-                createAssignTopRule(instr, instr.getOutput()[0]);
-                // assign the return value as an abstract type (to check later
-                // for unhandled exception)
-                appendRule("assignType", getCode(instr), getCode(instr.getOutput()[0]), getCode(instr.getOutput()[0]));
-            } else if (instr instanceof BlockHash) {
-                log("Type of " + instr.getOutput()[0] + " is BlockHash");
-                createAssignTypeRule(instr, instr.getOutput()[0], instr.getClass());
-                // TODO: double check whether to propagate the type of the
-                // argument to the output of blockhash
-                createAssignVarRule(instr, instr.getOutput()[0], instr.getInput()[0]);
-            } else if (instr instanceof ReturnDataCopy) {
-                // TODO: New memory-based rule here
-            }
-        }
-    }
-
-    protected void deriveHeapPredicates() {
-        log(">> Derive MStore and MLoad predicates <<");
-        for (Instruction instr : instructions) {
-            if (instr instanceof MStore || instr instanceof MStore8) {
-                Variable var = instr.getInput()[1];
-                Variable offset = instr.getInput()[0];
-                log("mstore instruction: " + instr.getStringRepresentation());
-                createMStoreRule(instr, offset, var);
-            }
-            if (instr instanceof MLoad) {
-                log("mload instruction: " + instr.getStringRepresentation());
-                Variable var = instr.getOutput()[0];
-                Variable offset = instr.getInput()[0];
-                createMLoadRule(instr, offset, var);
-            }
-        }
-    }
-
-
-    protected void deriveStorePredicates() {
-        log(">> Derive SStore and SLoad predicates <<");
-        for (Instruction instr : instructions) {
-            if (instr instanceof SStore) {
-                Variable index = instr.getInput()[0];
-                Variable var = instr.getInput()[1];
-                log("sstore instruction: " + instr.getStringRepresentation());
-                createSStoreRule(instr, index, var);
-            }
-            if (instr instanceof SLoad) {
-                Variable var = instr.getOutput()[0];
-                Variable index = instr.getInput()[0];
-                log("sload instruction" + instr.getStringRepresentation());
-                createSLoadRule(instr, index, var);
-            }
-        }
-    }
-
-
-    protected void deriveAssignVarPredicates() {
-        log(">> Derive assign predicates <<");
-        for (Instruction instr : instructions) {
-            log(instr.getStringRepresentation());
-
-            if (instr instanceof SLoad) {
-                Variable storageOffset = instr.getInput()[0];
-                Variable lhs = instr.getOutput()[0];
-                if (storageOffset.hasConstantValue()) {
-                    int storageOffsetValue = getInt(storageOffset.getConstantValue());
-                    Variable storageVar = getStorageVarForIndex(storageOffsetValue);
-
-                    // big hack: adding an assignType predicate below
-                    appendRule("assignType", getCode(instr), getCode(lhs), getCode(storageVar));
-                } else {
-                    appendRule("assignType", getCode(instr), getCode(lhs), unk);
-                }
-            }
-
-            if (instr instanceof MLoad) {
-                Variable memoryOffset = instr.getInput()[0];
-                Variable lhs = instr.getOutput()[0];
-                if (memoryOffset.hasConstantValue()) {
-                    int memoryOffsetValue = getInt(memoryOffset.getConstantValue());
-                    Variable memoryVar = getMemoryVarForIndex(memoryOffsetValue);
-
-                    // big hack: adding an assignType predicate below
-                    appendRule("assignType", getCode(instr), getCode(lhs), getCode(memoryVar));
-                } else {
-                    appendRule("assignType", getCode(instr), getCode(lhs), unk);
-                }
-            }
-
-            if (instr instanceof Call || instr instanceof StaticCall) {
-                createAssignVarRule(instr, instr.getOutput()[0], instr.getInput()[2]);
-            }
-
-            if (instr instanceof Sha3) {
-                if (instr.getInput()[0].hasConstantValue() && instr.getInput()[1].hasConstantValue()) {
-                    int startOffset = getInt(instr.getInput()[0].getConstantValue());
-                    int length = getInt(instr.getInput()[1].getConstantValue());
-                    //assert(startOffset % 32 == 0);
-                    for (int offset = startOffset; offset < startOffset + length; offset += 4) {
-                        log("sha3: " + instr + " " + instr.getOutput()[0]);
-                        log("Offset " + offset + ", memory var " + getMemoryVarForIndex(offset) + ", code " + getCode(getMemoryVarForIndex(offset)));
-                        appendRule("sha3", getCode(instr), getCode(instr.getOutput()[0]), getCode(getMemoryVarForIndex(offset)));
-                    }
-                } else {
-                    // propagate the entire heap to the output of SHA3
-                }
-            }
-
-
-            // Skip MSTORE/MLOAD SSTORE/SLOAD as these are handled in a special
-            // way
-            if (instr instanceof MStore
-                    || instr instanceof MLoad
-                    || instr instanceof SStore
-                    || instr instanceof SLoad
-                    || instr instanceof Call
-                    || instr instanceof StaticCall
-                    || instr instanceof Sha3) {
-                continue;
-            }
-
-            if (instr instanceof Or) {
-                // a = b | c; if b or c is 0, do not propagate their types.
-                for (Variable output : instr.getOutput()) {
-                    for (Variable input : instr.getInput()) {
-                        if (input.hasConstantValue()) {
-                            BigInteger val = BigIntUtil.fromInt256(input.getConstantValue());
-                            if (val.compareTo(BigInteger.ZERO) == 0) {
-                                // Do not propagate this input
-                                continue;
-                            }
-                        }
-                        createAssignVarRule(instr, output, input);
-                    }
-                }
-                continue;
-            }
-
-            for (Variable output : instr.getOutput()) {
-                for (Variable input : instr.getInput()) {
-                    createAssignVarRule(instr, output, input);
-                }
-            }
-        }
+        return facts.getCode(o);
     }
-
 }
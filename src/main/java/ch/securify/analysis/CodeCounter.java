@@ -0,0 +1,42 @@
+/*
+ *  Copyright 2018 Secure, Reliable, and Intelligent Systems Lab, ETH Zurich
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+
+package ch.securify.analysis;
+
+/**
+ * Source of fresh codes. Fact bases that share a counter use disjoint codes, so their facts can be
+ * evaluated in a single {@link Fixpoint} without interfering with each other.
+ */
+public class CodeCounter {
+
+    private int next = 0;
+
+    public int getFreshCode() {
+        if (next == Integer.MAX_VALUE) {
+            throw new RuntimeException("Integer overflow.");
+        }
+        return next++;
+    }
+
+    /**
+     * @return number of codes handed out so far
+     */
+    public int getCount() {
+        return next;
+    }
+}
@@ -0,0 +1,95 @@
+/*
+ *  Copyright 2018 Secure, Reliable, and Intelligent Systems Lab, ETH Zurich
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+
+package ch.securify.analysis;
+
+/**
+ * Process-wide budget of cores shared by the Soufflé evaluations running at the same time.
+ *
+ * The dataflows announce how many evaluations they are about to run concurrently with {@link #enter(int)}.
+ * Each evaluation then gets its fair share of the cores, given the evaluations announced so far, as threads
+ * for its whole run: a single contract uses the whole machine, while concurrent analyses split it.
+ * An evaluation never waits for cores; when none is free it runs with one thread.
+ */
+public class CoreBudget {
+
+    private final int cores;
+    private final int maxThreads;
+    // cores not granted to a running evaluation; negative if oversubscribed
+    private int free;
+    // evaluations announced and not finished
+    private int evaluations = 0;
+
+    /**
+     * @param cores number of cores the evaluations may use together
+     * @param maxThreads number of threads of a single evaluation, or 0 for no limit besides the cores
+     */
+    public CoreBudget(int cores, int maxThreads) {
+        if (cores < 1)
+            throw new IllegalArgumentException("At least one core is needed: " + cores);
+        this.cores = cores;
+        this.maxThreads = maxThreads > 0 ? maxThreads : cores;
+        this.free = cores;
+    }
+
+    /**
+     * @return budget of all available processors, without a limit per evaluation
+     */
+    public static CoreBudget ofAvailableProcessors() {
+        return new CoreBudget(Runtime.getRuntime().availableProcessors(), 0);
+    }
+
+    /**
+     * Announce evaluations that are about to start concurrently, so that the first one does not take
+     * the share of the others. Every call must be followed by a call to {@link #leave(int)}.
+     * @param count number of evaluations
+     */
+    public synchronized void enter(int count) {
+        evaluations += count;
+    }
+
+    /**
+     * @param count number of evaluations announced by {@link #enter(int)} that have finished
+     */
+    public synchronized void leave(int count) {
+        evaluations -= count;
+    }
+
+    /**
+     * Grant threads to an evaluation, to be returned with {@link #release(int)}.
+     * @return at least one thread, and at most the fair share of the announced evaluations and the free cores
+     */
+    public synchronized int acquire() {
+        int running = Math.max(1, evaluations);
+        int share = (cores + running - 1) / running;
+        int threads = Math.max(1, Math.min(Math.min(maxThreads, share), free));
+        free -= threads;
+        return threads;
+    }
+
+    /**
+     * @param threads threads granted by {@link #acquire()} to an evaluation that has finished
+     */
+    public synchronized void release(int threads) {
+        free += threads;
+    }
+
+    public int getCores() {
+        return cores;
+    }
+}
@@ -19,23 +19,146 @@
 package ch.securify.analysis;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Function;
+import java.util.function.IntSupplier;
+import java.util.function.Supplier;
 
+import ch.securify.analysis.QueryStatistics.Kind;
+import ch.securify.analysis.datalog.DatalogProgram;
 import ch.securify.decompiler.Variable;
 import ch.securify.decompiler.instructions.Instruction;
+import ch.securify.utils.LongPairIntHashMap;
 
 public class Dataflow extends AbstractDataflow {
     public AbstractDataflow mustExplicitDataflow;
     public AbstractDataflow mayImplicitDataflow;
 
+    private static final ExecutorService fixpointExecutor = Executors.newCachedThreadPool(runnable -> {
+        Thread thread = new Thread(runnable, "fixpoint");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    // fact bases evaluated in one fixpoint together, see createBatch
+    private static final int MAX_CODES_PER_FIXPOINT = 1 << 20;
+
+    // answered queries, keyed on the query kind and the codes of the arguments
+    private final LongPairIntHashMap answers = new LongPairIntHashMap(Status.UNKNOWN);
+    // answered set-valued queries, keyed like the answers, as positions in setAnswers
+    private final LongPairIntHashMap setAnswerPositions = new LongPairIntHashMap(-1);
+    private final List<Object> setAnswers = new ArrayList<>();
+    private QueryStatistics statistics = new QueryStatistics();
+
     public Dataflow(List<Instruction> instructions) {
+        this(instructions, null, null);
+    }
+
+    /**
+     * @param instructions instructions to analyze
+     * @param mustProgram in-JVM evaluator for the must analysis, or null to run the Soufflé binary
+     * @param mayProgram in-JVM evaluator for the may analysis, or null to run the Soufflé binary
+     */
+    protected Dataflow(List<Instruction> instructions, DatalogProgram mustProgram, DatalogProgram mayProgram) {
+        this.instructions = instructions;
+        try {
+            Fixpoint mustFixpoint = MustExplicitDataflow.createFixpoint(mustProgram);
+            Fixpoint mayFixpoint = MayImplicitDataflow.createFixpoint(mayProgram);
+            // derive facts one after the other, as the code table of the fact base is shared
+            facts = new FactBase(instructions);
+            mustExplicitDataflow = MustExplicitDataflow.withFacts(instructions, facts, mustFixpoint);
+            mayImplicitDataflow = MayImplicitDataflow.withFacts(instructions, facts, mayFixpoint);
+            queryPlan = mustExplicitDataflow.queryPlan;
+            computeFixpoints(mustFixpoint, mayFixpoint);
+        } catch(IOException | InterruptedException e){
+            e.printStackTrace();
+            throw new RuntimeException();
+        }
+    }
+
+    private Dataflow(AbstractDataflow mustExplicitDataflow, AbstractDataflow mayImplicitDataflow) {
+        this.instructions = mustExplicitDataflow.instructions;
+        this.facts = mustExplicitDataflow.facts;
+        this.mustExplicitDataflow = mustExplicitDataflow;
+        this.mayImplicitDataflow = mayImplicitDataflow;
+        this.queryPlan = mustExplicitDataflow.queryPlan;
+    }
+
+    public static List<AbstractDataflow> createBatch(List<List<Instruction>> bodies) {
+        return createBatch(bodies, () -> null, () -> null);
+    }
+
+    /**
+     * Create the dataflows of several instruction lists (e.g. method bodies), evaluated by as few
+     * fixpoint computations as possible. The fact bases of one computation draw their codes from a
+     * shared {@link CodeCounter}, so each dataflow only sees the tuples derived from its own facts.
+     * @param bodies instruction lists to analyze
+     * @param mustPrograms supplies an in-JVM evaluator per must fixpoint, or null to run the Soufflé binary
+     * @param mayPrograms supplies an in-JVM evaluator per may fixpoint, or null to run the Soufflé binary
+     * @return one dataflow per instruction list, in the same order
+     */
+    protected static List<AbstractDataflow> createBatch(List<List<Instruction>> bodies,
+                                                        Supplier<DatalogProgram> mustPrograms,
+                                                        Supplier<DatalogProgram> mayPrograms) {
+        List<AbstractDataflow> dataflows = new ArrayList<>(bodies.size());
         try {
-            mustExplicitDataflow = new MustExplicitDataflow(instructions);
-            mayImplicitDataflow = new MayImplicitDataflow(instructions);
+            CodeCounter codes = null;
+            Fixpoint mustFixpoint = null, mayFixpoint = null;
+            for (List<Instruction> body : bodies) {
+                if (codes == null || codes.getCount() > MAX_CODES_PER_FIXPOINT) {
+                    if (codes != null) {
+                        computeFixpoints(mustFixpoint, mayFixpoint);
+                    }
+                    codes = new CodeCounter();
+                    mustFixpoint = MustExplicitDataflow.createFixpoint(mustPrograms.get());
+                    mayFixpoint = MayImplicitDataflow.createFixpoint(mayPrograms.get());
+                }
+                FactBase facts = new FactBase(body, codes);
+                dataflows.add(new Dataflow(
+                        MustExplicitDataflow.withFacts(body, facts, mustFixpoint),
+                        MayImplicitDataflow.withFacts(body, facts, mayFixpoint)));
+            }
+            if (codes != null) {
+                computeFixpoints(mustFixpoint, mayFixpoint);
+            }
         } catch(IOException | InterruptedException e){
             e.printStackTrace();
             throw new RuntimeException();
         }
+        return dataflows;
+    }
+
+    /**
+     * The two fixpoints are independent; compute them concurrently within one time budget, and with
+     * their share of the cores. If the must fixpoint fails, the may fixpoint is cancelled, as the
+     * dataflow is incomplete anyway.
+     */
+    private static void computeFixpoints(Fixpoint mustFixpoint, Fixpoint mayFixpoint) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + DataflowFactory.getFixpointTimeout();
+        CoreBudget budget = DataflowFactory.getCoreBudget();
+        budget.enter(2);
+        Future<?> mayResult = fixpointExecutor.submit(() -> {
+            mayFixpoint.compute(deadline - System.currentTimeMillis());
+            return null;
+        });
+        try {
+            mustFixpoint.compute(deadline - System.currentTimeMillis());
+            if (!mustFixpoint.isFailed()) {
+                mayResult.get();
+            }
+        } catch (ExecutionException e) {
+            throw new RuntimeException(e.getCause());
+        } finally {
+            mayResult.cancel(true);
+            budget.leave(2);
+        }
     }
 
     @Override
@@ -45,67 +168,157 @@ public class Dataflow extends AbstractDataflow {
     }
 
     @Override
-    public int mayFollow(Instruction instr1, Instruction instr2) {
-        int s = mayImplicitDataflow.mayFollow(instr1, instr2);
-        if (s == Status.UNKNOWN)
-            throw new TimeoutException();
+    public Dominators getDominators() {
+        return mustExplicitDataflow.getDominators();
+    }
+
+    /**
+     * @param statistics counters of the queries answered from now on, e.g. those of one pattern
+     */
+    public void setQueryStatistics(QueryStatistics statistics) {
+        this.statistics = statistics;
+    }
+
+    public QueryStatistics getQueryStatistics() {
+        return statistics;
+    }
+
+    /**
+     * Answer a query from the memo, or ask it to the underlying analysis and remember the answer.
+     * @param kind query kind
+     * @param a code of the first argument
+     * @param b code of the second argument, or 0
+     * @param c code of the third argument, or 0
+     * @param query the query on the underlying analysis
+     * @return {@link Status#SATISFIABLE} or {@link Status#UNSATISFIABLE}
+     * @throws TimeoutException if the fixpoint of the underlying analysis is not available
+     */
+    private int answer(Kind kind, int a, int b, int c, IntSupplier query) {
+        long high = ((long) kind.ordinal() << 32) | (a & 0xffffffffL);
+        long low = ((long) b << 32) | (c & 0xffffffffL);
+        int s = answers.get(high, low);
+        statistics.record(kind, s != Status.UNKNOWN);
+        if (s == Status.UNKNOWN) {
+            s = query.getAsInt();
+            if (s == Status.UNKNOWN)
+                throw new TimeoutException();
+            answers.put(high, low, s);
+        }
         return s;
     }
 
+    /**
+     * Answer a set-valued query from the memo, or ask it to the underlying analysis and remember the answer.
+     * @param kind query kind
+     * @param a code of the first argument
+     * @param b code of the second argument, or -1
+     * @param query the query on the underlying analysis
+     * @param unmodifiable makes the answer read-only, as it is shared by all askers
+     * @return the answer
+     * @throws TimeoutException if the fixpoint of the underlying analysis is not available
+     */
+    @SuppressWarnings("unchecked")
+    private <T> T answerSet(Kind kind, int a, int b, Supplier<T> query, Function<T, T> unmodifiable) {
+        long high = ((long) kind.ordinal() << 32) | (a & 0xffffffffL);
+        long low = b & 0xffffffffL;
+        int position = setAnswerPositions.get(high, low);
+        statistics.record(kind, position >= 0);
+        if (position >= 0)
+            return (T) setAnswers.get(position);
+        T answer = unmodifiable.apply(checkAvailable(query.get()));
+        setAnswerPositions.put(high, low, setAnswers.size());
+        setAnswers.add(answer);
+        return answer;
+    }
+
+    @Override
+    public int mayFollow(Instruction instr1, Instruction instr2) {
+        return answer(Kind.mayFollow, getCode(instr1), getCode(instr2), 0,
+                () -> mayImplicitDataflow.mayFollow(instr1, instr2));
+    }
+
     @Override
     public int varMayDepOn(Instruction instr1, Variable lhs, Object type) {
-        int s = mayImplicitDataflow.varMayDepOn(instr1, lhs, type);
-        if (s == Status.UNKNOWN)
-            throw new TimeoutException();
-        return s;
+        return answer(Kind.varMayDepOn, getCode(instr1), getCode(lhs), getCode(type),
+                () -> mayImplicitDataflow.varMayDepOn(instr1, lhs, type));
     }
 
     @Override
     public int memoryMayDepOn(Instruction instr1, int offset, Object type) {
-        int s = mayImplicitDataflow.memoryMayDepOn(instr1, offset, type);
-        if (s == Status.UNKNOWN)
-            throw new TimeoutException();
-        return s;
+        return answer(Kind.memoryMayDepOn, getCode(instr1), offset, getCode(type),
+                () -> mayImplicitDataflow.memoryMayDepOn(instr1, offset, type));
     }
 
     @Override
     public int memoryMayDepOn(Instruction instr, Object type) {
-        int s = mayImplicitDataflow.memoryMayDepOn(instr, type);
-        if (s == Status.UNKNOWN)
-            throw new TimeoutException();
-        return s;
+        return answer(Kind.memoryTagsMayDepOn, getCode(instr), getCode(type), 0,
+                () -> mayImplicitDataflow.memoryMayDepOn(instr, type));
     }
 
     @Override
     public int instrMayDepOn(Instruction instr, Object type) {
-        int s = mayImplicitDataflow.instrMayDepOn(instr, type);
-        if (s == Status.UNKNOWN)
-            throw new TimeoutException();
-        return s;
+        return answer(Kind.instrMayDepOn, getCode(instr), getCode(type), 0,
+                () -> mayImplicitDataflow.instrMayDepOn(instr, type));
     }
 
     @Override
     public int mustPrecede(Instruction instr1, Instruction instr2) {
-        int s = mustExplicitDataflow.mustPrecede(instr1, instr2);
-        if (s == Status.UNKNOWN)
-            throw new TimeoutException();
-        return s;
+        return answer(Kind.mustPrecede, getCode(instr1), getCode(instr2), 0,
+                () -> mustExplicitDataflow.mustPrecede(instr1, instr2));
     }
 
     @Override
     public int varMustDepOn(Instruction instr1, Variable lhs, Object type) {
-        int s = mustExplicitDataflow.varMustDepOn(instr1, lhs, type);
-        if (s == Status.UNKNOWN)
-            throw new TimeoutException();
-        return s;
+        return answer(Kind.varMustDepOn, getCode(instr1), getCode(lhs), getCode(type),
+                () -> mustExplicitDataflow.varMustDepOn(instr1, lhs, type));
     }
 
     @Override
     public int memoryMustDepOn(Instruction instr1, int offset, Object type) {
-        int s = mustExplicitDataflow.memoryMustDepOn(instr1, offset, type);
-        if (s == Status.UNKNOWN)
+        return answer(Kind.memoryMustDepOn, getCode(instr1), offset, getCode(type),
+                () -> mustExplicitDataflow.memoryMustDepOn(instr1, offset, type));
+    }
+
+    @Override
+    public List<Instruction> mayFollowAll(Instruction instr, Class<? extends Instruction> type) {
+        return answerSet(Kind.mayFollowAll, getCode(instr), getCode(type),
+                () -> mayImplicitDataflow.mayFollowAll(instr, type), Collections::unmodifiableList);
+    }
+
+    @Override
+    public Set<Object> varMayDepOnAll(Instruction instr, Variable lhs) {
+        return answerSet(Kind.varMayDepOnAll, getCode(instr), getCode(lhs),
+                () -> mayImplicitDataflow.varMayDepOnAll(instr, lhs), Collections::unmodifiableSet);
+    }
+
+    @Override
+    public List<Instruction> mustPrecedeAll(Instruction instr, Class<? extends Instruction> type) {
+        return answerSet(Kind.mustPrecedeAll, getCode(instr), getCode(type),
+                () -> mustExplicitDataflow.mustPrecedeAll(instr, type), Collections::unmodifiableList);
+    }
+
+    @Override
+    public Set<Object> varMustDepOnAll(Instruction instr, Variable lhs) {
+        return answerSet(Kind.varMustDepOnAll, getCode(instr), getCode(lhs),
+                () -> mustExplicitDataflow.varMustDepOnAll(instr, lhs), Collections::unmodifiableSet);
+    }
+
+    @Override
+    public List<Instruction> mayFollowTargets(Instruction instr) {
+        return answerSet(Kind.mayFollowAll, getCode(instr), -1,
+                () -> mayImplicitDataflow.mayFollowTargets(instr), Collections::unmodifiableList);
+    }
+
+    @Override
+    public List<Instruction> mustPrecedeTargets(Instruction instr) {
+        return answerSet(Kind.mustPrecedeAll, getCode(instr), -1,
+                () -> mustExplicitDataflow.mustPrecedeTargets(instr), Collections::unmodifiableList);
+    }
+
+    private static <T> T checkAvailable(T answer) {
+        if (answer == null)
             throw new TimeoutException();
-        return s;
+        return answer;
     }
 
     @Override
@@ -115,8 +328,5 @@ public class Dataflow extends AbstractDataflow {
     protected void deriveIfPredicates() { throw new UnsupportedOperationException(); }
 
     @Override
-    protected void createSLoadRule(Instruction instr, Variable index, Variable var) { throw new UnsupportedOperationException(); }
-
-    @Override
-    protected void createMLoadRule(Instruction instr, Variable offset, Variable var) { throw new UnsupportedOperationException(); }
+    protected String getAnalysis() { throw new UnsupportedOperationException(); }
 }
@@ -26,15 +26,34 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.function.Function;
+import java.util.stream.Collectors;
 
 public class DataflowFactory {
 
 	private static Function<List<Instruction>, AbstractDataflow> dataflowGenerator;
 
+	private static Function<List<List<Instruction>>, List<AbstractDataflow>> batchDataflowGenerator;
+
+	private static QueryPlan queryPlan = QueryPlan.all();
+
+	private static FixpointCache fixpointCache;
+
+	// 64M tuples take 512 MB in the heap, or 1 GB for wide relations
+	private static int offHeapThreshold = 1 << 26;
+
+	private static CoreBudget coreBudget = CoreBudget.ofAvailableProcessors();
+
+	private static long fixpointTimeout = Config.PATTERN_TIMEOUT * 1000L;
+
 	private static Map<String, Function<List<Instruction>, AbstractDataflow>> dataflowGenerators = new HashMap<>();
+	private static Map<String, Function<List<List<Instruction>>, List<AbstractDataflow>>> batchDataflowGenerators = new HashMap<>();
 	static {
 		// Default dataflow
 		dataflowGenerators.put("default", Dataflow::new);
+		dataflowGenerators.put("inmemory", InMemoryDataflow::new);
+
+		batchDataflowGenerators.put("default", Dataflow::createBatch);
+		batchDataflowGenerators.put("inmemory", InMemoryDataflow::createBatch);
 
 		setDataflowInstanceClass(null);
 	}
@@ -49,10 +68,85 @@ public class DataflowFactory {
 		else {
 			throw new IllegalArgumentException("Invalid dataflow class name: " + dataflowClass);
 		}
+
+		Function<List<Instruction>, AbstractDataflow> generator = dataflowGenerator;
+		batchDataflowGenerator = batchDataflowGenerators.getOrDefault(
+				Strings.isNullOrEmpty(dataflowClass) ? "default" : dataflowClass.toLowerCase(),
+				bodies -> bodies.stream().map(generator).collect(Collectors.toList()));
+	}
+
+	/**
+	 * Restrict the precedence relations of the dataflows created from now on to the given queries.
+	 * @param plan queries the patterns will ask, or null to compute the full relations
+	 */
+	public static void setQueryPlan(QueryPlan plan) {
+		queryPlan = plan == null ? QueryPlan.all() : plan;
+	}
+
+	public static QueryPlan getQueryPlan() {
+		return queryPlan;
+	}
+
+	/**
+	 * Look up the fixpoints of the dataflows in a cache before computing them, and store them there.
+	 * @param cache cache of fixpoints, or null to always compute them
+	 */
+	public static void setFixpointCache(FixpointCache cache) {
+		fixpointCache = cache;
+	}
+
+	public static FixpointCache getFixpointCache() {
+		return fixpointCache;
+	}
+
+	/**
+	 * Store the output relations with more tuples than the threshold in memory-mapped files instead of
+	 * the heap, so that giant relations slow the queries down instead of exhausting the heap.
+	 * @param tuples number of tuples of a relation kept in the heap
+	 */
+	public static void setOffHeapThreshold(int tuples) {
+		offHeapThreshold = tuples;
+	}
+
+	public static int getOffHeapThreshold() {
+		return offHeapThreshold;
+	}
+
+	/**
+	 * Share the given cores between the Soufflé evaluations of all dataflows, see {@link CoreBudget}.
+	 * @param budget cores of the process and the limit of threads per evaluation
+	 */
+	public static void setCoreBudget(CoreBudget budget) {
+		coreBudget = budget;
+	}
+
+	public static CoreBudget getCoreBudget() {
+		return coreBudget;
+	}
+
+	/**
+	 * @param millis time budget of the fixpoint computations of one dataflow
+	 */
+	public static void setFixpointTimeout(long millis) {
+		fixpointTimeout = millis;
+	}
+
+	public static long getFixpointTimeout() {
+		return fixpointTimeout;
 	}
 
 	public static AbstractDataflow getDataflow(List<Instruction> decompiledInstructions) {
 		return dataflowGenerator.apply(decompiledInstructions);
 	}
 
+	/**
+	 * Create the dataflows of several instruction lists at once, which lets the dataflow class share
+	 * work between them (e.g. a single Soufflé run for all method bodies of a contract).
+	 * @param bodies instruction lists to analyze
+	 * @return one dataflow per instruction list, in the same order
+	 */
+	public static List<AbstractDataflow> getDataflows(List<List<Instruction>> bodies) {
+		return batchDataflowGenerator.apply(bodies);
+	}
+
 }
@@ -0,0 +1,264 @@
+/*
+ *  Copyright 2018 Secure, Reliable, and Intelligent Systems Lab, ETH Zurich
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+
+package ch.securify.analysis;
+
+import ch.securify.decompiler.instructions.BranchInstruction;
+import ch.securify.decompiler.instructions.Instruction;
+import ch.securify.decompiler.instructions._VirtualMethodHead;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Dominator and post-dominator trees of the control flow graph of an instruction list, with the
+ * edges of {@link BranchInstruction#getOutgoingBranches()} and {@link Instruction#getNext()}.
+ *
+ * Instructions without predecessors are the entries of the graph, instructions without successors
+ * its exits. The trees are computed with the algorithm of Cooper, Harvey and Kennedy and numbered in
+ * depth-first order, so that a dominance query compares the intervals of two tree nodes.
+ */
+public class Dominators {
+
+    private final Map<Instruction, Integer> nodes = new IdentityHashMap<>();
+    private final List<Instruction> instructions = new ArrayList<>();
+    private final Tree dominators;
+    private final Tree postDominators;
+
+    public Dominators(List<Instruction> instructions) {
+        List<int[]> edges = new ArrayList<>();
+        for (Instruction instr : instructions) {
+            int from = node(instr);
+            if (instr instanceof BranchInstruction) {
+                for (Instruction outgoingInstruction : ((BranchInstruction) instr).getOutgoingBranches()) {
+                    if (!(outgoingInstruction instanceof _VirtualMethodHead)) {
+                        edges.add(new int[]{from, node(outgoingInstruction)});
+                    }
+                }
+            }
+            if (instr.getNext() != null) {
+                edges.add(new int[]{from, node(instr.getNext())});
+            }
+        }
+        dominators = new Tree(this.instructions.size(), edges, false);
+        postDominators = new Tree(this.instructions.size(), edges, true);
+    }
+
+    /**
+     * @return true if the instructions differ and every path from an entry to instr2 goes through instr1
+     */
+    public boolean dominates(Instruction instr1, Instruction instr2) {
+        return dominators.strictlyDominates(nodes.get(instr1), nodes.get(instr2));
+    }
+
+    /**
+     * @return true if the instructions differ and every path from instr2 to an exit goes through instr1
+     */
+    public boolean postDominates(Instruction instr1, Instruction instr2) {
+        return postDominators.strictlyDominates(nodes.get(instr1), nodes.get(instr2));
+    }
+
+    /**
+     * @return the closest strict dominator of the instruction, or null if it is an entry or unreachable
+     */
+    public Instruction getImmediateDominator(Instruction instr) {
+        return instruction(dominators.immediateDominator(nodes.get(instr)));
+    }
+
+    /**
+     * @return the closest strict post-dominator of the instruction, or null if it is an exit or cannot reach one
+     */
+    public Instruction getImmediatePostDominator(Instruction instr) {
+        return instruction(postDominators.immediateDominator(nodes.get(instr)));
+    }
+
+    private int node(Instruction instr) {
+        Integer node = nodes.get(instr);
+        if (node == null) {
+            node = instructions.size();
+            nodes.put(instr, node);
+            instructions.add(instr);
+        }
+        return node;
+    }
+
+    private Instruction instruction(int node) {
+        return node < 0 || node >= instructions.size() ? null : instructions.get(node);
+    }
+
+    /**
+     * Dominator tree over nodes 0..n-1 and a virtual root n, which precedes all entries.
+     */
+    private static class Tree {
+
+        private static final int UNDEFINED = -1;
+
+        private final int root;
+        private final int[] idom;
+        // interval of the node in a depth-first numbering of the tree
+        private final int[] enter;
+        private final int[] exit;
+
+        Tree(int nodeCount, List<int[]> edges, boolean reverse) {
+            root = nodeCount;
+            int from = reverse ? 1 : 0, to = reverse ? 0 : 1;
+
+            // predecessors and successors in compressed form, including the edges from the root
+            int[] outDegree = new int[nodeCount + 1], inDegree = new int[nodeCount + 1];
+            for (int[] edge : edges) {
+                outDegree[edge[from]]++;
+                inDegree[edge[to]]++;
+            }
+            int rootEdges = 0;
+            for (int n = 0; n < nodeCount; n++) {
+                if (inDegree[n] == 0) {
+                    outDegree[root]++;
+                    inDegree[n]++;
+                    rootEdges++;
+                }
+            }
+            int[] firstSucc = prefixSums(outDegree), firstPred = prefixSums(inDegree);
+            int[] succ = new int[edges.size() + rootEdges], pred = new int[edges.size() + rootEdges];
+            int[] succFill = Arrays.copyOf(firstSucc, nodeCount + 1), predFill = Arrays.copyOf(firstPred, nodeCount + 1);
+            for (int[] edge : edges) {
+                succ[succFill[edge[from]]++] = edge[to];
+                pred[predFill[edge[to]]++] = edge[from];
+            }
+            for (int n = 0; n < nodeCount; n++) {
+                if (predFill[n] == firstPred[n]) {
+                    succ[succFill[root]++] = n;
+                    pred[predFill[n]++] = root;
+                }
+            }
+
+            // reverse postorder of a depth-first search from the root
+            int[] postorder = new int[nodeCount + 1];
+            Arrays.fill(postorder, UNDEFINED);
+            int[] order = new int[nodeCount + 1];
+            int count = 0;
+            int[] stack = new int[nodeCount + 1], next = Arrays.copyOf(firstSucc, nodeCount + 1);
+            boolean[] visited = new boolean[nodeCount + 1];
+            int depth = 0;
+            stack[depth++] = root;
+            visited[root] = true;
+            while (depth > 0) {
+                int n = stack[depth - 1];
+                if (next[n] < firstSucc[n + 1]) {
+                    int s = succ[next[n]++];
+                    if (!visited[s]) {
+                        visited[s] = true;
+                        stack[depth++] = s;
+                    }
+                } else {
+                    depth--;
+                    postorder[n] = count;
+                    order[count++] = n;
+                }
+            }
+
+            // Cooper, Harvey, Kennedy: "A Simple, Fast Dominance Algorithm"
+            idom = new int[nodeCount + 1];
+            Arrays.fill(idom, UNDEFINED);
+            idom[root] = root;
+            boolean changed = true;
+            while (changed) {
+                changed = false;
+                for (int i = count - 2; i >= 0; i--) {
+                    int n = order[i];
+                    int newIdom = UNDEFINED;
+                    for (int p = firstPred[n]; p < firstPred[n + 1]; p++) {
+                        int predecessor = pred[p];
+                        if (idom[predecessor] == UNDEFINED)
+                            continue;
+                        newIdom = newIdom == UNDEFINED ? predecessor : intersect(predecessor, newIdom, postorder);
+                    }
+                    if (idom[n] != newIdom) {
+                        idom[n] = newIdom;
+                        changed = true;
+                    }
+                }
+            }
+
+            // number the tree depth-first
+            int[] childCount = new int[nodeCount + 1];
+            for (int n = 0; n < nodeCount; n++) {
+                if (idom[n] != UNDEFINED)
+                    childCount[idom[n]]++;
+            }
+            int[] firstChild = prefixSums(childCount);
+            int[] children = new int[nodeCount];
+            int[] childFill = Arrays.copyOf(firstChild, nodeCount + 1);
+            for (int n = 0; n < nodeCount; n++) {
+                if (idom[n] != UNDEFINED)
+                    children[childFill[idom[n]]++] = n;
+            }
+            enter = new int[nodeCount + 1];
+            exit = new int[nodeCount + 1];
+            Arrays.fill(enter, UNDEFINED);
+            int clock = 0;
+            Arrays.fill(next, 0);
+            depth = 0;
+            stack[depth++] = root;
+            enter[root] = clock++;
+            while (depth > 0) {
+                int n = stack[depth - 1];
+                if (firstChild[n] + next[n] < firstChild[n + 1]) {
+                    int child = children[firstChild[n] + next[n]++];
+                    enter[child] = clock++;
+                    stack[depth++] = child;
+                } else {
+                    depth--;
+                    exit[n] = clock++;
+                }
+            }
+        }
+
+        private int intersect(int a, int b, int[] postorder) {
+            while (a != b) {
+                while (postorder[a] < postorder[b])
+                    a = idom[a];
+                while (postorder[b] < postorder[a])
+                    b = idom[b];
+            }
+            return a;
+        }
+
+        private static int[] prefixSums(int[] counts) {
+            int[] sums = new int[counts.length + 1];
+            for (int i = 0; i < counts.length; i++) {
+                sums[i + 1] = sums[i] + counts[i];
+            }
+            return sums;
+        }
+
+        boolean strictlyDominates(Integer a, Integer b) {
+            if (a == null || b == null || a.equals(b) || enter[a] == UNDEFINED || enter[b] == UNDEFINED)
+                return false;
+            return enter[a] < enter[b] && exit[b] < exit[a];
+        }
+
+        int immediateDominator(Integer n) {
+            if (n == null || n == root || idom[n] == UNDEFINED || idom[n] == root)
+                return UNDEFINED;
+            return idom[n];
+        }
+    }
+}
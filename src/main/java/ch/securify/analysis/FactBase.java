@@ -0,0 +1,525 @@
+/*
+ *  Copyright 2018 Secure, Reliable, and Intelligent Systems Lab, ETH Zurich
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+
+package ch.securify.analysis;
+
+import ch.securify.decompiler.Variable;
+import ch.securify.decompiler.instructions.*;
+import ch.securify.utils.BigIntUtil;
+import ch.securify.utils.IntTupleList;
+import ch.securify.utils.LongIntHashMap;
+
+import java.math.BigInteger;
+import java.util.*;
+
+import static ch.securify.analysis.AbstractDataflow.getInt;
+
+/**
+ * Code table and input facts shared by the must and may analyses of the same instructions.
+ *
+ * The facts about assignments, memory, storage and hashing are derived once here. Each analysis only
+ * derives its own control-flow relations on top (see {@link AbstractDataflow#deriveFollowsPredicates()}).
+ *
+ * The codes of variables and instructions are stored in the objects themselves (see
+ * {@link Variable#setCode(Object, int)}), unless another fact base in use already owns them; only those
+ * are looked up in a map. Releasing the fact base clears the codes it stored, so that the instructions
+ * do not keep it alive. Codes are handed out in increasing order, so the coded objects form a sorted
+ * table from code to object.
+ */
+public class FactBase {
+
+    /**
+     * Extra assignVar facts of the may analysis: for loads from an unknown offset/index, the loaded
+     * variable is also assigned the offset/index variable.
+     */
+    public static final String UNK_LOAD_ASSIGN_VAR = "unkLoadAssignVar";
+
+    private final List<Instruction> instructions;
+
+    // codes of the variables and instructions owned by other fact bases in use
+    private final Map<Variable, Integer> foreignVarToCode = new IdentityHashMap<>();
+    private final Map<Instruction, Integer> foreignInstrToCode = new IdentityHashMap<>();
+    private final Map<Class<?>, Integer> typeToCode = new IdentityHashMap<>();
+    private final LongIntHashMap constToCode = new LongIntHashMap(-1);
+
+    // coded objects, by increasing code
+    private int[] objectCodes = new int[64];
+    private Object[] objects = new Object[64];
+    private int objectCount = 0;
+    private int instructionCount = 0;
+
+    // dataflows using the fact base, see release()
+    private int users = 0;
+
+    private final Map<Integer, Variable> offsetToStorageVar = new HashMap<>();
+    private final Map<Integer, Variable> offsetToMemoryVar = new HashMap<>();
+
+    private final Map<String, IntTupleList> relations = new LinkedHashMap<>();
+
+    private final CodeCounter codes;
+
+    public final int unk;
+
+    private final boolean DEBUG = false;
+
+    /**
+     * Derive the common facts of the given instructions.
+     * @param instructions instructions to analyze
+     */
+    public FactBase(List<Instruction> instructions) {
+        this(instructions, new CodeCounter());
+    }
+
+    /**
+     * Derive the common facts of the given instructions.
+     * @param instructions instructions to analyze
+     * @param codes source of codes, shared with the fact bases that are evaluated in the same fixpoint
+     */
+    public FactBase(List<Instruction> instructions, CodeCounter codes) {
+        this.instructions = instructions;
+        this.codes = codes;
+
+        relations.put("assignVar", new IntTupleList(3));
+        relations.put("assignType", new IntTupleList(3));
+        relations.put("mload", new IntTupleList(3));
+        relations.put("mstore", new IntTupleList(3));
+        relations.put("sload", new IntTupleList(3));
+        relations.put("sstore", new IntTupleList(3));
+        relations.put("isStorageVar", new IntTupleList(1));
+        relations.put("sha3", new IntTupleList(3));
+        relations.put("unk", new IntTupleList(1));
+        relations.put(UNK_LOAD_ASSIGN_VAR, new IntTupleList(3));
+
+        unk = getCode(AbstractDataflow.UNK_CONST_VAL);
+        appendRule("unk", unk);
+
+        deriveAssignVarPredicates();
+        deriveAssignTypePredicates();
+        deriveHeapPredicates();
+        deriveStorePredicates();
+    }
+
+    /**
+     * @return the common relations by name
+     */
+    public Map<String, IntTupleList> getRelations() {
+        return Collections.unmodifiableMap(relations);
+    }
+
+    public int getInstructionCount() {
+        return instructionCount;
+    }
+
+    /**
+     * Register a dataflow using this fact base, see {@link #release()}.
+     */
+    public void retain() {
+        users++;
+    }
+
+    /**
+     * Release the fact base for one of its dataflows. Once all of them released it, the codes stored in
+     * its variables and instructions are cleared, for other fact bases to take them over.
+     */
+    public void release() {
+        if (--users > 0)
+            return;
+        for (int i = 0; i < objectCount; i++) {
+            if (objects[i] instanceof Variable && ((Variable) objects[i]).getCodeOwner() == this) {
+                ((Variable) objects[i]).setCode(null, 0);
+            } else if (objects[i] instanceof Instruction && ((Instruction) objects[i]).getCodeOwner() == this) {
+                ((Instruction) objects[i]).setCode(null, 0);
+            }
+        }
+        foreignVarToCode.clear();
+        foreignInstrToCode.clear();
+    }
+
+    public Variable getStorageVarForIndex(int index) {
+        if (!offsetToStorageVar.containsKey(index)) {
+            Variable newVar = new Variable();
+            offsetToStorageVar.put(index, newVar);
+            appendRule("isStorageVar", getCode(newVar));
+            return newVar;
+        }
+        return offsetToStorageVar.get(index);
+    }
+
+    public Variable getMemoryVarForIndex(int index) {
+        if (!offsetToMemoryVar.containsKey(index)) {
+            Variable newVar = new Variable();
+            offsetToMemoryVar.put(index, newVar);
+            return newVar;
+        }
+        return offsetToMemoryVar.get(index);
+    }
+
+    private void log(String msg) {
+        if (DEBUG)
+            System.out.println(this.getClass().getSimpleName() + ": " + msg);
+    }
+
+    private void appendRule(String ruleName, int... args) {
+        IntTupleList relation = relations.get(ruleName);
+        if (relation == null) {
+            throw new RuntimeException("unknown rule: " + ruleName);
+        }
+        relation.add(args);
+    }
+
+    private void createMStoreRule(Instruction instr, Variable offset, Variable var) {
+        int offsetCode;
+        if (offset.hasConstantValue()) {
+            log("Offset " + offset + ", int offset " + getInt(offset.getConstantValue()) + "memory var " + getMemoryVarForIndex(getInt(offset.getConstantValue())) + ", code " + getCode(getMemoryVarForIndex(getInt(offset.getConstantValue()))));
+            offsetCode = getCode(getMemoryVarForIndex(getInt(offset.getConstantValue())));
+        } else {
+            offsetCode = unk;
+        }
+
+        appendRule("mstore", getCode(instr), offsetCode, getCode(var));
+    }
+
+    private void createSStoreRule(Instruction instr, Variable index, Variable var) {
+        int indexCode;
+        if (index.hasConstantValue()) {
+            indexCode = getCode(getStorageVarForIndex(getInt(index.getConstantValue())));
+        } else {
+            indexCode = unk;
+        }
+        appendRule("sstore", getCode(instr), indexCode, getCode(var));
+    }
+
+    private void createAssignVarRule(Instruction instr, Variable output, Variable input) {
+        appendRule("assignVar", getCode(instr), getCode(output), getCode(input));
+    }
+
+    private void createAssignTypeRule(Instruction instr, Variable var, Class<?> type) {
+        appendRule("assignType", getCode(instr), getCode(var), getCode(type));
+    }
+
+    private void createAssignTopRule(Instruction instr, Variable var) {
+        appendRule("assignType", getCode(instr), getCode(var), unk);
+    }
+
+    private void createSLoadRule(Instruction instr, Variable index, Variable var) {
+        int indexCode;
+        if (index.hasConstantValue()) {
+            indexCode = getCode(getInt(index.getConstantValue()));
+        } else {
+            indexCode = unk;
+            // if you have "var = sload(index)", to propagate labels from index to var we add "var = index"
+            appendRule(UNK_LOAD_ASSIGN_VAR, getCode(instr), getCode(var), getCode(index));
+        }
+        appendRule("sload", getCode(instr), indexCode, getCode(var));
+    }
+
+    private void createMLoadRule(Instruction instr, Variable offset, Variable var) {
+        int offsetCode;
+        if (offset.hasConstantValue()) {
+            offsetCode = getCode(getMemoryVarForIndex(getInt(offset.getConstantValue())));
+        } else {
+            offsetCode = unk;
+            appendRule(UNK_LOAD_ASSIGN_VAR, getCode(instr), getCode(var), getCode(offset));
+        }
+        appendRule("mload", getCode(instr), offsetCode, getCode(var));
+    }
+
+    /**
+     * @return a fresh code for the object, recorded in the table from codes to objects
+     */
+    private int getFreshCode(Object o) {
+        int code = codes.getFreshCode();
+        if (objectCount == objects.length) {
+            objectCodes = Arrays.copyOf(objectCodes, objectCount * 2);
+            objects = Arrays.copyOf(objects, objectCount * 2);
+        }
+        objectCodes[objectCount] = code;
+        objects[objectCount] = o;
+        objectCount++;
+        return code;
+    }
+
+    public int getCode(Variable var) {
+        if (var.getCodeOwner() == this)
+            return var.getCode();
+        Integer code = foreignVarToCode.get(var);
+        if (code == null) {
+            code = getFreshCode(var);
+            if (var.getCodeOwner() == null) {
+                var.setCode(this, code);
+            } else {
+                foreignVarToCode.put(var, code);
+            }
+        }
+        return code;
+    }
+
+    public int getCode(Instruction instr) {
+        if (instr.getCodeOwner() == this)
+            return instr.getCode();
+        Integer code = foreignInstrToCode.get(instr);
+        if (code == null) {
+            code = getFreshCode(instr);
+            instructionCount++;
+            if (instr.getCodeOwner() == null) {
+                instr.setCode(this, code);
+            } else {
+                foreignInstrToCode.put(instr, code);
+            }
+        }
+        return code;
+    }
+
+    public int getCode(Class<?> instructionClass) {
+        Integer code = typeToCode.get(instructionClass);
+        if (code == null) {
+            code = getFreshCode(instructionClass);
+            typeToCode.put(instructionClass, code);
+        }
+        return code;
+    }
+
+    public int getCode(Integer constVal) {
+        int code = constToCode.get(constVal);
+        if (code < 0) {
+            code = getFreshCode(constVal);
+            constToCode.put(constVal, code);
+        }
+        return code;
+    }
+
+    public int getCode(Object o) {
+        if (o instanceof Variable) {
+            return getCode((Variable) o);
+        } else if (o instanceof Instruction) {
+            return getCode((Instruction) o);
+        } else if (o instanceof Class) {
+            return getCode((Class) o);
+        } else if (o instanceof Integer) {
+            return getCode((Integer) o);
+        } else {
+            throw new RuntimeException("Not supported object of a bit vector");
+        }
+    }
+
+    /**
+     * @param code code of a variable, instruction, instruction class or constant of this fact base
+     * @return the coded object, or null if the code is not known
+     */
+    public Object getObject(int code) {
+        if (objectCount == 0)
+            return null;
+        // the codes are contiguous unless the fact base shares its counter
+        int pos = code - objectCodes[0];
+        if (pos < 0 || pos >= objectCount || objectCodes[pos] != code) {
+            pos = Arrays.binarySearch(objectCodes, 0, objectCount, code);
+        }
+        return pos >= 0 ? objects[pos] : null;
+    }
+
+    private void deriveAssignTypePredicates() {
+        log(">> Derive AssignType predicates <<");
+        for (Instruction instr : instructions) {
+            if (instr instanceof Push
+                    || instr instanceof CallValue
+                    || instr instanceof Caller
+                    || instr instanceof CallDataLoad
+                    || instr instanceof CallDataSize
+                    || instr instanceof Coinbase
+                    || instr instanceof Gas
+                    || instr instanceof IsZero
+                    || instr instanceof Not
+                    || instr instanceof BlockTimestamp
+                    || instr instanceof BlockNumber
+                    || instr instanceof GasLimit
+                    || instr instanceof GasPrice
+                    || instr instanceof Balance
+                    || instr instanceof Difficulty
+                    || instr instanceof SLoad
+                    || instr instanceof Address) {
+                createAssignTypeRule(instr, instr.getOutput()[0], instr.getClass());
+            } else if (instr instanceof Div) {
+                if (instr.getInput()[1].hasConstantValue() &&
+                        (getInt(instr.getInput()[1].getConstantValue()) == 1
+                                // X = Y / 1 , do not taint as value of X does not depend on division in this case
+                                || (instr.getInput()[1].getConstantValue().length == 29 && instr.getInput()[1].getConstantValue()[0] == 1)
+                                || getInt(instr.getInput()[1].getConstantValue()) == 32
+                                || getInt(instr.getInput()[1].getConstantValue()) == 2
+                                // X = Y / 10^29 , do not taint as value of X because div by 10^29 is often used for aligning
+                        )) {
+
+                    continue;
+                }
+                createAssignTypeRule(instr, instr.getOutput()[0], instr.getClass());
+            } else if (instr instanceof _VirtualMethodHead) {
+                for (Variable arg : instr.getOutput()) {
+                    log("Type of " + arg + " is unk");
+                    createAssignTopRule(instr, arg);
+                    // assign the arguments as an abstract type (to check later
+                    // for missing input validation)
+                    appendRule("assignType", getCode(instr), getCode(arg), getCode(arg));
+                    // tag the arguments to depend on user input (CallDataLoad)
+                    createAssignTypeRule(instr, arg, CallDataLoad.class);
+                }
+            } else if (instr instanceof Call || instr instanceof StaticCall) {
+                log("Type of " + instr.getOutput()[0] + " is Call");
+                createAssignTopRule(instr, instr.getOutput()[0]);
+                // assign the return value as an abstract type (to check later
+                // for unhandled exception)
+                appendRule("assignType", getCode(instr), getCode(instr.getOutput()[0]), getCode(instr.getOutput()[0]));
+            } else if (instr instanceof BlockHash) {
+                log("Type of " + instr.getOutput()[0] + " is BlockHash");
+                createAssignTypeRule(instr, instr.getOutput()[0], instr.getClass());
+                // TODO: double check whether to propagate the type of the
+                // argument to the output of blockhash
+                createAssignVarRule(instr, instr.getOutput()[0], instr.getInput()[0]);
+            } else if (instr instanceof ReturnDataCopy) {
+                // TODO: New memory-based rule here
+            }
+        }
+    }
+
+    private void deriveHeapPredicates() {
+        log(">> Derive MStore and MLoad predicates <<");
+        for (Instruction instr : instructions) {
+            if (instr instanceof MStore || instr instanceof MStore8) {
+                Variable var = instr.getInput()[1];
+                Variable offset = instr.getInput()[0];
+                log("mstore instruction: " + instr.getStringRepresentation());
+                createMStoreRule(instr, offset, var);
+            }
+            if (instr instanceof MLoad) {
+                log("mload instruction: " + instr.getStringRepresentation());
+                Variable var = instr.getOutput()[0];
+                Variable offset = instr.getInput()[0];
+                createMLoadRule(instr, offset, var);
+            }
+        }
+    }
+
+
+    private void deriveStorePredicates() {
+        log(">> Derive SStore and SLoad predicates <<");
+        for (Instruction instr : instructions) {
+            if (instr instanceof SStore) {
+                Variable index = instr.getInput()[0];
+                Variable var = instr.getInput()[1];
+                log("sstore instruction: " + instr.getStringRepresentation());
+                createSStoreRule(instr, index, var);
+            }
+            if (instr instanceof SLoad) {
+                Variable var = instr.getOutput()[0];
+                Variable index = instr.getInput()[0];
+                log("sload instruction" + instr.getStringRepresentation());
+                createSLoadRule(instr, index, var);
+            }
+        }
+    }
+
+
+    private void deriveAssignVarPredicates() {
+        log(">> Derive assign predicates <<");
+        for (Instruction instr : instructions) {
+            log(instr.getStringRepresentation());
+
+            if (instr instanceof SLoad) {
+                Variable storageOffset = instr.getInput()[0];
+                Variable lhs = instr.getOutput()[0];
+                if (storageOffset.hasConstantValue()) {
+                    int storageOffsetValue = getInt(storageOffset.getConstantValue());
+                    Variable storageVar = getStorageVarForIndex(storageOffsetValue);
+
+                    // big hack: adding an assignType predicate below
+                    appendRule("assignType", getCode(instr), getCode(lhs), getCode(storageVar));
+                } else {
+                    appendRule("assignType", getCode(instr), getCode(lhs), unk);
+                }
+            }
+
+            if (instr instanceof MLoad) {
+                Variable memoryOffset = instr.getInput()[0];
+                Variable lhs = instr.getOutput()[0];
+                if (memoryOffset.hasConstantValue()) {
+                    int memoryOffsetValue = getInt(memoryOffset.getConstantValue());
+                    Variable memoryVar = getMemoryVarForIndex(memoryOffsetValue);
+
+                    // big hack: adding an assignType predicate below
+                    appendRule("assignType", getCode(instr), getCode(lhs), getCode(memoryVar));
+                } else {
+                    appendRule("assignType", getCode(instr), getCode(lhs), unk);
+                }
+            }
+
+            if (instr instanceof Call || instr instanceof StaticCall) {
+                createAssignVarRule(instr, instr.getOutput()[0], instr.getInput()[2]);
+            }
+
+            if (instr instanceof Sha3) {
+                if (instr.getInput()[0].hasConstantValue() && instr.getInput()[1].hasConstantValue()) {
+                    int startOffset = getInt(instr.getInput()[0].getConstantValue());
+                    int length = getInt(instr.getInput()[1].getConstantValue());
+                    //assert(startOffset % 32 == 0);
+                    for (int offset = startOffset; offset < startOffset + length; offset += 4) {
+                        log("sha3: " + instr + " " + instr.getOutput()[0]);
+                        log("Offset " + offset + ", memory var " + getMemoryVarForIndex(offset) + ", code " + getCode(getMemoryVarForIndex(offset)));
+                        appendRule("sha3", getCode(instr), getCode(instr.getOutput()[0]), getCode(getMemoryVarForIndex(offset)));
+                    }
+                } else {
+                    // propagate the entire heap to the output of SHA3
+                }
+            }
+
+
+            // Skip MSTORE/MLOAD SSTORE/SLOAD as these are handled in a special
+            // way
+            if (instr instanceof MStore
+                    || instr instanceof MLoad
+                    || instr instanceof SStore
+                    || instr instanceof SLoad
+                    || instr instanceof Call
+                    || instr instanceof StaticCall
+                    || instr instanceof Sha3) {
+                continue;
+            }
+
+            if (instr instanceof Or) {
+                // a = b | c; if b or c is 0, do not propagate their types.
+                for (Variable output : instr.getOutput()) {
+                    for (Variable input : instr.getInput()) {
+                        if (input.hasConstantValue()) {
+                            BigInteger val = BigIntUtil.fromInt256(input.getConstantValue());
+                            if (val.compareTo(BigInteger.ZERO) == 0) {
+                                // Do not propagate this input
+                                continue;
+                            }
+                        }
+                        createAssignVarRule(instr, output, input);
+                    }
+                }
+                continue;
+            }
+
+            for (Variable output : instr.getOutput()) {
+                for (Variable input : instr.getInput()) {
+                    createAssignVarRule(instr, output, input);
+                }
+            }
+        }
+    }
+
+}
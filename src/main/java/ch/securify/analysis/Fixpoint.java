@@ -0,0 +1,704 @@
+/*
+ *  Copyright 2018 Secure, Reliable, and Intelligent Systems Lab, ETH Zurich
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+
+package ch.securify.analysis;
+
+import ch.securify.analysis.datalog.DatalogProgram;
+import ch.securify.analysis.datalog.Relation;
+import ch.securify.utils.IntTupleList;
+import ch.securify.utils.IntTupleReader;
+import ch.securify.utils.IntTupleWriter;
+import ch.securify.utils.OffHeapSortedFile;
+import ch.securify.utils.SortedLongPairSet;
+import ch.securify.utils.SortedLongPairs;
+import ch.securify.utils.SortedLongSet;
+import ch.securify.utils.SortedLongs;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * One evaluation of a Datalog program, either by a compiled Soufflé binary or by an in-JVM {@link DatalogProgram}.
+ *
+ * The input facts of one or more dataflows are collected, the fixpoint is computed once and the output
+ * relations are then read lazily to answer point queries. Dataflows sharing a fixpoint must use disjoint
+ * codes (see {@link CodeCounter}), so that a tuple over the codes of one dataflow can only be derived from
+ * the facts of that dataflow.
+ */
+public class Fixpoint {
+
+    private final String DL_EXEC;
+    private final DatalogProgram program;
+
+    private final Map<String, List<IntTupleList>> inputs = new LinkedHashMap<>();
+    // output relations that will be queried; without any, the fixpoint is not computed
+    private final Set<String> outputs = new HashSet<>();
+    private int users = 0;
+    private boolean computed = false;
+    // false if the evaluation failed or timed out, so that the output relations may be incomplete
+    private boolean complete = false;
+    // true if the output relations were read from the fixpoint cache instead of computed
+    private boolean cached = false;
+    // relations of the cache entry without tuples, whose arity is given by their first query
+    private final Set<String> emptyOutputs = new HashSet<>();
+
+    private Map<String, SortedLongs> fixedpoint = new HashMap<>();
+    // ternary relations that do not fit into a long, see TupleEncoding.isWide
+    private Map<String, SortedLongPairs> wideFixedpoint = new HashMap<>();
+    // relations larger than the off-heap threshold, deleted on dispose
+    private final List<OffHeapSortedFile> offHeapRelations = new ArrayList<>();
+    // fixed when the computation starts; codes beyond it cannot occur in the fixpoint
+    private TupleEncoding encoding;
+
+    private final boolean DEBUG = false;
+
+    private String WORKSPACE, WORKSPACE_OUT;
+    private static final String SOUFFLE_BIN = "souffle";
+    // directories appended to the inherited PATH, where Soufflé and the C++ compiler it calls are usually installed
+    private static final String SOUFFLE_PATH = "/usr/local/sbin:/usr/local/bin:/usr/sbin:/usr/bin:/sbin:/bin";
+    // probed once per JVM
+    private static Boolean souffleInstalled;
+
+    /**
+     * @param dlExec path of the compiled Soufflé program
+     * @param program in-JVM evaluator to use instead of the Soufflé binary, or null
+     */
+    public Fixpoint(String dlExec, DatalogProgram program) {
+        if (program == null && !isSouffleInstalled()) {
+            System.err.println("Soufflé does not seem to be installed.");
+            System.exit(7);
+        }
+        this.DL_EXEC = dlExec;
+        this.program = program;
+    }
+
+    private static synchronized boolean isSouffleInstalled() {
+        if (souffleInstalled == null) {
+            try {
+                runProcess(0, SOUFFLE_BIN);
+                souffleInstalled = true;
+            } catch (IOException | InterruptedException e) {
+                e.printStackTrace();
+                souffleInstalled = false;
+            }
+        }
+        return souffleInstalled;
+    }
+
+    /**
+     * Register a dataflow using this fixpoint, see {@link #dispose()}.
+     */
+    public void retain() {
+        users++;
+    }
+
+    /**
+     * Add input facts. The tuples are read when the fixpoint is computed.
+     * @param ruleName name of the input relation
+     * @param tuples facts of the relation
+     */
+    public void addInput(String ruleName, IntTupleList tuples) {
+        if (computed)
+            throw new IllegalStateException("Fixpoint already computed");
+        inputs.computeIfAbsent(ruleName, k -> new ArrayList<>()).add(tuples);
+    }
+
+    /**
+     * Declare output relations that will be queried, see {@link QueryPlan#getOutputs(String)}.
+     * @param relations names of the output relations
+     */
+    public void demandOutputs(Collection<String> relations) {
+        outputs.addAll(relations);
+    }
+
+    /**
+     * Compute the fixpoint over the input facts. If the computation fails or does not finish in time,
+     * the output relations stay unavailable and queries on them return {@link Status#UNKNOWN}. Queries
+     * asked while the fixpoint is computed, e.g. after its computation was cancelled, wait for it.
+     * @param timeoutMillis time budget for the computation
+     */
+    public synchronized void compute(long timeoutMillis) throws InterruptedException {
+        if (computed)
+            return;
+        computed = true;
+
+        int maxCode = 0;
+        for (List<IntTupleList> tuplesList : inputs.values()) {
+            for (IntTupleList tuples : tuplesList) {
+                for (int t = 0; t < tuples.size(); t++) {
+                    for (int i = 0; i < tuples.getArity(); i++) {
+                        maxCode = Math.max(maxCode, tuples.get(t, i));
+                    }
+                }
+            }
+        }
+        encoding = new TupleEncoding(maxCode);
+
+        if (outputs.isEmpty()) {
+            log("No output relation is queried, skip the fixpoint");
+            return;
+        }
+        if (timeoutMillis <= 0) {
+            log("No time left to compute the fixpoint");
+            return;
+        }
+
+        FixpointCache cache = DataflowFactory.getFixpointCache();
+        String cacheKey = null;
+        if (cache != null) {
+            try {
+                cacheKey = cache.getKey(DL_EXEC, program, inputs, outputs);
+            } catch (IOException e) {
+                log("Fixpoint cache failed: " + e.getMessage());
+            }
+            if (cacheKey != null && readFromCache(cache, cacheKey)) {
+                log("Fixpoint read from the cache");
+                return;
+            }
+        }
+
+        if (program != null) {
+            evaluateInMemory(timeoutMillis);
+        } else {
+            evaluateSouffle(timeoutMillis);
+        }
+
+        if (complete && (program == null || cacheKey != null)) {
+            List<String> names = new ArrayList<>(outputs);
+            List<FixpointBuilder> builders = readOutputs(names);
+            for (int i = 0; i < names.size(); i++) {
+                if (builders.get(i) != null) {
+                    builders.get(i).store(names.get(i));
+                }
+            }
+            if (cacheKey != null) {
+                storeInCache(cache, cacheKey, names, builders);
+            }
+        }
+    }
+
+    private void evaluateInMemory(long timeoutMillis) {
+        long start = System.currentTimeMillis();
+        for (Map.Entry<String, List<IntTupleList>> input : inputs.entrySet()) {
+            for (IntTupleList tuples : input.getValue()) {
+                program.addFacts(input.getKey(), tuples);
+            }
+        }
+        program.setOutputs(outputs);
+        try {
+            program.run(timeoutMillis);
+            complete = program.isComplete();
+        } catch (TimeoutException e) {
+            log("Evaluation TIMEOUT");
+        } catch (IllegalStateException e) {
+            log("Evaluation failed: " + e.getMessage());
+        }
+        log("Evaluation took " + (System.currentTimeMillis() - start) + " ms");
+    }
+
+    private void evaluateSouffle(long timeoutMillis) throws InterruptedException {
+        long start = System.currentTimeMillis();
+        log("Threshold: " + Config.THRESHOLD_COMPILE);
+        try {
+            // create workspace
+            WORKSPACE = Files.createTempDirectory("souffle-").toString();
+            WORKSPACE_OUT = Files.createDirectory(Paths.get(WORKSPACE, "out")).toString();
+            IntTupleWriter factsWriter = new IntTupleWriter();
+            for (Map.Entry<String, List<IntTupleList>> input : inputs.entrySet()) {
+                factsWriter.write(new File(WORKSPACE, input.getKey() + ".facts"), input.getValue());
+            }
+
+            CoreBudget budget = DataflowFactory.getCoreBudget();
+            int threads = budget.acquire();
+            try {
+                log("Threads: " + threads);
+                runProcess(Math.max(1000, timeoutMillis), DL_EXEC, "-F", WORKSPACE, "-D", WORKSPACE_OUT,
+                        "-j", Integer.toString(threads));
+            } finally {
+                budget.release(threads);
+            }
+            complete = true;
+        } catch (IOException e) {
+            log("Souffle failed or timed out: " + e.getMessage());
+        }
+        long elapsedTime = System.currentTimeMillis() - start;
+        String elapsedTimeStr = String.format("%d min, %d sec",
+                TimeUnit.MILLISECONDS.toMinutes(elapsedTime),
+                TimeUnit.MILLISECONDS.toSeconds(elapsedTime) - TimeUnit.MINUTES.toSeconds(TimeUnit.MILLISECONDS.toMinutes(elapsedTime))
+        );
+        log(elapsedTimeStr);
+    }
+
+    /**
+     * Read the output relations of the fixpoint from the cache into the sorted relations that answer the queries.
+     * @return false if the fixpoint is not in the cache or cannot be read
+     */
+    private boolean readFromCache(FixpointCache cache, String cacheKey) {
+        Map<String, FixpointBuilder> builders = new HashMap<>();
+        boolean found = false;
+        try {
+            found = cache.get(cacheKey, (ruleName, arity, size) -> {
+                if (arity == 0) {
+                    emptyOutputs.add(ruleName);
+                    return tuple -> { };
+                }
+                FixpointBuilder builder = new FixpointBuilder(arity, size);
+                builders.put(ruleName, builder);
+                return tuple -> builder.add(
+                        tuple[0],
+                        arity > 1 ? tuple[1] : 0,
+                        arity > 2 ? tuple[2] : 0);
+            });
+            if (found) {
+                for (Map.Entry<String, FixpointBuilder> builder : builders.entrySet()) {
+                    builder.getValue().finish().store(builder.getKey());
+                }
+            }
+        } catch (IOException | UncheckedIOException e) {
+            log("Fixpoint cache failed: " + e.getMessage());
+            found = false;
+        }
+        if (!found) {
+            builders.values().forEach(FixpointBuilder::discard);
+            fixedpoint.clear();
+            wideFixedpoint.clear();
+            emptyOutputs.clear();
+            return false;
+        }
+        cached = true;
+        complete = true;
+        return true;
+    }
+
+    /**
+     * Store the output relations of the evaluation in the cache, streaming the tuples from the relations
+     * that answer the queries.
+     * @param builders relation of each name, see {@link #readOutputs(List)}
+     */
+    private void storeInCache(FixpointCache cache, String cacheKey, List<String> names, List<FixpointBuilder> builders) {
+        Map<String, FixpointCache.RelationSource> relations = new HashMap<>();
+        for (int i = 0; i < names.size(); i++) {
+            FixpointCache.RelationSource relation = builders.get(i);
+            if (relation == null) {
+                File file = program == null ? new File(WORKSPACE_OUT, names.get(i) + ".csv") : null;
+                if (file == null || !file.isFile() || file.length() > 0) {
+                    log("Fixpoint cache skipped, " + names.get(i) + " was not read");
+                    return;
+                }
+                relation = EMPTY_RELATION;
+            }
+            relations.put(names.get(i), relation);
+        }
+        try {
+            cache.put(cacheKey, relations);
+        } catch (IOException e) {
+            log("Fixpoint cache failed: " + e.getMessage());
+        }
+    }
+
+    // output relation of Soufflé without tuples, see IntTupleReader.getArity
+    private static final FixpointCache.RelationSource EMPTY_RELATION = new FixpointCache.RelationSource() {
+        @Override
+        public int getArity() {
+            return 0;
+        }
+
+        @Override
+        public int size() {
+            return 0;
+        }
+
+        @Override
+        public void forEach(Consumer<int[]> consumer) {
+        }
+    };
+
+    /**
+     * Release the fixpoint for one of its dataflows. The workspace is removed once all of them released it.
+     */
+    public void dispose() throws IOException, InterruptedException {
+        if (--users > 0)
+            return;
+        synchronized (offHeapRelations) {
+            offHeapRelations.forEach(OffHeapSortedFile::close);
+            offHeapRelations.clear();
+        }
+        if (WORKSPACE == null)
+            return;
+        try (Stream<Path> files = Files.walk(Paths.get(WORKSPACE))) {
+            // children before their directories
+            files.sorted(Comparator.reverseOrder()).forEach(file -> file.toFile().delete());
+        }
+        WORKSPACE = null;
+        WORKSPACE_OUT = null;
+    }
+
+    private void readFixedpoint(String ruleName, int arity) throws IOException {
+        if (emptyOutputs.contains(ruleName)) {
+            new FixpointBuilder(arity, 0).finish().store(ruleName);
+            return;
+        }
+        if (cached) {
+            throw new IOException("No fixpoint for " + ruleName + " in the cache");
+        }
+        if (program != null) {
+            readInMemoryOutput(ruleName, arity).store(ruleName);
+            return;
+        }
+        // the output files of a failed or killed run may be incomplete
+        if (!complete || WORKSPACE_OUT == null) {
+            throw new IOException("No fixpoint for " + ruleName);
+        }
+
+        readSouffleOutput(ruleName, arity).store(ruleName);
+    }
+
+    /**
+     * Read the demanded output relations of the evaluation in parallel, instead of each one on its first query.
+     * @return the relation of each name, or null if it cannot be read yet. Empty relations of Soufflé, whose
+     * arity the file does not tell, are read on their first query.
+     */
+    private List<FixpointBuilder> readOutputs(List<String> names) {
+        return names.parallelStream().map(ruleName -> {
+            try {
+                if (program != null) {
+                    Relation relation = program.getRelation(ruleName);
+                    return relation == null ? null : readInMemoryOutput(ruleName, relation.getArity());
+                }
+                int arity = IntTupleReader.getArity(new File(WORKSPACE_OUT, ruleName + ".csv"));
+                return arity > 0 ? readSouffleOutput(ruleName, arity) : null;
+            } catch (IOException | UncheckedIOException e) {
+                log("Reading " + ruleName + " failed: " + e.getMessage());
+                return null;
+            }
+        }).collect(Collectors.toList());
+    }
+
+    private FixpointBuilder readSouffleOutput(String ruleName, int arity) throws IOException {
+        File file = new File(WORKSPACE_OUT, ruleName + ".csv");
+        // every tuple takes at least a few bytes, so this bounds the number of reallocations
+        FixpointBuilder builder = new FixpointBuilder(arity, (int) Math.min(file.length() / 8 + 16, Integer.MAX_VALUE - 8));
+        IntTupleReader.read(file, arity, tuple -> builder.add(
+                tuple[0],
+                arity > 1 ? tuple[1] : 0,
+                arity > 2 ? tuple[2] : 0));
+        return builder.finish();
+    }
+
+    private FixpointBuilder readInMemoryOutput(String ruleName, int arity) throws IOException {
+        Relation relation = program.getRelation(ruleName);
+        if (!program.isComplete() || relation == null) {
+            throw new IOException("No fixpoint for " + ruleName);
+        }
+        FixpointBuilder builder = new FixpointBuilder(arity, relation.size());
+        for (int t = 0; t < relation.size(); t++) {
+            builder.add(
+                    relation.get(t, 0),
+                    arity > 1 ? relation.get(t, 1) : 0,
+                    arity > 2 ? relation.get(t, 2) : 0);
+        }
+        return builder.finish();
+    }
+
+    /**
+     * Collects the packed tuples of one output relation. Once the tuples exceed the off-heap threshold, they
+     * are sorted in runs of that size and merged into an {@link OffHeapSortedFile}. Once finished, the relation
+     * is written to the fixpoint cache from the sorted tuples.
+     */
+    private class FixpointBuilder implements FixpointCache.RelationSource {
+        private final int arity;
+        private final boolean wide;
+        private final int threshold = Math.max(DataflowFactory.getOffHeapThreshold(), 16);
+        private long[] entries;
+        private long[] highEntries;
+        private int count = 0;
+        private OffHeapSortedFile.Builder offHeap;
+        private SortedLongs tuples;
+        private SortedLongPairs wideTuples;
+
+        FixpointBuilder(int arity, int expectedSize) {
+            this.arity = arity;
+            this.wide = encoding.isWide(arity);
+            entries = new long[Math.max(Math.min(expectedSize, threshold), 16)];
+            if (wide) {
+                highEntries = new long[entries.length];
+            }
+        }
+
+        /**
+         * @throws UncheckedIOException if the tuples cannot be written off-heap
+         */
+        void add(int a, int b, int c) {
+            if (count == entries.length) {
+                if (count < threshold) {
+                    entries = Arrays.copyOf(entries, (int) Math.min(entries.length * 2L, threshold));
+                    if (wide) {
+                        highEntries = Arrays.copyOf(highEntries, entries.length);
+                    }
+                } else {
+                    try {
+                        if (offHeap == null) {
+                            offHeap = new OffHeapSortedFile.Builder(wide ? 2 : 1);
+                        }
+                        offHeap.addRun(highEntries, entries, count);
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                    count = 0;
+                }
+            }
+            encoding.check(a);
+            if (arity == 1) {
+                entries[count] = encoding.encode(a);
+            } else if (arity == 2) {
+                entries[count] = encoding.encode(a, encoding.check(b));
+            } else if (wide) {
+                highEntries[count] = a;
+                entries[count] = encoding.encode(encoding.check(b), encoding.check(c));
+            } else {
+                entries[count] = encoding.encode(a, encoding.check(b), encoding.check(c));
+            }
+            count++;
+        }
+
+        /**
+         * Sort the tuples, which may take a while for the off-heap ones, see {@link #store(String)}.
+         */
+        FixpointBuilder finish() throws IOException {
+            if (offHeap != null) {
+                offHeap.addRun(highEntries, entries, count);
+                OffHeapSortedFile file = offHeap.build();
+                synchronized (offHeapRelations) {
+                    offHeapRelations.add(file);
+                }
+                tuples = file;
+                wideTuples = file;
+            } else if (wide) {
+                wideTuples = new SortedLongPairSet(highEntries, entries, count);
+            } else {
+                tuples = new SortedLongSet(entries, count);
+            }
+            entries = null;
+            highEntries = null;
+            return this;
+        }
+
+        /**
+         * Delete the runs of an unfinished relation.
+         */
+        void discard() {
+            if (offHeap != null) {
+                offHeap.close();
+            }
+        }
+
+        @Override
+        public int getArity() {
+            return arity;
+        }
+
+        @Override
+        public int size() {
+            return wide ? wideTuples.size() : tuples.size();
+        }
+
+        @Override
+        public void forEach(Consumer<int[]> consumer) {
+            int[] tuple = new int[arity];
+            for (int t = 0; t < size(); t++) {
+                if (wide) {
+                    long low = wideTuples.getLow(t);
+                    tuple[0] = (int) wideTuples.getHigh(t);
+                    tuple[1] = encoding.decode(low, 2, 0);
+                    tuple[2] = encoding.decode(low, 2, 1);
+                } else {
+                    long packed = tuples.get(t);
+                    for (int i = 0; i < arity; i++) {
+                        tuple[i] = encoding.decode(packed, arity, i);
+                    }
+                }
+                consumer.accept(tuple);
+            }
+        }
+
+        void store(String ruleName) {
+            if (wide) {
+                wideFixedpoint.put(ruleName, wideTuples);
+            } else {
+                fixedpoint.put(ruleName, tuples);
+            }
+        }
+    }
+
+    /**
+     * @return true if output relations were demanded, but the computation failed or did not finish in time
+     */
+    public synchronized boolean isFailed() {
+        return computed && !outputs.isEmpty() && !complete;
+    }
+
+    private synchronized boolean loadFixedpoint(String ruleName, int arity) {
+        if (fixedpoint.containsKey(ruleName) || wideFixedpoint.containsKey(ruleName)) {
+            return true;
+        }
+        try {
+            readFixedpoint(ruleName, arity);
+            return true;
+        } catch (IOException | UncheckedIOException e) {
+            log("Souffle TIMEOUT, returns UNKNOWN");
+            return false;
+        }
+    }
+
+    public int query(String ruleName, int a) {
+        if (!loadFixedpoint(ruleName, 1))
+            return Status.UNKNOWN;
+        if (!encoding.covers(a))
+            return Status.UNSATISFIABLE;
+        return toStatus(fixedpoint.get(ruleName).contains(encoding.encode(a)));
+    }
+
+    public int query(String ruleName, int a, int b) {
+        if (!loadFixedpoint(ruleName, 2))
+            return Status.UNKNOWN;
+        if (!encoding.covers(a) || !encoding.covers(b))
+            return Status.UNSATISFIABLE;
+        return toStatus(fixedpoint.get(ruleName).contains(encoding.encode(a, b)));
+    }
+
+    public int query(String ruleName, int a, int b, int c) {
+        if (!loadFixedpoint(ruleName, 3))
+            return Status.UNKNOWN;
+        if (!encoding.covers(a) || !encoding.covers(b) || !encoding.covers(c))
+            return Status.UNSATISFIABLE;
+        if (encoding.isWide(3))
+            return toStatus(wideFixedpoint.get(ruleName).contains(a, encoding.encode(b, c)));
+        return toStatus(fixedpoint.get(ruleName).contains(encoding.encode(a, b, c)));
+    }
+
+    /**
+     * Select the last column of the tuples of a binary relation with the given first column, by a single
+     * range scan over the sorted relation.
+     * @return the codes in the last column, or null if the fixpoint is not available
+     */
+    public int[] select(String ruleName, int a) {
+        if (!loadFixedpoint(ruleName, 2))
+            return null;
+        if (!encoding.covers(a))
+            return new int[0];
+        return select(fixedpoint.get(ruleName), encoding.encode(a, 0));
+    }
+
+    /**
+     * Select the last column of the tuples of a ternary relation with the given first two columns, by a
+     * single range scan over the sorted relation.
+     * @return the codes in the last column, or null if the fixpoint is not available
+     */
+    public int[] select(String ruleName, int a, int b) {
+        if (!loadFixedpoint(ruleName, 3))
+            return null;
+        if (!encoding.covers(a) || !encoding.covers(b))
+            return new int[0];
+        if (encoding.isWide(3)) {
+            SortedLongPairs tuples = wideFixedpoint.get(ruleName);
+            int from = tuples.lowerBound(a, encoding.encode(b, 0)), to = from;
+            while (to < tuples.size() && tuples.getHigh(to) == a && tuples.getLow(to) >>> encoding.getBits() == b)
+                to++;
+            int[] codes = new int[to - from];
+            for (int t = from; t < to; t++) {
+                codes[t - from] = encoding.decodeLast(tuples.getLow(t));
+            }
+            return codes;
+        }
+        return select(fixedpoint.get(ruleName), encoding.encode(a, b, 0));
+    }
+
+    /**
+     * @param tuples sorted relation
+     * @param prefix packed tuple whose last column is 0
+     * @return the last column of the tuples that agree with the prefix on the other columns
+     */
+    private int[] select(SortedLongs tuples, long prefix) {
+        int bits = encoding.getBits();
+        int from = tuples.lowerBound(prefix), to = from;
+        while (to < tuples.size() && tuples.get(to) >>> bits == prefix >>> bits)
+            to++;
+        int[] codes = new int[to - from];
+        for (int t = from; t < to; t++) {
+            codes[t - from] = encoding.decodeLast(tuples.get(t));
+        }
+        return codes;
+    }
+
+    private static int toStatus(boolean contained) {
+        return contained ? Status.SATISFIABLE : Status.UNSATISFIABLE;
+    }
+
+    /**
+     * Run a process, reading its output and errors while it runs so that it cannot block on a full pipe.
+     * @param timeoutMillis time after which the process is killed, or 0 to wait until it terminates
+     * @param command program and arguments
+     * @throws IOException if the process cannot be started, fails or times out
+     */
+    private static void runProcess(long timeoutMillis, String... command) throws IOException, InterruptedException {
+        ProcessBuilder builder = new ProcessBuilder(command).redirectErrorStream(true);
+        builder.environment().merge("PATH", SOUFFLE_PATH, (path, extra) -> path + File.pathSeparator + extra);
+        Process proc = builder.start();
+        Thread drain = new Thread(() -> {
+            try (InputStream in = proc.getInputStream()) {
+                byte[] buffer = new byte[8192];
+                while (in.read(buffer) >= 0) {
+                    // the output is not used
+                }
+            } catch (IOException e) {
+                // the process was killed
+            }
+        }, "souffle-output");
+        drain.setDaemon(true);
+        drain.start();
+        try {
+            if (timeoutMillis > 0) {
+                if (!proc.waitFor(timeoutMillis, TimeUnit.MILLISECONDS)) {
+                    throw new IOException(command[0] + " timed out");
+                }
+            } else {
+                proc.waitFor();
+            }
+        } finally {
+            if (proc.isAlive()) {
+                proc.destroyForcibly().waitFor();
+            }
+        }
+        drain.join();
+        if (proc.exitValue() != 0) {
+            throw new IOException(command[0] + " exited with " + proc.exitValue());
+        }
+    }
+
+    private void log(String msg) {
+        if (DEBUG)
+            System.out.println(this.getClass().getSimpleName() + ": " + msg);
+    }
+}
@@ -0,0 +1,208 @@
+/*
+ *  Copyright 2018 Secure, Reliable, and Intelligent Systems Lab, ETH Zurich
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+
+package ch.securify.analysis;
+
+import ch.securify.analysis.datalog.DatalogProgram;
+import ch.securify.analysis.datalog.Index;
+import ch.securify.analysis.datalog.Relation;
+import ch.securify.utils.DevNull;
+import ch.securify.utils.FileCache;
+import ch.securify.utils.IntTupleList;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.util.*;
+import java.util.function.Consumer;
+
+/**
+ * On-disk cache of the output relations of fixpoints, keyed by the hash of the program, the demanded
+ * output relations and the input facts. Analyzing the same instructions again, e.g. in a later run or
+ * with patterns that demand the same relations, reads the relations instead of computing them.
+ *
+ * The program is identified by the content of the Soufflé binary, or by the classes of the in-JVM
+ * evaluator, so that changing the Datalog rules invalidates the cached fixpoints.
+ */
+public class FixpointCache {
+
+    /**
+     * An output relation written to an entry.
+     */
+    public interface RelationSource {
+        /**
+         * @return number of columns, or 0 if the relation is empty and its arity is not known
+         */
+        int getArity();
+
+        int size();
+
+        /**
+         * @param consumer receives the tuples of the relation, in an array that is reused
+         */
+        void forEach(Consumer<int[]> consumer);
+    }
+
+    /**
+     * Receives the output relations read from an entry.
+     */
+    public interface RelationReader {
+        /**
+         * @param name name of the relation
+         * @param arity number of columns, or 0 if the relation is empty and its arity is not known
+         * @param size number of tuples
+         * @return consumer of the tuples of the relation, passed in an array that is reused
+         */
+        Consumer<int[]> startRelation(String name, int arity, int size);
+    }
+
+    // version of the entry format
+    private static final int VERSION = 2;
+
+    private final FileCache cache;
+    private final Map<String, byte[]> programHashes = new HashMap<>();
+
+    /**
+     * @param directory directory of the cache files, created if needed
+     * @param maxBytes size limit of the cache files
+     */
+    public FixpointCache(File directory, long maxBytes) throws IOException {
+        cache = new FileCache(directory, ".fixpoint.gz", maxBytes);
+    }
+
+    /**
+     * @param dlExec path of the compiled Soufflé program, if program is null
+     * @param program in-JVM evaluator, or null
+     * @param inputs input facts by relation
+     * @param outputs demanded output relations
+     * @return key of the fixpoint
+     */
+    public String getKey(String dlExec, DatalogProgram program, Map<String, List<IntTupleList>> inputs, Set<String> outputs) throws IOException {
+        MessageDigest digest = FileCache.newDigest();
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new DigestOutputStream(new DevNull(), digest)))) {
+            out.writeInt(VERSION);
+            out.write(programHash(dlExec, program));
+            for (String output : new TreeSet<>(outputs)) {
+                out.writeUTF(output);
+            }
+            for (String relation : new TreeSet<>(inputs.keySet())) {
+                out.writeUTF(relation);
+                for (IntTupleList tuples : inputs.get(relation)) {
+                    out.writeInt(tuples.size());
+                    for (int t = 0; t < tuples.size(); t++) {
+                        for (int i = 0; i < tuples.getArity(); i++) {
+                            out.writeInt(tuples.get(t, i));
+                        }
+                    }
+                }
+            }
+        }
+        return FileCache.toKey(digest);
+    }
+
+    /**
+     * Stream the output relations of a fixpoint from the cache.
+     * @param reader receives the relations
+     * @return false if the fixpoint is not in the cache
+     */
+    public boolean get(String key, RelationReader reader) {
+        return cache.get(key, in -> {
+            for (int count = in.readInt(); count > 0; count--) {
+                String name = in.readUTF();
+                int arity = in.readInt();
+                int size = in.readInt();
+                Consumer<int[]> consumer = reader.startRelation(name, arity, size);
+                int[] tuple = new int[arity];
+                for (int t = 0; t < size; t++) {
+                    for (int i = 0; i < arity; i++) {
+                        tuple[i] = in.readInt();
+                    }
+                    consumer.accept(tuple);
+                }
+            }
+            return Boolean.TRUE;
+        }) != null;
+    }
+
+    /**
+     * Store the output relations of a completely computed fixpoint. The tuples are streamed from the
+     * relations into the entry.
+     */
+    public void put(String key, Map<String, RelationSource> relations) throws IOException {
+        try {
+            cache.put(key, out -> {
+                out.writeInt(relations.size());
+                for (Map.Entry<String, RelationSource> relation : relations.entrySet()) {
+                    RelationSource tuples = relation.getValue();
+                    out.writeUTF(relation.getKey());
+                    out.writeInt(tuples.getArity());
+                    out.writeInt(tuples.size());
+                    tuples.forEach(tuple -> {
+                        try {
+                            for (int value : tuple) {
+                                out.writeInt(value);
+                            }
+                        } catch (IOException e) {
+                            throw new UncheckedIOException(e);
+                        }
+                    });
+                }
+            });
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    public int getHits() {
+        return cache.getHits();
+    }
+
+    public int getMisses() {
+        return cache.getMisses();
+    }
+
+    private synchronized byte[] programHash(String dlExec, DatalogProgram program) throws IOException {
+        String id = program != null ? program.getClass().getName() : dlExec;
+        byte[] hash = programHashes.get(id);
+        if (hash == null) {
+            hash = getProgramHash(dlExec, program);
+            programHashes.put(id, hash);
+        }
+        return hash;
+    }
+
+    /**
+     * @param dlExec path of the compiled Soufflé program, if program is null
+     * @param program in-JVM evaluator, or null
+     * @return hash of the Soufflé binary or of the classes of the evaluator
+     */
+    public static byte[] getProgramHash(String dlExec, DatalogProgram program) throws IOException {
+        MessageDigest digest = FileCache.newDigest();
+        if (program != null) {
+            for (Class<?> programClass = program.getClass(); programClass != Object.class; programClass = programClass.getSuperclass()) {
+                digest.update(FileCache.readClassFile(programClass));
+            }
+            digest.update(FileCache.readClassFile(Relation.class));
+            digest.update(FileCache.readClassFile(Index.class));
+        } else {
+            digest.update(Files.readAllBytes(new File(dlExec).toPath()));
+        }
+        return digest.digest();
+    }
+}
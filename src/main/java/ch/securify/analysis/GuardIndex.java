@@ -0,0 +1,148 @@
+/*
+ *  Copyright 2018 Secure, Reliable, and Intelligent Systems Lab, ETH Zurich
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+
+package ch.securify.analysis;
+
+import ch.securify.decompiler.instructions.Instruction;
+import ch.securify.decompiler.instructions.JumpI;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+
+/**
+ * The conditional jumps guarding each instruction of a dataflow, and the facts their conditions depend on.
+ *
+ * A JumpI must guard an instruction if it must precede it, and may guard it if the instruction may follow
+ * it. The guards of all instructions are indexed in one pass over the jumps, with a single set-valued
+ * precedence query per jump, when the first instruction is looked up. The dependencies of a condition are
+ * computed on first use and kept, so that patterns checking many candidates against the same branches ask
+ * each question once.
+ */
+public class GuardIndex {
+
+    private final AbstractDataflow dataflow;
+    private final List<JumpI> jumps = new ArrayList<>();
+
+    // instruction -> guarding jumps, in instruction order; null until the first lookup
+    private Map<Instruction, List<JumpI>> mustGuards;
+    private Map<Instruction, List<JumpI>> mayGuards;
+    private final Map<JumpI, Map<Object, Boolean>> mustConditionDeps = new IdentityHashMap<>();
+    private final Map<JumpI, Map<Object, Boolean>> mayConditionDeps = new IdentityHashMap<>();
+
+    /**
+     * @param dataflow dataflow answering the precedence and dependency queries
+     * @param instructions instructions of the dataflow
+     */
+    public GuardIndex(AbstractDataflow dataflow, List<Instruction> instructions) {
+        this.dataflow = dataflow;
+        for (Instruction instr : instructions) {
+            if (instr instanceof JumpI) {
+                jumps.add((JumpI) instr);
+            }
+        }
+    }
+
+    /**
+     * @param instr a target of the mustPrecede queries from JumpI in the query plan
+     * @return the conditional jumps that must precede the instruction, in instruction order
+     */
+    public List<JumpI> getMustGuards(Instruction instr) {
+        dataflow.checkPrecedenceTarget(QueryPlan.MUST_PRECEDE, instr);
+        if (mustGuards == null) {
+            mustGuards = index(dataflow::mustPrecedeTargets);
+        }
+        return mustGuards.getOrDefault(instr, Collections.emptyList());
+    }
+
+    /**
+     * @param instr a target of the mayFollow queries from JumpI in the query plan
+     * @return the conditional jumps the instruction may follow, in instruction order
+     */
+    public List<JumpI> getMayGuards(Instruction instr) {
+        dataflow.checkPrecedenceTarget(QueryPlan.MAY_FOLLOW, instr);
+        if (mayGuards == null) {
+            mayGuards = index(dataflow::mayFollowTargets);
+        }
+        return mayGuards.getOrDefault(instr, Collections.emptyList());
+    }
+
+    /**
+     * @param targets the instructions a jump precedes, among the targets of the query plan
+     * @return the jumps preceding each instruction
+     */
+    private Map<Instruction, List<JumpI>> index(Function<JumpI, List<Instruction>> targets) {
+        Map<Instruction, List<JumpI>> guards = new IdentityHashMap<>();
+        for (JumpI jump : jumps) {
+            for (Instruction target : targets.apply(jump)) {
+                guards.computeIfAbsent(target, t -> new ArrayList<>()).add(jump);
+            }
+        }
+        return guards;
+    }
+
+    /**
+     * @param instr guarded instruction
+     * @param types facts (instruction classes, variables or constants)
+     * @return true if a jump that must precede the instruction has a condition that must depend on all the facts
+     */
+    public boolean isMustGuardedBy(Instruction instr, Object... types) {
+        for (JumpI jump : getMustGuards(instr)) {
+            if (conditionDependsOnAll(jump, types, mustConditionDeps, true)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @param instr guarded instruction
+     * @param types facts (instruction classes, variables or constants)
+     * @return true if a jump that the instruction may follow has a condition that may depend on all the facts
+     */
+    public boolean isMayGuardedBy(Instruction instr, Object... types) {
+        for (JumpI jump : getMayGuards(instr)) {
+            if (conditionDependsOnAll(jump, types, mayConditionDeps, false)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private boolean conditionDependsOnAll(JumpI jump, Object[] types, Map<JumpI, Map<Object, Boolean>> cache, boolean must) {
+        Map<Object, Boolean> deps = cache.computeIfAbsent(jump, j -> new HashMap<>());
+        for (Object type : types) {
+            Boolean dependsOn = deps.get(type);
+            if (dependsOn == null) {
+                int s = must
+                        ? dataflow.varMustDepOn(jump, jump.getCondition(), type)
+                        : dataflow.varMayDepOn(jump, jump.getCondition(), type);
+                dependsOn = s == Status.SATISFIABLE;
+                deps.put(type, dependsOn);
+            }
+            if (!dependsOn) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
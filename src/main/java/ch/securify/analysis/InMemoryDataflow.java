@@ -0,0 +1,40 @@
+/*
+ *  Copyright 2018 Secure, Reliable, and Intelligent Systems Lab, ETH Zurich
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+
+package ch.securify.analysis;
+
+import ch.securify.analysis.datalog.MayImplicitProgram;
+import ch.securify.analysis.datalog.MustExplicitProgram;
+import ch.securify.decompiler.instructions.Instruction;
+
+import java.util.List;
+
+/**
+ * Same analysis as {@link Dataflow}, but the Datalog programs are evaluated inside the JVM
+ * instead of by the compiled Soufflé binaries.
+ */
+public class InMemoryDataflow extends Dataflow {
+
+    public InMemoryDataflow(List<Instruction> instructions) {
+        super(instructions, new MustExplicitProgram(), new MayImplicitProgram());
+    }
+
+    public static List<AbstractDataflow> createBatch(List<List<Instruction>> bodies) {
+        return createBatch(bodies, MustExplicitProgram::new, MayImplicitProgram::new);
+    }
+}
@@ -18,22 +18,60 @@
 
 package ch.securify.analysis;
 
+import ch.securify.analysis.datalog.DatalogProgram;
 import ch.securify.decompiler.Variable;
 import ch.securify.decompiler.instructions.*;
 
 import java.io.IOException;
 import java.util.List;
+import java.util.Set;
 
 public class MayImplicitDataflow extends AbstractDataflow {
 
+    public static final String SOUFFLE_PROGRAM = "build/mayImplicit";
+
     public MayImplicitDataflow(){}
 
     public MayImplicitDataflow(List<Instruction> decompiledInstructions) throws IOException, InterruptedException {
-        DL_EXEC = "build/mayImplicit";
+        this(decompiledInstructions, null);
+    }
+
+    public MayImplicitDataflow(List<Instruction> decompiledInstructions, DatalogProgram program) throws IOException, InterruptedException {
+        DL_EXEC = SOUFFLE_PROGRAM;
+        this.program = program;
         instructions = decompiledInstructions;
         initDataflow();
     }
 
+    /**
+     * @param program in-JVM evaluator, or null to run the Soufflé binary
+     * @return a fixpoint of this analysis, to be shared by dataflows created with {@link #withFacts}
+     */
+    static Fixpoint createFixpoint(DatalogProgram program) {
+        return new Fixpoint(SOUFFLE_PROGRAM, program);
+    }
+
+    /**
+     * Create the dataflow and derive its facts, without computing the fixpoint.
+     * @param decompiledInstructions instructions to analyze
+     * @param facts common facts of the instructions
+     * @param fixpoint fixpoint to add the facts to
+     * @return dataflow on which {@link #computeFixpoint(long)} still has to be called
+     */
+    static MayImplicitDataflow withFacts(List<Instruction> decompiledInstructions, FactBase facts, Fixpoint fixpoint) throws IOException, InterruptedException {
+        MayImplicitDataflow dataflow = new MayImplicitDataflow();
+        dataflow.facts = facts;
+        dataflow.fixpoint = fixpoint;
+        dataflow.instructions = decompiledInstructions;
+        dataflow.deriveFacts();
+        return dataflow;
+    }
+
+    @Override
+    protected String getAnalysis() {
+        return QueryPlan.MAY_IMPLICIT;
+    }
+
     @Override
     public int mustPrecede(Instruction instr1, Instruction instr2) {
         throw new UnsupportedOperationException();
@@ -41,7 +79,7 @@ public class MayImplicitDataflow extends AbstractDataflow {
 
     @Override
     public int mayFollow(Instruction instr1, Instruction instr2) {
-        return runQuery("isAfter", getCode(instr1), getCode(instr2));
+        return runPrecedenceQuery(QueryPlan.MAY_FOLLOW, instr1, instr2);
     }
 
     @Override
@@ -49,6 +87,36 @@ public class MayImplicitDataflow extends AbstractDataflow {
         return runQuery("reach", getCode(lhs), getCode(type));
     }
 
+    @Override
+    public List<Instruction> mayFollowAll(Instruction instr, Class<? extends Instruction> type) {
+        return runPrecedenceSetQuery(QueryPlan.MAY_FOLLOW, instr, type);
+    }
+
+    @Override
+    public Set<Object> varMayDepOnAll(Instruction instr, Variable lhs) {
+        return runSetQuery("reach", getCode(lhs));
+    }
+
+    @Override
+    public List<Instruction> mustPrecedeAll(Instruction instr, Class<? extends Instruction> type) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public Set<Object> varMustDepOnAll(Instruction instr, Variable lhs) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public List<Instruction> mayFollowTargets(Instruction instr) {
+        return runPrecedenceTargetsQuery(QueryPlan.MAY_FOLLOW, instr);
+    }
+
+    @Override
+    public List<Instruction> mustPrecedeTargets(Instruction instr) {
+        throw new UnsupportedOperationException();
+    }
+
     @Override
     public int varMustDepOn(Instruction instr1, Variable lhs, Object type) {
         throw new UnsupportedOperationException();
@@ -74,29 +142,10 @@ public class MayImplicitDataflow extends AbstractDataflow {
         return runQuery("reachInstr", getCode(instr), getCode(type));
     }
 
-    @Override
-    protected void createSLoadRule(Instruction instr, Variable index, Variable var) {
-        int indexCode;
-        if (index.hasConstantValue()) {
-            indexCode = getCode(getInt(index.getConstantValue()));
-        } else {
-            indexCode = unk;
-            // if you have "var = sload(index)", to propagate labels from index to var we add "var = index"
-            createAssignVarRule(instr, var, index);
-        }
-        appendRule("sload", getCode(instr), indexCode, getCode(var));
-    }
 
     @Override
-    protected void createMLoadRule(Instruction instr, Variable offset, Variable var) {
-        int offsetCode;
-        if (offset.hasConstantValue()) {
-            offsetCode = getCode(getMemoryVarForIndex(getInt(offset.getConstantValue())));
-        } else {
-            offsetCode = unk;
-            createAssignVarRule(instr, var, offset);
-        }
-        appendRule("mload", getCode(instr), offsetCode, getCode(var));
+    protected boolean propagatesUnknownLoadOffset() {
+        return true;
     }
 
     @Override
@@ -117,6 +166,7 @@ public class MayImplicitDataflow extends AbstractDataflow {
                 createFollowsRule(instr, nextInstruction);
             }
         }
+        indexPrecedence(QueryPlan.MAY_FOLLOW, relations.get("follows"));
     }
 
     @Override
@@ -21,9 +21,12 @@ package ch.securify.analysis;
 import java.io.IOException;
 import java.util.*;
 
+import ch.securify.analysis.datalog.DatalogProgram;
 import ch.securify.decompiler.instructions.*;
 
 import ch.securify.decompiler.Variable;
+import ch.securify.utils.IntTupleList;
+import ch.securify.utils.LongHashSet;
 
 /**
  * @author andrei
@@ -31,17 +34,53 @@ import ch.securify.decompiler.Variable;
  */
 public class MustExplicitDataflow extends AbstractDataflow {
 
+    public static final String SOUFFLE_PROGRAM = "build/mustExplicit";
+
     public MustExplicitDataflow(){}
 
     public MustExplicitDataflow(List<Instruction> decompiledInstructions) throws IOException, InterruptedException {
-        DL_EXEC = "build/mustExplicit";
+        this(decompiledInstructions, null);
+    }
+
+    public MustExplicitDataflow(List<Instruction> decompiledInstructions, DatalogProgram program) throws IOException, InterruptedException {
+        DL_EXEC = SOUFFLE_PROGRAM;
+        this.program = program;
         instructions = decompiledInstructions;
         initDataflow();
     }
 
+    /**
+     * @param program in-JVM evaluator, or null to run the Soufflé binary
+     * @return a fixpoint of this analysis, to be shared by dataflows created with {@link #withFacts}
+     */
+    static Fixpoint createFixpoint(DatalogProgram program) {
+        return new Fixpoint(SOUFFLE_PROGRAM, program);
+    }
+
+    /**
+     * Create the dataflow and derive its facts, without computing the fixpoint.
+     * @param decompiledInstructions instructions to analyze
+     * @param facts common facts of the instructions
+     * @param fixpoint fixpoint to add the facts to
+     * @return dataflow on which {@link #computeFixpoint(long)} still has to be called
+     */
+    static MustExplicitDataflow withFacts(List<Instruction> decompiledInstructions, FactBase facts, Fixpoint fixpoint) throws IOException, InterruptedException {
+        MustExplicitDataflow dataflow = new MustExplicitDataflow();
+        dataflow.facts = facts;
+        dataflow.fixpoint = fixpoint;
+        dataflow.instructions = decompiledInstructions;
+        dataflow.deriveFacts();
+        return dataflow;
+    }
+
+    @Override
+    protected String getAnalysis() {
+        return QueryPlan.MUST_EXPLICIT;
+    }
+
     @Override
     public int mustPrecede(Instruction instr1, Instruction instr2) {
-        return runQuery("mustPrecede", getCode(instr1), getCode(instr2));
+        return runPrecedenceQuery(QueryPlan.MUST_PRECEDE, instr1, instr2);
     }
 
     @Override
@@ -54,6 +93,36 @@ public class MustExplicitDataflow extends AbstractDataflow {
         return runQuery("reach", getCode(instr1), getCode(lhs), getCode(type));
     }
 
+    @Override
+    public List<Instruction> mustPrecedeAll(Instruction instr, Class<? extends Instruction> type) {
+        return runPrecedenceSetQuery(QueryPlan.MUST_PRECEDE, instr, type);
+    }
+
+    @Override
+    public Set<Object> varMustDepOnAll(Instruction instr, Variable lhs) {
+        return runSetQuery("reach", getCode(instr), getCode(lhs));
+    }
+
+    @Override
+    public List<Instruction> mustPrecedeTargets(Instruction instr) {
+        return runPrecedenceTargetsQuery(QueryPlan.MUST_PRECEDE, instr);
+    }
+
+    @Override
+    public List<Instruction> mayFollowTargets(Instruction instr) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public List<Instruction> mayFollowAll(Instruction instr, Class<? extends Instruction> type) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public Set<Object> varMayDepOnAll(Instruction instr, Variable lhs) {
+        throw new UnsupportedOperationException();
+    }
+
     public int varMayDepOn(Instruction instr1, Variable lhs, Object type) {
         throw new UnsupportedOperationException();
     }
@@ -106,28 +175,7 @@ public class MustExplicitDataflow extends AbstractDataflow {
                 createFollowsRule(instr, nextInstruction);
             }
         }
-    }
-
-    @Override
-    protected void createSLoadRule(Instruction instr, Variable index, Variable var) {
-        int indexCode;
-        if (index.hasConstantValue()) {
-            indexCode = getCode(getInt(index.getConstantValue()));
-        } else {
-            indexCode = unk;
-        }
-        appendRule("sload", getCode(instr), indexCode, getCode(var));
-    }
-
-    @Override
-    protected void createMLoadRule(Instruction instr, Variable offset, Variable var) {
-        int offsetCode;
-        if (offset.hasConstantValue()) {
-            offsetCode = getCode(getMemoryVarForIndex(getInt(offset.getConstantValue())));
-        } else {
-            offsetCode = unk;
-        }
-        appendRule("mload", getCode(instr), offsetCode, getCode(var));
+        indexPrecedence(QueryPlan.MUST_PRECEDE, deriveMustPrecedeSteps());
     }
 
     @Override
@@ -146,6 +194,39 @@ public class MustExplicitDataflow extends AbstractDataflow {
         }
     }
 
+    /**
+     * mustPrecedeStep of smt_files/mustExplicit.dl, whose transitive closure is mustPrecede.
+     */
+    private IntTupleList deriveMustPrecedeSteps() {
+        IntTupleList follows = relations.get("follows");
+        IntTupleList jump = relations.get("jump");
+        LongHashSet tags = new LongHashSet();
+        IntTupleList tagList = relations.get("tag");
+        for (int t = 0; t < tagList.size(); t++) {
+            tags.add(tagList.get(t, 0));
+        }
+        LongHashSet oneBranchTags = new LongHashSet();
+        IntTupleList oneBranchTagList = relations.get("oneBranchTag");
+        for (int t = 0; t < oneBranchTagList.size(); t++) {
+            oneBranchTags.add(oneBranchTagList.get(t, 0));
+        }
+
+        IntTupleList steps = new IntTupleList(2);
+        // mustPrecedeStep(From, To) :- follows(From, To), !tag(To).
+        for (int t = 0; t < follows.size(); t++) {
+            if (!tags.contains(follows.get(t, 1)))
+                steps.add(follows.get(t, 0), follows.get(t, 1));
+        }
+        // mustPrecedeStep(From, Mid) :- jump(From, Mid, _), oneBranchTag(Mid).
+        // mustPrecedeStep(From, To) :- jump(From, _, To).
+        for (int t = 0; t < jump.size(); t++) {
+            if (oneBranchTags.contains(jump.get(t, 1)))
+                steps.add(jump.get(t, 0), jump.get(t, 1));
+            steps.add(jump.get(t, 0), jump.get(t, 2));
+        }
+        return steps;
+    }
+
     private void createFollowsRule(Instruction from, Instruction to) {
         if (from instanceof JumpI) {
             Instruction mergeInstruction = ((JumpI)from).getMergeInstruction();
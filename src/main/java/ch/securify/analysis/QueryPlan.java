@@ -0,0 +1,204 @@
+/*
+ *  Copyright 2018 Secure, Reliable, and Intelligent Systems Lab, ETH Zurich
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+
+package ch.securify.analysis;
+
+import ch.securify.decompiler.instructions.Instruction;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * The queries the patterns will ask. The {@link AbstractDataflow#mustPrecede} and {@link AbstractDataflow#mayFollow}
+ * queries (or their set-valued variants) are given as pairs of instruction classes, the dependency queries
+ * by kind only.
+ *
+ * The precedence index of a dataflow only keeps the reachable labels of the declared target classes,
+ * instead of the full transitive closure over all instructions. The precedence queries are answered from
+ * the control flow facts alone; the dependency queries determine which output relations of which Datalog
+ * program are needed, and an analysis without any of them does not compute its fixpoint at all.
+ */
+public class QueryPlan {
+
+    static final String MUST_PRECEDE = "mustPrecede";
+    static final String MAY_FOLLOW = "isAfter";
+
+    // analyses, named after their Datalog programs in smt_files/
+    static final String MUST_EXPLICIT = "mustExplicit";
+    static final String MAY_IMPLICIT = "mayImplicit";
+
+    // output relations of the programs that are queried
+    private static final Map<String, Set<String>> ALL_OUTPUTS = new HashMap<>();
+    static {
+        ALL_OUTPUTS.put(MUST_EXPLICIT, Collections.unmodifiableSet(new LinkedHashSet<>(Arrays.asList("reach", "memory"))));
+        ALL_OUTPUTS.put(MAY_IMPLICIT, Collections.unmodifiableSet(new LinkedHashSet<>(Arrays.asList("reach", "reachInstr", "memory", "memoryTags"))));
+    }
+
+    private final Map<String, Set<Class<? extends Instruction>>> sources = new HashMap<>();
+    private final Map<String, Set<Class<? extends Instruction>>> targets = new HashMap<>();
+    private final Map<String, Set<String>> outputs = new HashMap<>();
+    private boolean complete = false;
+
+    /**
+     * @return a plan demanding the full closures, for when the queries are not known in advance
+     */
+    public static QueryPlan all() {
+        QueryPlan plan = new QueryPlan();
+        plan.demandAll();
+        return plan;
+    }
+
+    /**
+     * Declare that {@code mustPrecede(from, to)} will be asked for instructions of the given classes.
+     */
+    public QueryPlan mustPrecede(Class<? extends Instruction> from, Class<? extends Instruction> to) {
+        return demand(MUST_PRECEDE, from, to);
+    }
+
+    /**
+     * Declare that {@code mayFollow(from, to)} will be asked for instructions of the given classes.
+     */
+    public QueryPlan mayFollow(Class<? extends Instruction> from, Class<? extends Instruction> to) {
+        return demand(MAY_FOLLOW, from, to);
+    }
+
+    /**
+     * Declare that {@link AbstractDataflow#varMustDepOn} (or {@link AbstractDataflow#varMustDepOnAll}) will be asked.
+     */
+    public QueryPlan varMustDepOn() {
+        return demandOutput(MUST_EXPLICIT, "reach");
+    }
+
+    /**
+     * Declare that {@link AbstractDataflow#memoryMustDepOn} will be asked.
+     */
+    public QueryPlan memoryMustDepOn() {
+        return demandOutput(MUST_EXPLICIT, "memory");
+    }
+
+    /**
+     * Declare that {@link AbstractDataflow#varMayDepOn} (or {@link AbstractDataflow#varMayDepOnAll}) will be asked.
+     */
+    public QueryPlan varMayDepOn() {
+        return demandOutput(MAY_IMPLICIT, "reach");
+    }
+
+    /**
+     * Declare that {@link AbstractDataflow#instrMayDepOn} will be asked.
+     */
+    public QueryPlan instrMayDepOn() {
+        return demandOutput(MAY_IMPLICIT, "reachInstr");
+    }
+
+    /**
+     * Declare that {@link AbstractDataflow#memoryMayDepOn(Instruction, int, Object)} will be asked.
+     */
+    public QueryPlan memoryMayDepOn() {
+        return demandOutput(MAY_IMPLICIT, "memory");
+    }
+
+    /**
+     * Declare that {@link AbstractDataflow#memoryMayDepOn(Instruction, Object)} will be asked.
+     */
+    public QueryPlan memoryTagsMayDepOn() {
+        return demandOutput(MAY_IMPLICIT, "memoryTags");
+    }
+
+    /**
+     * Declare that any query may be asked.
+     */
+    public void demandAll() {
+        complete = true;
+    }
+
+    public boolean isComplete() {
+        return complete;
+    }
+
+    private QueryPlan demandOutput(String analysis, String relation) {
+        outputs.computeIfAbsent(analysis, k -> new LinkedHashSet<>()).add(relation);
+        return this;
+    }
+
+    private QueryPlan demand(String relation, Class<? extends Instruction> from, Class<? extends Instruction> to) {
+        sources.computeIfAbsent(relation, k -> new HashSet<>()).add(from);
+        targets.computeIfAbsent(relation, k -> new HashSet<>()).add(to);
+        return this;
+    }
+
+    /**
+     * @param analysis name of the Datalog program
+     * @return the output relations of the program that will be queried
+     */
+    Set<String> getOutputs(String analysis) {
+        if (complete)
+            return ALL_OUTPUTS.get(analysis);
+        return outputs.getOrDefault(analysis, Collections.emptySet());
+    }
+
+    /**
+     * @param relation precedence relation of the Datalog program
+     * @param instr instruction
+     * @return true if queries of the relation may start at the instruction
+     */
+    boolean isSource(String relation, Instruction instr) {
+        return complete || matches(sources.get(relation), instr);
+    }
+
+    /**
+     * @param relation precedence relation of the Datalog program
+     * @param instr instruction
+     * @return true if queries of the relation may end at the instruction
+     */
+    boolean isTarget(String relation, Instruction instr) {
+        return complete || matches(targets.get(relation), instr);
+    }
+
+    /**
+     * @param relation precedence relation of the Datalog program
+     * @param instructionClass class of instructions
+     * @return true if queries of the relation may end at all instructions of the class
+     */
+    boolean isTarget(String relation, Class<? extends Instruction> instructionClass) {
+        if (complete)
+            return true;
+        Set<Class<? extends Instruction>> classes = targets.get(relation);
+        if (classes == null)
+            return false;
+        for (Class<? extends Instruction> targetClass : classes) {
+            if (targetClass.isAssignableFrom(instructionClass))
+                return true;
+        }
+        return false;
+    }
+
+    private static boolean matches(Set<Class<? extends Instruction>> classes, Instruction instr) {
+        if (classes == null)
+            return false;
+        for (Class<? extends Instruction> instructionClass : classes) {
+            if (instructionClass.isInstance(instr))
+                return true;
+        }
+        return false;
+    }
+}
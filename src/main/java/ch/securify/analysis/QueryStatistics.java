@@ -0,0 +1,73 @@
+/*
+ *  Copyright 2018 Secure, Reliable, and Intelligent Systems Lab, ETH Zurich
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+
+package ch.securify.analysis;
+
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Number of dataflow queries per kind, and how many of them were answered from the memo of
+ * {@link Dataflow} instead of the fixpoint. Exported with the pattern results.
+ */
+public class QueryStatistics {
+
+    public enum Kind {
+        mayFollow,
+        instrMayDepOn,
+        varMayDepOn,
+        memoryMayDepOn,
+        memoryTagsMayDepOn,
+        mustPrecede,
+        varMustDepOn,
+        memoryMustDepOn,
+        // set-valued queries
+        mayFollowAll,
+        varMayDepOnAll,
+        mustPrecedeAll,
+        varMustDepOnAll
+    }
+
+    static class Counter {
+        long queries;
+        long hits;
+        double hitRate;
+    }
+
+    // fields used in JSON export
+    private final Map<String, Counter> counters = new TreeMap<>();
+
+    void record(Kind kind, boolean hit) {
+        Counter counter = counters.computeIfAbsent(kind.name(), k -> new Counter());
+        counter.queries++;
+        if (hit) {
+            counter.hits++;
+        }
+        counter.hitRate = (double) counter.hits / counter.queries;
+    }
+
+    public long getQueries(Kind kind) {
+        Counter counter = counters.get(kind.name());
+        return counter == null ? 0 : counter.queries;
+    }
+
+    public long getHits(Kind kind) {
+        Counter counter = counters.get(kind.name());
+        return counter == null ? 0 : counter.hits;
+    }
+}
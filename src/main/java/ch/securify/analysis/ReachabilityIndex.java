@@ -0,0 +1,241 @@
+/*
+ *  Copyright 2018 Secure, Reliable, and Intelligent Systems Lab, ETH Zurich
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+
+package ch.securify.analysis;
+
+import ch.securify.utils.IntTupleList;
+import ch.securify.utils.LongIntHashMap;
+
+import java.util.Arrays;
+
+/**
+ * Answers whether there is a non-empty path between two labels of a graph, i.e. whether a pair is in
+ * the transitive closure of the edges.
+ *
+ * The graph is condensed into its strongly connected components. Each component gets a bitset of the
+ * target components reachable from it, filled in reverse topological order, so a query is one lookup.
+ */
+public class ReachabilityIndex {
+
+    private static final int NONE = -1;
+
+    // code -> node
+    private final LongIntHashMap nodes = new LongIntHashMap(NONE);
+    private int nodeCount = 0;
+    // node -> component
+    private int[] component;
+    // component -> true if it contains a cycle, i.e. its nodes reach themselves
+    private boolean[] cyclic;
+    // component -> bit of the component in the bitsets, or NONE if it is not a target
+    private int[] targetBit;
+    // component -> reachable target components
+    private long[][] reachable;
+    // codes of the targets in the graph, in the order given, and the bits of their components
+    private int[] targetCodes;
+    private int[] targetCodeBits;
+
+    /**
+     * @param edges pairs of codes (from, to)
+     * @param targets codes of the labels that queries may end at
+     */
+    public ReachabilityIndex(IntTupleList edges, IntTupleList targets) {
+        int[] from = new int[edges.size()], to = new int[edges.size()];
+        for (int e = 0; e < edges.size(); e++) {
+            from[e] = node(edges.get(e, 0));
+            to[e] = node(edges.get(e, 1));
+        }
+
+        // successors in compressed form: successors[first[n] .. first[n + 1]]
+        int[] first = new int[nodeCount + 1];
+        for (int e = 0; e < from.length; e++) {
+            first[from[e] + 1]++;
+        }
+        for (int n = 0; n < nodeCount; n++) {
+            first[n + 1] += first[n];
+        }
+        int[] successors = new int[from.length];
+        int[] fill = Arrays.copyOf(first, nodeCount);
+        for (int e = 0; e < from.length; e++) {
+            successors[fill[from[e]]++] = to[e];
+        }
+
+        int componentCount = computeComponents(first, successors);
+
+        cyclic = new boolean[componentCount];
+        for (int e = 0; e < from.length; e++) {
+            if (component[from[e]] == component[to[e]])
+                cyclic[component[from[e]]] = true;
+        }
+
+        targetBit = new int[componentCount];
+        Arrays.fill(targetBit, NONE);
+        int bits = 0;
+        targetCodes = new int[targets.size()];
+        targetCodeBits = new int[targets.size()];
+        int targetCount = 0;
+        for (int t = 0; t < targets.size(); t++) {
+            int n = nodes.get(targets.get(t, 0));
+            if (n == NONE)
+                continue;
+            if (targetBit[component[n]] == NONE)
+                targetBit[component[n]] = bits++;
+            targetCodes[targetCount] = targets.get(t, 0);
+            targetCodeBits[targetCount++] = targetBit[component[n]];
+        }
+        targetCodes = Arrays.copyOf(targetCodes, targetCount);
+        targetCodeBits = Arrays.copyOf(targetCodeBits, targetCount);
+
+        // Tarjan numbers the components in reverse topological order, so the successors of a component
+        // have been completed before it
+        int words = (bits + 63) / 64;
+        reachable = new long[componentCount][];
+        // nodes sorted by component: members[memberStart[c] .. memberStart[c + 1]]
+        int[] memberStart = new int[componentCount + 1];
+        for (int n = 0; n < nodeCount; n++) {
+            memberStart[component[n] + 1]++;
+        }
+        for (int c = 0; c < componentCount; c++) {
+            memberStart[c + 1] += memberStart[c];
+        }
+        int[] members = new int[nodeCount];
+        fill = Arrays.copyOf(memberStart, componentCount);
+        for (int n = 0; n < nodeCount; n++) {
+            members[fill[component[n]]++] = n;
+        }
+        for (int c = 0; c < componentCount; c++) {
+            long[] set = new long[words];
+            for (int m = memberStart[c]; m < memberStart[c + 1]; m++) {
+                int n = members[m];
+                for (int s = first[n]; s < first[n + 1]; s++) {
+                    int succ = component[successors[s]];
+                    if (succ == c)
+                        continue;
+                    if (targetBit[succ] != NONE)
+                        set[targetBit[succ] >>> 6] |= 1L << targetBit[succ];
+                    long[] succSet = reachable[succ];
+                    for (int w = 0; w < words; w++) {
+                        set[w] |= succSet[w];
+                    }
+                }
+            }
+            if (cyclic[c] && targetBit[c] != NONE)
+                set[targetBit[c] >>> 6] |= 1L << targetBit[c];
+            reachable[c] = set;
+        }
+    }
+
+    /**
+     * @param from code of the first label
+     * @param to code of the second label, one of the targets
+     * @return true if there is a non-empty path from the first to the second label
+     */
+    public boolean reaches(int from, int to) {
+        int fromNode = nodes.get(from), toNode = nodes.get(to);
+        if (fromNode == NONE || toNode == NONE)
+            return false;
+        int bit = targetBit[component[toNode]];
+        if (bit == NONE)
+            throw new IllegalArgumentException("Not a target: " + to);
+        return (reachable[component[fromNode]][bit >>> 6] & (1L << bit)) != 0;
+    }
+
+    /**
+     * @param from code of the first label
+     * @return codes of the targets with a non-empty path from the label, in the order of the targets
+     */
+    public int[] reachableTargets(int from) {
+        int fromNode = nodes.get(from);
+        if (fromNode == NONE)
+            return new int[0];
+        long[] set = reachable[component[fromNode]];
+        int[] codes = new int[targetCodes.length];
+        int count = 0;
+        for (int t = 0; t < targetCodes.length; t++) {
+            int bit = targetCodeBits[t];
+            if ((set[bit >>> 6] & (1L << bit)) != 0)
+                codes[count++] = targetCodes[t];
+        }
+        return Arrays.copyOf(codes, count);
+    }
+
+    private int node(int code) {
+        int n = nodes.get(code);
+        if (n == NONE) {
+            n = nodeCount++;
+            nodes.put(code, n);
+        }
+        return n;
+    }
+
+    /**
+     * Iterative version of Tarjan's algorithm. Fills {@link #component}.
+     * @return number of components
+     */
+    private int computeComponents(int[] first, int[] successors) {
+        component = new int[nodeCount];
+        Arrays.fill(component, NONE);
+        int[] order = new int[nodeCount];
+        int[] lowLink = new int[nodeCount];
+        Arrays.fill(order, NONE);
+        int[] stack = new int[nodeCount];
+        int stackSize = 0;
+        int[] callStack = new int[nodeCount];
+        int[] nextSuccessor = new int[nodeCount];
+        int counter = 0, componentCount = 0;
+
+        for (int root = 0; root < nodeCount; root++) {
+            if (order[root] != NONE)
+                continue;
+            int depth = 0;
+            callStack[depth++] = root;
+            order[root] = lowLink[root] = counter++;
+            nextSuccessor[root] = first[root];
+            stack[stackSize++] = root;
+
+            while (depth > 0) {
+                int n = callStack[depth - 1];
+                if (nextSuccessor[n] < first[n + 1]) {
+                    int succ = successors[nextSuccessor[n]++];
+                    if (order[succ] == NONE) {
+                        order[succ] = lowLink[succ] = counter++;
+                        nextSuccessor[succ] = first[succ];
+                        stack[stackSize++] = succ;
+                        callStack[depth++] = succ;
+                    } else if (component[succ] == NONE) {
+                        lowLink[n] = Math.min(lowLink[n], order[succ]);
+                    }
+                    continue;
+                }
+                depth--;
+                if (depth > 0) {
+                    int parent = callStack[depth - 1];
+                    lowLink[parent] = Math.min(lowLink[parent], lowLink[n]);
+                }
+                if (lowLink[n] == order[n]) {
+                    int member;
+                    do {
+                        member = stack[--stackSize];
+                        component[member] = componentCount;
+                    } while (member != n);
+                    componentCount++;
+                }
+            }
+        }
+        return componentCount;
+    }
+}
@@ -0,0 +1,105 @@
+/*
+ *  Copyright 2018 Secure, Reliable, and Intelligent Systems Lab, ETH Zurich
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+
+package ch.securify.analysis;
+
+/**
+ * Packs tuples of up to three codes into a long, using a fixed number of bits per column that is
+ * derived from the largest code of the dataflow.
+ *
+ * Ternary tuples that do not fit into 63 bits are "wide": their first column is kept separately
+ * and only the remaining two columns are packed (see {@link #isWide(int)}).
+ */
+public class TupleEncoding {
+
+    private final int maxCode;
+    private final int bits;
+
+    /**
+     * @param maxCode largest code that can appear in a tuple
+     */
+    public TupleEncoding(int maxCode) {
+        this.maxCode = maxCode;
+        this.bits = Math.max(1, 32 - Integer.numberOfLeadingZeros(maxCode));
+    }
+
+    public int getBits() {
+        return bits;
+    }
+
+    /**
+     * @param arity number of columns
+     * @return true if tuples of this arity do not fit into a single long
+     */
+    public boolean isWide(int arity) {
+        return arity * bits > 63;
+    }
+
+    /**
+     * @param code
+     * @return true if the code is within the code space of this encoding
+     */
+    public boolean covers(int code) {
+        return code >= 0 && code <= maxCode;
+    }
+
+    /**
+     * @param code
+     * @return the code
+     * @throws IllegalStateException if the code is outside the code space, so that packing it would collide
+     */
+    public int check(int code) {
+        if (!covers(code))
+            throw new IllegalStateException("Code " + code + " exceeds the code space of " + bits + " bits (max. code " + maxCode + ")");
+        return code;
+    }
+
+    public long encode(int a) {
+        return a;
+    }
+
+    public long encode(int a, int b) {
+        return ((long) a << bits) | b;
+    }
+
+    /**
+     * @param tuple packed tuple
+     * @return the code in the last column of the tuple
+     */
+    public int decodeLast(long tuple) {
+        return (int) (tuple & ((1L << bits) - 1));
+    }
+
+    /**
+     * @param tuple packed tuple
+     * @param arity number of columns packed into the tuple
+     * @param column index of the column
+     * @return the code in the column of the tuple
+     */
+    public int decode(long tuple, int arity, int column) {
+        return (int) ((tuple >>> ((arity - 1 - column) * bits)) & ((1L << bits) - 1));
+    }
+
+    /**
+     * Only valid if ternary tuples are not wide.
+     */
+    public long encode(int a, int b, int c) {
+        assert !isWide(3);
+        return ((long) a << (2 * bits)) | ((long) b << bits) | c;
+    }
+}
@@ -0,0 +1,129 @@
+/*
+ *  Copyright 2018 Secure, Reliable, and Intelligent Systems Lab, ETH Zurich
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+
+package ch.securify.analysis;
+
+import ch.securify.decompiler.Variable;
+import ch.securify.decompiler.instructions.Instruction;
+
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Dataflow of a method body whose fixpoint is not computed, since no pattern queries it
+ * (see {@link ch.securify.patterns.AbstractInstructionPattern#needsDataflow}).
+ * Every query is answered with {@link Status#UNKNOWN}.
+ */
+public class UnknownDataflow extends AbstractDataflow {
+
+    public UnknownDataflow(List<Instruction> instructions) {
+        this.instructions = instructions;
+    }
+
+    @Override
+    public int mayFollow(Instruction instr1, Instruction instr2) {
+        return Status.UNKNOWN;
+    }
+
+    @Override
+    public int instrMayDepOn(Instruction instr, Object type) {
+        return Status.UNKNOWN;
+    }
+
+    @Override
+    public int varMayDepOn(Instruction instr1, Variable lhs, Object type) {
+        return Status.UNKNOWN;
+    }
+
+    @Override
+    public int memoryMayDepOn(Instruction instr1, int offset, Object type) {
+        return Status.UNKNOWN;
+    }
+
+    @Override
+    public int memoryMayDepOn(Instruction instr, Object type) {
+        return Status.UNKNOWN;
+    }
+
+    @Override
+    public int mustPrecede(Instruction instr1, Instruction instr2) {
+        return Status.UNKNOWN;
+    }
+
+    @Override
+    public int varMustDepOn(Instruction instr1, Variable lhs, Object type) {
+        return Status.UNKNOWN;
+    }
+
+    @Override
+    public int memoryMustDepOn(Instruction instr1, int offset, Object type) {
+        return Status.UNKNOWN;
+    }
+
+    @Override
+    public List<Instruction> mayFollowAll(Instruction instr, Class<? extends Instruction> type) {
+        return null;
+    }
+
+    @Override
+    public Set<Object> varMayDepOnAll(Instruction instr, Variable lhs) {
+        return null;
+    }
+
+    @Override
+    public List<Instruction> mustPrecedeAll(Instruction instr, Class<? extends Instruction> type) {
+        return null;
+    }
+
+    @Override
+    public Set<Object> varMustDepOnAll(Instruction instr, Variable lhs) {
+        return null;
+    }
+
+    @Override
+    public List<Instruction> mayFollowTargets(Instruction instr) {
+        throw new UnsupportedOperationException("no guards without the fixpoint");
+    }
+
+    @Override
+    public List<Instruction> mustPrecedeTargets(Instruction instr) {
+        throw new UnsupportedOperationException("no guards without the fixpoint");
+    }
+
+    @Override
+    public GuardIndex getGuards() {
+        throw new UnsupportedOperationException("no guards without the fixpoint");
+    }
+
+    @Override
+    protected void deriveFollowsPredicates() {
+    }
+
+    @Override
+    protected void deriveIfPredicates() {
+    }
+
+    @Override
+    protected String getAnalysis() {
+        return "unknown";
+    }
+
+    @Override
+    public void dispose() {
+    }
+}
@@ -0,0 +1,189 @@
+/*
+ *  Copyright 2018 Secure, Reliable, and Intelligent Systems Lab, ETH Zurich
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+
+package ch.securify.analysis.datalog;
+
+import ch.securify.analysis.TimeoutException;
+import ch.securify.analysis.TupleEncoding;
+import ch.securify.utils.IntTupleList;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * In-JVM evaluator for one of the Datalog programs in smt_files/.
+ *
+ * Input facts are collected while the dataflow derives them. {@link #run(long)} then loads them into
+ * indexed relations and computes the fixpoint bottom-up, stratum by stratum, with semi-naive iteration
+ * inside each recursive stratum. Subclasses implement the rules of one program in {@link #evaluate()}.
+ */
+public abstract class DatalogProgram {
+
+    private final Map<String, Input> inputs = new HashMap<>();
+    private final Map<String, Relation> relations = new HashMap<>();
+    // output relations to derive, or null for all of them
+    private Set<String> outputs;
+
+    private int maxValue = 0;
+    private TupleEncoding encoding;
+    private long deadline;
+    private boolean complete = false;
+
+    /**
+     * Declare an input relation of the program. Facts for undeclared relations are ignored.
+     * @param name relation name, as in the .dl file
+     * @param arity number of columns
+     */
+    protected void declareInput(String name, int arity) {
+        inputs.put(name, new Input(arity));
+    }
+
+    /**
+     * Restrict the evaluation to the given output relations. Rules that only derive other output
+     * relations are skipped, and those relations are then missing from the result.
+     * @param outputs names of the output relations to derive
+     */
+    public void setOutputs(Set<String> outputs) {
+        this.outputs = outputs;
+    }
+
+    /**
+     * @param name name of an output relation
+     * @return true if the relation has to be derived
+     */
+    protected boolean isOutput(String name) {
+        return outputs == null || outputs.contains(name);
+    }
+
+    /**
+     * Add input facts. The tuples are read when the program is run.
+     * @param name relation name
+     * @param tuples facts of the relation (non-negative codes)
+     */
+    public void addFacts(String name, IntTupleList tuples) {
+        Input input = inputs.get(name);
+        if (input == null)
+            return;
+        if (tuples.getArity() != input.arity)
+            throw new IllegalArgumentException("Wrong arity for " + name + ": " + tuples.getArity());
+
+        for (int t = 0; t < tuples.size(); t++) {
+            for (int i = 0; i < input.arity; i++) {
+                int value = tuples.get(t, i);
+                if (value < 0)
+                    throw new IllegalArgumentException("Negative code in " + name + ": " + value);
+                maxValue = Math.max(maxValue, value);
+            }
+        }
+        input.tuples.add(tuples);
+        input.size += tuples.size();
+    }
+
+    /**
+     * Compute the fixpoint of the program over the buffered facts.
+     * @param timeoutMillis time budget for the evaluation
+     * @throws TimeoutException if the evaluation did not finish in time
+     */
+    public void run(long timeoutMillis) {
+        deadline = System.currentTimeMillis() + timeoutMillis;
+        encoding = new TupleEncoding(maxValue);
+
+        for (Map.Entry<String, Input> entry : inputs.entrySet()) {
+            Input input = entry.getValue();
+            Relation relation = relation(entry.getKey(), input.arity, input.size);
+            for (IntTupleList tuples : input.tuples) {
+                for (int t = 0; t < tuples.size(); t++) {
+                    switch (input.arity) {
+                        case 1: relation.add(tuples.get(t, 0)); break;
+                        case 2: relation.add(tuples.get(t, 0), tuples.get(t, 1)); break;
+                        default: relation.add(tuples.get(t, 0), tuples.get(t, 1), tuples.get(t, 2)); break;
+                    }
+                }
+            }
+            input.tuples.clear();
+        }
+
+        evaluate();
+        complete = true;
+    }
+
+    /**
+     * Apply the rules of the program to the input relations until nothing new can be derived.
+     */
+    protected abstract void evaluate();
+
+    /**
+     * @return true if {@link #run(long)} finished and all output relations are final
+     */
+    public boolean isComplete() {
+        return complete;
+    }
+
+    /**
+     * @param name relation name
+     * @return the relation, or null if the program does not have such a relation
+     */
+    public Relation getRelation(String name) {
+        return relations.get(name);
+    }
+
+    protected Relation relation(String name) {
+        Relation relation = relations.get(name);
+        if (relation == null)
+            throw new IllegalArgumentException("Unknown relation: " + name);
+        return relation;
+    }
+
+    protected Relation relation(String name, int arity) {
+        return relation(name, arity, 16);
+    }
+
+    private Relation relation(String name, int arity, int expectedSize) {
+        Relation relation = relations.get(name);
+        if (relation == null) {
+            relation = new Relation(name, arity, encoding, expectedSize);
+            relations.put(name, relation);
+        }
+        return relation;
+    }
+
+    /**
+     * Called between iterations of recursive strata.
+     * @throws TimeoutException once the time budget is used up or the evaluating thread was interrupted
+     */
+    protected void checkDeadline() {
+        if (System.currentTimeMillis() > deadline || Thread.currentThread().isInterrupted())
+            throw new TimeoutException();
+    }
+
+    /**
+     * Facts of an input relation, as added by the dataflow.
+     */
+    private static class Input {
+        final int arity;
+        final List<IntTupleList> tuples = new ArrayList<>();
+        int size = 0;
+
+        Input(int arity) {
+            this.arity = arity;
+        }
+    }
+}
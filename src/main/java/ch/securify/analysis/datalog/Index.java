@@ -0,0 +1,85 @@
+/*
+ *  Copyright 2018 Secure, Reliable, and Intelligent Systems Lab, ETH Zurich
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+
+package ch.securify.analysis.datalog;
+
+import ch.securify.utils.LongIntHashMap;
+
+import java.util.Arrays;
+
+/**
+ * Hash index over one or two columns of a {@link Relation}.
+ *
+ * Tuples sharing a key are chained through an int array indexed by tuple position:
+ * <pre>
+ *     for (int t = index.first(key); t >= 0; t = index.next(t)) { ... }
+ * </pre>
+ */
+public class Index {
+
+    private static final int END = -1;
+
+    private final Relation relation;
+    final int[] columns;
+
+    private final LongIntHashMap heads = new LongIntHashMap(END);
+    private int[] next = new int[16];
+
+    Index(Relation relation, int[] columns) {
+        assert columns.length == 1 || columns.length == 2;
+        this.relation = relation;
+        this.columns = columns;
+    }
+
+    /**
+     * @param a value of the (single) key column
+     * @return position of the first matching tuple, or a negative value if there is none
+     */
+    public int first(int a) {
+        assert columns.length == 1;
+        return heads.get(a);
+    }
+
+    /**
+     * @param a value of the first key column
+     * @param b value of the second key column
+     * @return position of the first matching tuple, or a negative value if there is none
+     */
+    public int first(int a, int b) {
+        assert columns.length == 2;
+        return heads.get(relation.pack(a, b));
+    }
+
+    /**
+     * @param tuple position of a matching tuple
+     * @return position of the next tuple with the same key, or a negative value if there is none
+     */
+    public int next(int tuple) {
+        return next[tuple];
+    }
+
+    void add(int tuple) {
+        long key = columns.length == 1
+                ? relation.get(tuple, columns[0])
+                : relation.pack(relation.get(tuple, columns[0]), relation.get(tuple, columns[1]));
+        if (tuple >= next.length) {
+            next = Arrays.copyOf(next, Math.max(next.length * 2, tuple + 1));
+        }
+        next[tuple] = heads.put(key, tuple);
+    }
+}
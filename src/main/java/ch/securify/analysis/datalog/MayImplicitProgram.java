@@ -0,0 +1,243 @@
+/*
+ *  Copyright 2018 Secure, Reliable, and Intelligent Systems Lab, ETH Zurich
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+
+package ch.securify.analysis.datalog;
+
+/**
+ * Rules of smt_files/mayImplicit.dl.
+ */
+public class MayImplicitProgram extends DatalogProgram {
+
+    public MayImplicitProgram() {
+        declareInput("assignType", 3);
+        declareInput("assignVar", 3);
+        declareInput("follows", 2);
+        declareInput("taint", 3);
+        declareInput("endIf", 2);
+        declareInput("mload", 3);
+        declareInput("mstore", 3);
+        declareInput("sload", 3);
+        declareInput("sstore", 3);
+        declareInput("sha3", 3);
+        declareInput("unk", 1);
+    }
+
+    @Override
+    protected void evaluate() {
+        Relation assignType = relation("assignType");
+        Relation assignVar = relation("assignVar");
+        Relation follows = relation("follows");
+        Relation taint = relation("taint");
+        Relation endIf = relation("endIf");
+        Relation mload = relation("mload");
+        Relation mstore = relation("mstore");
+        Relation sload = relation("sload");
+        Relation sstore = relation("sstore");
+        Relation sha3 = relation("sha3");
+        Relation unk = relation("unk");
+
+        Index followsByFrom = follows.index(0);
+
+        // taint(LabStart, LabTo, Var) :- follows(LabFrom, LabTo), taint(LabStart, LabFrom, Var), ! endIf(LabStart, LabTo).
+        for (int done = 0; done < taint.size(); ) {
+            int end = taint.size();
+            for (int t = done; t < end; t++) {
+                int start = taint.get(t, 0), var = taint.get(t, 2);
+                for (int f = followsByFrom.first(taint.get(t, 1)); f >= 0; f = followsByFrom.next(f)) {
+                    int labTo = follows.get(f, 1);
+                    if (!endIf.contains(start, labTo))
+                        taint.add(start, labTo, var);
+                }
+            }
+            done = end;
+            checkDeadline();
+        }
+
+        // reassignStorage(Lab, Index) :- sstore(Lab, Index, _), !unk(Index).
+        // reassignMemory(Lab, Offset) :- mstore(Lab, Offset, _), !unk(Offset).
+        Relation reassignStorage = relation("reassignStorage", 2);
+        for (int t = 0; t < sstore.size(); t++) {
+            if (!unk.contains(sstore.get(t, 1)))
+                reassignStorage.add(sstore.get(t, 0), sstore.get(t, 1));
+        }
+        Relation reassignMemory = relation("reassignMemory", 2);
+        for (int t = 0; t < mstore.size(); t++) {
+            if (!unk.contains(mstore.get(t, 1)))
+                reassignMemory.add(mstore.get(t, 0), mstore.get(t, 1));
+        }
+
+        // Helper relations over the completed lower strata:
+        //   tainted(Lab, Var)          :- taint(_, Lab, Var).
+        //   taintedAssign(Var2, Var1)  :- assignVar(Lab, Var1, _), taint(_, Lab, Var2).
+        //   mloadUnk(Lab, Var)         :- mload(Lab, Offset, Var), unk(Offset).
+        //   sloadUnk(Lab, Var)         :- sload(Lab, Index, Var), unk(Index).
+        Relation tainted = relation("tainted", 2);
+        for (int t = 0; t < taint.size(); t++) {
+            tainted.add(taint.get(t, 1), taint.get(t, 2));
+        }
+        Index taintedByLab = tainted.index(0);
+        Index taintedByVar = tainted.index(1);
+        Relation taintedAssign = relation("taintedAssign", 2);
+        for (int a = 0; a < assignVar.size(); a++) {
+            for (int t = taintedByLab.first(assignVar.get(a, 0)); t >= 0; t = taintedByLab.next(t)) {
+                taintedAssign.add(tainted.get(t, 1), assignVar.get(a, 1));
+            }
+        }
+        Relation mloadUnk = relation("mloadUnk", 2);
+        for (int t = 0; t < mload.size(); t++) {
+            if (unk.contains(mload.get(t, 1)))
+                mloadUnk.add(mload.get(t, 0), mload.get(t, 2));
+        }
+        Relation sloadUnk = relation("sloadUnk", 2);
+        for (int t = 0; t < sload.size(); t++) {
+            if (unk.contains(sload.get(t, 1)))
+                sloadUnk.add(sload.get(t, 0), sload.get(t, 2));
+        }
+
+        Relation reach = relation("reach", 2);
+        Relation memory = relation("memory", 3);
+        Relation storage = relation("storage", 3);
+        // not used by other rules, only derived if queried
+        Relation reachInstr = isOutput("reachInstr") ? relation("reachInstr", 2) : null;
+        Relation memoryTags = isOutput("memoryTags") ? relation("memoryTags", 2) : null;
+
+        // reachInstr(Lab, Var) :- taint(_, Lab, Var).
+        for (int t = 0; reachInstr != null && t < tainted.size(); t++) {
+            reachInstr.add(tainted.get(t, 0), tainted.get(t, 1));
+        }
+
+        Index assignVarByRhs = assignVar.index(2);
+        Index taintedAssignByRhs = taintedAssign.index(0);
+        Index assignTypeByLab = assignType.index(0);
+        Index reachByVar = reach.index(0);
+        Index mstoreByVar = mstore.index(2);
+        Index sstoreByVar = sstore.index(2);
+        Index mloadByLabOffset = mload.index(0, 1);
+        Index mloadUnkByLab = mloadUnk.index(0);
+        Index sloadByLabIndex = sload.index(0, 1);
+        Index sloadUnkByLab = sloadUnk.index(0);
+        Index sha3ByLabOffset = sha3.index(0, 2);
+
+        int assignTypeDone = 0, reachDone = 0, memoryDone = 0, storageDone = 0;
+        while (assignTypeDone < assignType.size() || reachDone < reach.size()
+                || memoryDone < memory.size() || storageDone < storage.size()) {
+
+            int end = assignType.size();
+            for (int t = assignTypeDone; t < end; t++) {
+                int var = assignType.get(t, 1);
+                // reach(Var, Fact) :- assignType(_, Var, Fact).
+                reach.add(var, assignType.get(t, 2));
+                // reach(Var1, Fact) :- assignType(Lab, Var1, _), taint(_, Lab, Var2), reach(Var2, Fact).
+                for (int i = taintedByLab.first(assignType.get(t, 0)); i >= 0; i = taintedByLab.next(i)) {
+                    for (int r = reachByVar.first(tainted.get(i, 1)); r >= 0; r = reachByVar.next(r)) {
+                        reach.add(var, reach.get(r, 1));
+                    }
+                }
+            }
+            assignTypeDone = end;
+
+            end = reach.size();
+            for (int t = reachDone; t < end; t++) {
+                int var = reach.get(t, 0), fact = reach.get(t, 1);
+
+                // reach(Var1, Fact) :- assignVar(_, Var1, Var2), reach(Var2, Fact).
+                for (int a = assignVarByRhs.first(var); a >= 0; a = assignVarByRhs.next(a)) {
+                    reach.add(assignVar.get(a, 1), fact);
+                }
+                // reach(Var1, Fact) :- assignVar(Lab, Var1, _), taint(_, Lab, Var2), reach(Var2, Fact).
+                for (int a = taintedAssignByRhs.first(var); a >= 0; a = taintedAssignByRhs.next(a)) {
+                    reach.add(taintedAssign.get(a, 1), fact);
+                }
+                for (int i = taintedByVar.first(var); i >= 0; i = taintedByVar.next(i)) {
+                    int lab = tainted.get(i, 0);
+                    // reach(Var1, Fact) :- assignType(Lab, Var1, _), taint(_, Lab, Var2), reach(Var2, Fact).
+                    for (int a = assignTypeByLab.first(lab); a >= 0; a = assignTypeByLab.next(a)) {
+                        reach.add(assignType.get(a, 1), fact);
+                    }
+                    // reachInstr(Lab, Fact) :- taint(_, Lab, Var), reach(Var, Fact).
+                    if (reachInstr != null)
+                        reachInstr.add(lab, fact);
+                }
+                // memory(Lab, Offset, Type) :- mstore(Lab, Offset, Var), reach(Var, Type).
+                for (int m = mstoreByVar.first(var); m >= 0; m = mstoreByVar.next(m)) {
+                    memory.add(mstore.get(m, 0), mstore.get(m, 1), fact);
+                }
+                // storage(Lab, Index, Type) :- sstore(Lab, Index, Var), reach(Var, Type).
+                for (int s = sstoreByVar.first(var); s >= 0; s = sstoreByVar.next(s)) {
+                    storage.add(sstore.get(s, 0), sstore.get(s, 1), fact);
+                }
+            }
+            reachDone = end;
+
+            end = memory.size();
+            for (int t = memoryDone; t < end; t++) {
+                int lab = memory.get(t, 0), offset = memory.get(t, 1), type = memory.get(t, 2);
+
+                // memory(LabTo, Offset, Type) :- follows(LabFrom, LabTo), memory(LabFrom, Offset, Type), ! reassignMemory(LabTo, Offset).
+                for (int f = followsByFrom.first(lab); f >= 0; f = followsByFrom.next(f)) {
+                    int labTo = follows.get(f, 1);
+                    if (!reassignMemory.contains(labTo, offset))
+                        memory.add(labTo, offset, type);
+                }
+                // memoryTags(Lab, Type) :- memory(Lab, _, Type).
+                if (memoryTags != null)
+                    memoryTags.add(lab, type);
+                // assignType(Lab, Var, Type) :- mload(Lab, Offset, Var), memory(Lab, Offset, Type), ! unk(Offset).
+                if (!unk.contains(offset)) {
+                    for (int m = mloadByLabOffset.first(lab, offset); m >= 0; m = mloadByLabOffset.next(m)) {
+                        assignType.add(lab, mload.get(m, 2), type);
+                    }
+                }
+                // assignType(Lab, Var, Type) :- mload(Lab, Offset, Var), memory(Lab, _, Type), unk(Offset).
+                for (int m = mloadUnkByLab.first(lab); m >= 0; m = mloadUnkByLab.next(m)) {
+                    assignType.add(lab, mloadUnk.get(m, 1), type);
+                }
+                // assignType(Lab, Var, Type) :- memory(Lab, Offset, Type), sha3(Lab, Var, Offset).
+                for (int h = sha3ByLabOffset.first(lab, offset); h >= 0; h = sha3ByLabOffset.next(h)) {
+                    assignType.add(lab, sha3.get(h, 1), type);
+                }
+            }
+            memoryDone = end;
+
+            end = storage.size();
+            for (int t = storageDone; t < end; t++) {
+                int lab = storage.get(t, 0), index = storage.get(t, 1), type = storage.get(t, 2);
+
+                // storage(LabTo, Index, Type) :- follows(LabFrom, LabTo), storage(LabFrom, Index, Type), ! reassignStorage(LabTo, Index).
+                for (int f = followsByFrom.first(lab); f >= 0; f = followsByFrom.next(f)) {
+                    int labTo = follows.get(f, 1);
+                    if (!reassignStorage.contains(labTo, index))
+                        storage.add(labTo, index, type);
+                }
+                // assignType(Lab, Var, Type) :- sload(Lab, Index, Var), storage(Lab, Index, Type), ! unk(Index).
+                if (!unk.contains(index)) {
+                    for (int s = sloadByLabIndex.first(lab, index); s >= 0; s = sloadByLabIndex.next(s)) {
+                        assignType.add(lab, sload.get(s, 2), type);
+                    }
+                }
+                // assignType(Lab, Var, Type) :- sload(Lab, Index, Var), storage(Lab, _, Type), unk(Index).
+                for (int s = sloadUnkByLab.first(lab); s >= 0; s = sloadUnkByLab.next(s)) {
+                    assignType.add(lab, sloadUnk.get(s, 1), type);
+                }
+            }
+            storageDone = end;
+
+            checkDeadline();
+        }
+    }
+}
@@ -0,0 +1,208 @@
+/*
+ *  Copyright 2018 Secure, Reliable, and Intelligent Systems Lab, ETH Zurich
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+
+package ch.securify.analysis.datalog;
+
+/**
+ * Rules of smt_files/mustExplicit.dl.
+ */
+public class MustExplicitProgram extends DatalogProgram {
+
+    public MustExplicitProgram() {
+        declareInput("assignType", 3);
+        declareInput("assignVar", 3);
+        declareInput("follows", 2);
+        declareInput("jump", 3);
+        declareInput("tag", 1);
+        declareInput("oneBranchTag", 1);
+        declareInput("join", 3);
+        declareInput("mload", 3);
+        declareInput("mstore", 3);
+        declareInput("sload", 3);
+        declareInput("sstore", 3);
+        declareInput("sha3", 3);
+        declareInput("unk", 1);
+    }
+
+    @Override
+    protected void evaluate() {
+        Relation assignType = relation("assignType");
+        Relation assignVar = relation("assignVar");
+        Relation follows = relation("follows");
+        Relation jump = relation("jump");
+        Relation tag = relation("tag");
+        Relation oneBranchTag = relation("oneBranchTag");
+        Relation join = relation("join");
+        Relation mload = relation("mload");
+        Relation mstore = relation("mstore");
+        Relation sload = relation("sload");
+        Relation sstore = relation("sstore");
+        Relation sha3 = relation("sha3");
+        Relation unk = relation("unk");
+
+        // mustPrecedeStep(From, To) :- follows(From, To), !tag(To).
+        // mustPrecedeStep(From, Mid) :- jump(From, Mid, _), oneBranchTag(Mid).
+        // mustPrecedeStep(From, To) :- jump(From, _, To).
+        Relation mustPrecedeStep = relation("mustPrecedeStep", 2);
+        for (int t = 0; t < follows.size(); t++) {
+            if (!tag.contains(follows.get(t, 1)))
+                mustPrecedeStep.add(follows.get(t, 0), follows.get(t, 1));
+        }
+        for (int t = 0; t < jump.size(); t++) {
+            if (oneBranchTag.contains(jump.get(t, 1)))
+                mustPrecedeStep.add(jump.get(t, 0), jump.get(t, 1));
+            mustPrecedeStep.add(jump.get(t, 0), jump.get(t, 2));
+        }
+
+        // reassignStorage(Lab, Index) :- sstore(Lab, Index, _), !unk(Index).
+        // reassignMemory(Lab, Offset) :- mstore(Lab, Offset, _), !unk(Offset).
+        Relation reassignStorage = relation("reassignStorage", 2);
+        for (int t = 0; t < sstore.size(); t++) {
+            if (!unk.contains(sstore.get(t, 1)))
+                reassignStorage.add(sstore.get(t, 0), sstore.get(t, 1));
+        }
+        Relation reassignMemory = relation("reassignMemory", 2);
+        for (int t = 0; t < mstore.size(); t++) {
+            if (!unk.contains(mstore.get(t, 1)))
+                reassignMemory.add(mstore.get(t, 0), mstore.get(t, 1));
+        }
+
+        Index stepByFrom = mustPrecedeStep.index(0);
+
+        Relation reach = relation("reach", 3);
+        Relation memory = relation("memory", 3);
+        Relation storage = relation("storage", 3);
+
+        Index assignVarByLabRhs = assignVar.index(0, 2);
+        Index joinByFirst = join.index(0);
+        Index joinBySecond = join.index(1);
+        Index mstoreByLabVar = mstore.index(0, 2);
+        Index sstoreByLabVar = sstore.index(0, 2);
+        Index mloadByLabOffset = mload.index(0, 1);
+        Index sloadByLabIndex = sload.index(0, 1);
+        Index sha3ByLabOffset = sha3.index(0, 2);
+
+        int assignTypeDone = 0, reachDone = 0, memoryDone = 0, storageDone = 0;
+        while (assignTypeDone < assignType.size() || reachDone < reach.size()
+                || memoryDone < memory.size() || storageDone < storage.size()) {
+
+            // reach(Lab, Var, Fact) :- assignType(Lab, Var, Fact).
+            int end = assignType.size();
+            for (int t = assignTypeDone; t < end; t++) {
+                reach.add(assignType.get(t, 0), assignType.get(t, 1), assignType.get(t, 2));
+            }
+            assignTypeDone = end;
+
+            end = reach.size();
+            for (int t = reachDone; t < end; t++) {
+                int lab = reach.get(t, 0), var = reach.get(t, 1), fact = reach.get(t, 2);
+
+                // reach(Lab, Var1, Fact) :- assignVar(Lab, Var1, Var2), reach(Lab, Var2, Fact).
+                for (int a = assignVarByLabRhs.first(lab, var); a >= 0; a = assignVarByLabRhs.next(a)) {
+                    reach.add(lab, assignVar.get(a, 1), fact);
+                }
+                // reach(LabTo, Var, Fact) :- mustPrecedeStep(LabFrom, LabTo), reach(LabFrom, Var, Fact).
+                for (int s = stepByFrom.first(lab); s >= 0; s = stepByFrom.next(s)) {
+                    reach.add(mustPrecedeStep.get(s, 1), var, fact);
+                }
+                // reach(LabTo, Var, Fact) :- join(LabFrom1, LabFrom2, LabTo), reach(LabFrom1, Var, Fact), reach(LabFrom2, Var, Fact).
+                for (int j = joinByFirst.first(lab); j >= 0; j = joinByFirst.next(j)) {
+                    if (reach.contains(join.get(j, 1), var, fact))
+                        reach.add(join.get(j, 2), var, fact);
+                }
+                for (int j = joinBySecond.first(lab); j >= 0; j = joinBySecond.next(j)) {
+                    if (reach.contains(join.get(j, 0), var, fact))
+                        reach.add(join.get(j, 2), var, fact);
+                }
+                // memory(Lab, Offset, Type) :- mstore(Lab, Offset, Var), reach(Lab, Var, Type), ! unk(Offset).
+                for (int m = mstoreByLabVar.first(lab, var); m >= 0; m = mstoreByLabVar.next(m)) {
+                    if (!unk.contains(mstore.get(m, 1)))
+                        memory.add(lab, mstore.get(m, 1), fact);
+                }
+                // storage(Lab, Index, Type) :- sstore(Lab, Index, Var), reach(Lab, Var, Type), ! unk(Index).
+                for (int s = sstoreByLabVar.first(lab, var); s >= 0; s = sstoreByLabVar.next(s)) {
+                    if (!unk.contains(sstore.get(s, 1)))
+                        storage.add(lab, sstore.get(s, 1), fact);
+                }
+            }
+            reachDone = end;
+
+            end = memory.size();
+            for (int t = memoryDone; t < end; t++) {
+                int lab = memory.get(t, 0), offset = memory.get(t, 1), type = memory.get(t, 2);
+
+                // memory(LabTo, Offset, Type) :- mustPrecedeStep(LabFrom, LabTo), memory(LabFrom, Offset, Type), ! reassignMemory(LabTo, Offset).
+                for (int s = stepByFrom.first(lab); s >= 0; s = stepByFrom.next(s)) {
+                    int labTo = mustPrecedeStep.get(s, 1);
+                    if (!reassignMemory.contains(labTo, offset))
+                        memory.add(labTo, offset, type);
+                }
+                if (unk.contains(offset))
+                    continue;
+                // memory(LabTo, Offset, Type) :- join(LabFrom1, LabFrom2, LabTo), memory(LabFrom1, Offset, Type), memory(LabFrom2, Offset, Type), ! unk(Offset).
+                for (int j = joinByFirst.first(lab); j >= 0; j = joinByFirst.next(j)) {
+                    if (memory.contains(join.get(j, 1), offset, type))
+                        memory.add(join.get(j, 2), offset, type);
+                }
+                for (int j = joinBySecond.first(lab); j >= 0; j = joinBySecond.next(j)) {
+                    if (memory.contains(join.get(j, 0), offset, type))
+                        memory.add(join.get(j, 2), offset, type);
+                }
+                // assignType(Lab, Var, Type) :- mload(Lab, Offset, Var), memory(Lab, Offset, Type), ! unk(Offset).
+                for (int m = mloadByLabOffset.first(lab, offset); m >= 0; m = mloadByLabOffset.next(m)) {
+                    assignType.add(lab, mload.get(m, 2), type);
+                }
+                // assignType(Lab, Var, Type) :- memory(Lab, Offset, Type), sha3(Lab, Var, Offset), ! unk(Offset).
+                for (int h = sha3ByLabOffset.first(lab, offset); h >= 0; h = sha3ByLabOffset.next(h)) {
+                    assignType.add(lab, sha3.get(h, 1), type);
+                }
+            }
+            memoryDone = end;
+
+            end = storage.size();
+            for (int t = storageDone; t < end; t++) {
+                int lab = storage.get(t, 0), index = storage.get(t, 1), type = storage.get(t, 2);
+
+                // storage(LabTo, Index, Type) :- mustPrecedeStep(LabFrom, LabTo), storage(LabFrom, Index, Type), ! reassignStorage(LabTo, Index).
+                for (int s = stepByFrom.first(lab); s >= 0; s = stepByFrom.next(s)) {
+                    int labTo = mustPrecedeStep.get(s, 1);
+                    if (!reassignStorage.contains(labTo, index))
+                        storage.add(labTo, index, type);
+                }
+                if (unk.contains(index))
+                    continue;
+                // storage(LabTo, Index, Type) :- join(LabFrom1, LabFrom2, LabTo), storage(LabFrom1, Index, Type), storage(LabFrom2, Index, Type), ! unk(Index).
+                for (int j = joinByFirst.first(lab); j >= 0; j = joinByFirst.next(j)) {
+                    if (storage.contains(join.get(j, 1), index, type))
+                        storage.add(join.get(j, 2), index, type);
+                }
+                for (int j = joinBySecond.first(lab); j >= 0; j = joinBySecond.next(j)) {
+                    if (storage.contains(join.get(j, 0), index, type))
+                        storage.add(join.get(j, 2), index, type);
+                }
+                // assignType(Lab, Var, Type) :- sload(Lab, Index, Var), storage(Lab, Index, Type), ! unk(Index).
+                for (int s = sloadByLabIndex.first(lab, index); s >= 0; s = sloadByLabIndex.next(s)) {
+                    assignType.add(lab, sload.get(s, 2), type);
+                }
+            }
+            storageDone = end;
+
+            checkDeadline();
+        }
+    }
+}
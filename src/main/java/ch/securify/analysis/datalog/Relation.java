@@ -0,0 +1,171 @@
+/*
+ *  Copyright 2018 Secure, Reliable, and Intelligent Systems Lab, ETH Zurich
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+
+package ch.securify.analysis.datalog;
+
+import ch.securify.analysis.TupleEncoding;
+import ch.securify.utils.LongHashSet;
+import ch.securify.utils.LongPairIntHashMap;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A set of int tuples of fixed arity (at most 3).
+ *
+ * Tuples are only ever appended and are identified by their insertion position, so the tuples derived
+ * during one round of semi-naive evaluation form a contiguous range of positions.
+ *
+ * Tuples are deduplicated by their packed form. Ternary tuples that do not fit into a long are kept
+ * as pairs of their first column and the packed remaining two (see {@link TupleEncoding#isWide(int)}).
+ */
+public class Relation {
+
+    private final String name;
+    private final int arity;
+    private final TupleEncoding encoding;
+
+    private int[] data;
+    private int size;
+    private final LongHashSet tuples;
+    // positions of the wide tuples, keyed by their first column and the packed other two
+    private final LongPairIntHashMap wideTuples;
+    private final List<Index> indexes = new ArrayList<>(2);
+
+    Relation(String name, int arity, TupleEncoding encoding, int expectedSize) {
+        assert arity >= 1 && arity <= 3;
+        this.name = name;
+        this.arity = arity;
+        this.encoding = encoding;
+        this.data = new int[Math.max(expectedSize, 4) * arity];
+        if (encoding.isWide(arity)) {
+            this.tuples = null;
+            this.wideTuples = new LongPairIntHashMap(expectedSize, -1);
+        } else {
+            this.tuples = new LongHashSet(expectedSize);
+            this.wideTuples = null;
+        }
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public int getArity() {
+        return arity;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @param tuple position of the tuple
+     * @param column column index
+     * @return value of the column
+     */
+    public int get(int tuple, int column) {
+        return data[tuple * arity + column];
+    }
+
+    public boolean add(int a) {
+        assert arity == 1;
+        if (!tuples.add(a))
+            return false;
+        append(a, 0, 0);
+        return true;
+    }
+
+    public boolean add(int a, int b) {
+        assert arity == 2;
+        if (!tuples.add(pack(a, b)))
+            return false;
+        append(a, b, 0);
+        return true;
+    }
+
+    public boolean add(int a, int b, int c) {
+        assert arity == 3;
+        if (wideTuples != null ? wideTuples.put(a, pack(b, c), size) >= 0 : !tuples.add(pack(a, b, c)))
+            return false;
+        append(a, b, c);
+        return true;
+    }
+
+    public boolean contains(int a) {
+        return tuples.contains(a);
+    }
+
+    public boolean contains(int a, int b) {
+        return tuples.contains(pack(a, b));
+    }
+
+    public boolean contains(int a, int b, int c) {
+        if (wideTuples != null)
+            return wideTuples.get(a, pack(b, c)) >= 0;
+        return tuples.contains(pack(a, b, c));
+    }
+
+    /**
+     * Get an index on the given columns, creating it on first use.
+     * @param columns column indices forming the lookup key
+     * @return index that is kept up to date as tuples are added
+     */
+    public Index index(int... columns) {
+        for (Index index : indexes) {
+            if (Arrays.equals(index.columns, columns))
+                return index;
+        }
+        Index index = new Index(this, columns);
+        for (int t = 0; t < size; t++) {
+            index.add(t);
+        }
+        indexes.add(index);
+        return index;
+    }
+
+    long pack(int a, int b) {
+        return encoding.encode(a, b);
+    }
+
+    private long pack(int a, int b, int c) {
+        return encoding.encode(a, b, c);
+    }
+
+    private void append(int a, int b, int c) {
+        if ((size + 1) * arity > data.length) {
+            data = Arrays.copyOf(data, data.length * 2);
+        }
+        int offset = size * arity;
+        data[offset] = a;
+        if (arity > 1)
+            data[offset + 1] = b;
+        if (arity > 2)
+            data[offset + 2] = c;
+        int tuple = size++;
+        for (Index index : indexes) {
+            index.add(tuple);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return name + "/" + arity + " (" + size + " tuples)";
+    }
+}
@@ -0,0 +1,130 @@
+/*
+ *  Copyright 2018 Secure, Reliable, and Intelligent Systems Lab, ETH Zurich
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+
+package ch.securify.decompiler;
+
+import ch.securify.decompiler.instructions.Instruction;
+import ch.securify.utils.FileCache;
+
+import java.io.File;
+import java.io.IOException;
+import java.security.MessageDigest;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * On-disk cache of decompiled contracts, keyed by the hash of the runtime bytecode without the
+ * metadata trailer of the Solidity compiler. Contracts deployed many times (proxies, token clones)
+ * are thus decompiled once.
+ *
+ * The cache holds one file per contract, written with {@link InstructionSerializer}. When the files
+ * exceed the size limit, the least recently used ones are deleted. The code of the decompiler is part
+ * of the key, so that changing it invalidates the cached contracts.
+ */
+public class DecompilationCache {
+
+	private static final List<Class<?>> DECOMPILER_CLASSES = Arrays.asList(AbstractDecompiler.class, Decompiler.class,
+			DecompilerFallback.class, EvmParser.class, ControlFlowDetector.class, MethodDetector.class,
+			MethodNameResolver.class, Destacker.class, DestackerFallback.class, DependencyResolver.class,
+			InstructionFactory.class, MethodInliner.class, ConstantPropagation.class);
+
+	private final FileCache cache;
+	private final byte[] decompilerHash;
+
+
+	/**
+	 * @param directory directory of the cache files, created if needed.
+	 * @param maxBytes size limit of the cache files.
+	 * @throws IOException if the directory cannot be created or the decompiler classes cannot be read.
+	 */
+	public DecompilationCache(File directory, long maxBytes) throws IOException {
+		cache = new FileCache(directory, ".ir.gz", maxBytes);
+		MessageDigest digest = FileCache.newDigest();
+		for (Class<?> c : DECOMPILER_CLASSES) {
+			digest.update(FileCache.readClassFile(c));
+		}
+		decompilerHash = digest.digest();
+	}
+
+
+	/**
+	 * Look up the decompiled instructions of a contract.
+	 * @param bytecode runtime bytecode of the contract.
+	 * @return the instructions, or null if the contract is not in the cache.
+	 */
+	public List<Instruction> get(byte[] bytecode) {
+		// unreadable entries, e.g. written by another version, are decompiled again and replaced
+		return cache.get(getKey(bytecode), InstructionSerializer::read);
+	}
+
+
+	/**
+	 * Store the decompiled instructions of a contract, and evict the least recently used contracts if the
+	 * cache exceeds its size limit.
+	 * @param bytecode runtime bytecode of the contract.
+	 * @param instructions decompiled instructions.
+	 * @throws IOException
+	 */
+	public void put(byte[] bytecode, List<Instruction> instructions) throws IOException {
+		cache.put(getKey(bytecode), out -> InstructionSerializer.write(instructions, out));
+	}
+
+
+	public int getHits() {
+		return cache.getHits();
+	}
+
+
+	public int getMisses() {
+		return cache.getMisses();
+	}
+
+
+	/**
+	 * @param bytecode runtime bytecode of a contract.
+	 * @return hash of the bytecode without metadata and of the decompiler, and the version of the serialized instructions.
+	 */
+	String getKey(byte[] bytecode) {
+		MessageDigest digest = FileCache.newDigest();
+		digest.update(decompilerHash);
+		digest.update(stripMetadata(bytecode));
+		return FileCache.toKey(digest) + "-v" + InstructionSerializer.VERSION;
+	}
+
+	/**
+	 * Remove the CBOR-encoded metadata that the Solidity compiler appends to the runtime bytecode.
+	 * The last two bytes hold the length of the metadata, which must start with a CBOR map.
+	 * @param bytecode runtime bytecode.
+	 * @return the bytecode without metadata, or the bytecode itself if it has none.
+	 */
+	static byte[] stripMetadata(byte[] bytecode) {
+		if (bytecode.length < 2)
+			return bytecode;
+		int length = ((bytecode[bytecode.length - 2] & 0xFF) << 8) | (bytecode[bytecode.length - 1] & 0xFF);
+		int start = bytecode.length - 2 - length;
+		if (length == 0 || start < 0)
+			return bytecode;
+		// CBOR map with up to 23 entries
+		int header = bytecode[start] & 0xFF;
+		if (header < 0xa1 || header > 0xb7)
+			return bytecode;
+		return Arrays.copyOf(bytecode, start);
+	}
+
+
+}
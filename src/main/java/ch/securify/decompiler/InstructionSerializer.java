@@ -0,0 +1,601 @@
+/*
+ *  Copyright 2018 Secure, Reliable, and Intelligent Systems Lab, ETH Zurich
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+
+package ch.securify.decompiler;
+
+import ch.securify.decompiler.evm.RawInstruction;
+import ch.securify.decompiler.instructions.*;
+
+import java.io.*;
+import java.util.*;
+
+/**
+ * Writes decompiled instructions to a stream and reads them back, including the variables with their
+ * constant values and types, and the control flow edges between the instructions.
+ *
+ * Instructions that are referenced by the list (e.g. as branch target) but not contained in it are
+ * written as well, so that the read instructions form the same graph.
+ *
+ * Format (all integers are unsigned LEB128 varints, references to optional elements are shifted by one
+ * so that 0 stands for null):
+ * <pre>
+ * magic "EVIR", version
+ * variables:    count, then per variable: name, constant, value types, hash constants
+ * instructions: count, then per instruction: class tag, constructor argument, raw instruction, input,
+ *               output and memory input variables, dependencies, prev, next, branches, comment
+ * list:         count, then the instruction ids in list order
+ * </pre>
+ * Variables and instructions are numbered densely in the order they are written. Strings are written
+ * once and then referenced by their index in the order of appearance. Instruction classes and value
+ * types are written as their index in {@link #CLASSES}, or as name if they are not listed there.
+ * Method boundaries are kept as the {@link _VirtualMethodHead} instructions of the list.
+ */
+public class InstructionSerializer {
+
+	/**
+	 * Version of the format, to be changed whenever the written data changes.
+	 */
+	public static final int VERSION = 2;
+
+	private static final byte[] MAGIC = { 'E', 'V', 'I', 'R' };
+
+	private static final int CONSTANT_UNDEFINED = 0;
+	private static final int CONSTANT_ANY = 1;
+	private static final int CONSTANT_VALUE = 2;
+
+	private static final int FLAG_RAW_INSTRUCTION = 1;
+	private static final int FLAG_COMMENT = 2;
+
+	/**
+	 * Tags of the instruction classes. Only append to this list, the tags are part of the format.
+	 */
+	private static final List<Class<? extends Instruction>> CLASSES = Arrays.asList(
+			Add.class, AddMod.class, Address.class, And.class, Balance.class, BlockHash.class,
+			BlockNumber.class, BlockTimestamp.class, BranchInstruction.class, ch.securify.decompiler.instructions.Byte.class, Call.class, CallCode.class,
+			CallDataCopy.class, CallDataLoad.class, CallDataSize.class, CallValue.class, Caller.class, CodeCopy.class,
+			CodeSize.class, Coinbase.class, Create.class, DelegateCall.class, Difficulty.class, Div.class,
+			Dup.class, Eq.class, Exp.class, ExtCodeCopy.class, ExtCodeSize.class, Gas.class,
+			GasLimit.class, GasPrice.class, Gt.class, Invalid.class, IsZero.class, Jump.class,
+			JumpDest.class, JumpI.class, Log0.class, Log1.class, Log2.class, Log3.class,
+			Log4.class, Lt.class, MLoad.class, MSize.class, MStore.class, MStore8.class,
+			Mod.class, Mul.class, MulMod.class, Not.class, Or.class, Origin.class,
+			Pc.class, Pop.class, Push.class, Return.class, ReturnDataCopy.class, ReturnDataSize.class,
+			Revert.class, SDiv.class, SLoad.class, SMod.class, SStore.class, SelfDestruct.class,
+			Sgt.class, Sha3.class, SignExtend.class, Slt.class, StaticCall.class, Stop.class,
+			Sub.class, Swap.class, Xor.class, _AddressType.class, _UnknownInstruction.class, _VirtualAssignment.class,
+			_VirtualMethodHead.class, _VirtualMethodInvoke.class, _VirtualMethodReturn.class, Variable.TYPE_ANY);
+
+	private static final Map<Class<? extends Instruction>, Integer> CLASS_TAGS = new HashMap<>();
+	static {
+		for (int i = 0; i < CLASSES.size(); i++) {
+			CLASS_TAGS.put(CLASSES.get(i), i + 1);
+		}
+	}
+
+
+	/**
+	 * Write instructions to a stream.
+	 * @param instructions instructions to write.
+	 * @param out stream to write to.
+	 * @throws IOException
+	 */
+	public static void write(List<Instruction> instructions, DataOutputStream out) throws IOException {
+		// number the instructions of the list first, then the ones they reference
+		Map<Instruction, Integer> instructionIds = new IdentityHashMap<>();
+		List<Instruction> allInstructions = new ArrayList<>();
+		instructions.forEach(instruction -> addId(instruction, instructionIds, allInstructions));
+		Map<Variable, Integer> variableIds = new IdentityHashMap<>();
+		List<Variable> allVariables = new ArrayList<>();
+		for (int i = 0; i < allInstructions.size(); i++) {
+			Instruction instruction = allInstructions.get(i);
+			addId(instruction.getPrev(), instructionIds, allInstructions);
+			addId(instruction.getNext(), instructionIds, allInstructions);
+			instruction.getDependencies().forEach(dependency -> addId(dependency, instructionIds, allInstructions));
+			if (instruction instanceof BranchInstruction) {
+				BranchInstruction branchInstruction = (BranchInstruction) instruction;
+				branchInstruction.getIncomingBranches().forEach(branch -> addId(branch, instructionIds, allInstructions));
+				branchInstruction.getOutgoingBranches().forEach(branch -> addId(branch, instructionIds, allInstructions));
+			}
+			for (Variable variable : instruction.getInput()) {
+				addId(variable, variableIds, allVariables);
+			}
+			for (Variable variable : instruction.getOutput()) {
+				addId(variable, variableIds, allVariables);
+			}
+			instruction.getMemoryInputs().forEach(variable -> addId(variable, variableIds, allVariables));
+		}
+
+		Writer writer = new Writer(out);
+		out.write(MAGIC);
+		writer.writeInt(VERSION);
+
+		writer.writeInt(allVariables.size());
+		for (Variable variable : allVariables) {
+			writer.writeString(variable.getName());
+			byte[] constantValue = variable.getConstantValue();
+			if (constantValue == Variable.VALUE_UNDEFINED) {
+				writer.writeInt(CONSTANT_UNDEFINED);
+			} else if (constantValue == Variable.VALUE_ANY) {
+				writer.writeInt(CONSTANT_ANY);
+			} else {
+				writer.writeInt(CONSTANT_VALUE);
+				writer.writeBytes(constantValue);
+			}
+			writer.writeInt(variable.getValueTypes().size());
+			for (Class<? extends Instruction> type : variable.getValueTypes()) {
+				writer.writeClass(type);
+			}
+			writer.writeInt(variable.getHashConstants().size());
+			for (byte[] hashConstant : variable.getHashConstants()) {
+				writer.writeBytes(hashConstant);
+			}
+		}
+
+		writer.writeInt(allInstructions.size());
+		for (Instruction instruction : allInstructions) {
+			writer.writeClass(instruction.getClass());
+			if (instruction instanceof JumpDest) {
+				writer.writeString(((JumpDest) instruction).getLabel());
+			} else if (instruction instanceof _VirtualMethodInvoke) {
+				writer.writeString(((_VirtualMethodInvoke) instruction).getMethodName());
+			} else if (instruction instanceof _VirtualMethodReturn) {
+				// no label
+			} else if (instruction instanceof Jump) {
+				writer.writeString(((Jump) instruction).getTargetLabel());
+			} else if (instruction instanceof JumpI) {
+				writer.writeString(((JumpI) instruction).getTargetLabel());
+			} else if (instruction instanceof Push) {
+				writer.writeBytes(((Push) instruction).getData());
+			}
+
+			RawInstruction rawInstruction = instruction.getRawInstruction();
+			writer.writeInt((rawInstruction != null ? FLAG_RAW_INSTRUCTION : 0) | (instruction.getComment() != null ? FLAG_COMMENT : 0));
+			if (rawInstruction != null) {
+				writer.writeInt(rawInstruction.opcode);
+				writer.writeBytes(rawInstruction.data);
+				writer.writeInt(rawInstruction.offset);
+				writer.writeInt(rawInstruction.instrNumber);
+			}
+
+			writer.writeIds(Arrays.asList(instruction.getInput()), variableIds);
+			writer.writeIds(Arrays.asList(instruction.getOutput()), variableIds);
+			writer.writeIds(instruction.getMemoryInputs(), variableIds);
+			writer.writeIds(instruction.getDependencies(), instructionIds);
+			writer.writeId(instruction.getPrev(), instructionIds);
+			writer.writeId(instruction.getNext(), instructionIds);
+			if (instruction instanceof BranchInstruction) {
+				writer.writeIds(((BranchInstruction) instruction).getIncomingBranches(), instructionIds);
+				writer.writeIds(((BranchInstruction) instruction).getOutgoingBranches(), instructionIds);
+			}
+			if (instruction.getComment() != null) {
+				writer.writeString(instruction.getComment());
+			}
+		}
+
+		// an instruction may occur more than once in the list
+		writer.writeIds(instructions, instructionIds);
+	}
+
+
+	/**
+	 * Write the instructions in a form that identifies what the analysis sees of them, e.g. to hash a
+	 * method body. Variable names, labels, comments and the dependencies of the decompiler are left out,
+	 * and the bytecode offsets and instruction numbers are made relative to the first instruction, so
+	 * that the same code at another position or in another contract is written the same way.
+	 * References to instructions outside the list are written as their class only.
+	 * The result cannot be read back.
+	 * @param instructions instructions to write.
+	 * @param out stream to write to.
+	 * @throws IOException
+	 */
+	public static void writeNormalized(List<Instruction> instructions, DataOutputStream out) throws IOException {
+		Map<Instruction, Integer> instructionIds = new IdentityHashMap<>();
+		List<Instruction> listInstructions = new ArrayList<>();
+		instructions.forEach(instruction -> addId(instruction, instructionIds, listInstructions));
+		Map<Variable, Integer> variableIds = new IdentityHashMap<>();
+		List<Variable> allVariables = new ArrayList<>();
+		int baseOffset = Integer.MAX_VALUE;
+		int baseInstrNumber = Integer.MAX_VALUE;
+		for (Instruction instruction : listInstructions) {
+			for (Variable variable : instruction.getInput()) {
+				addId(variable, variableIds, allVariables);
+			}
+			for (Variable variable : instruction.getOutput()) {
+				addId(variable, variableIds, allVariables);
+			}
+			if (instruction.getRawInstruction() != null) {
+				baseOffset = Math.min(baseOffset, instruction.getRawInstruction().offset);
+				baseInstrNumber = Math.min(baseInstrNumber, instruction.getRawInstruction().instrNumber);
+			}
+		}
+
+		Writer writer = new Writer(out);
+		out.write(MAGIC);
+		writer.writeInt(VERSION);
+
+		writer.writeInt(allVariables.size());
+		for (Variable variable : allVariables) {
+			byte[] constantValue = variable.getConstantValue();
+			if (constantValue == Variable.VALUE_UNDEFINED) {
+				writer.writeInt(CONSTANT_UNDEFINED);
+			} else if (constantValue == Variable.VALUE_ANY) {
+				writer.writeInt(CONSTANT_ANY);
+			} else {
+				writer.writeInt(CONSTANT_VALUE);
+				writer.writeBytes(constantValue);
+			}
+			// the order of the set depends on the hash codes of the classes
+			List<Class<? extends Instruction>> types = new ArrayList<>(variable.getValueTypes());
+			types.sort(Comparator.comparing(Class::getName));
+			writer.writeInt(types.size());
+			for (Class<? extends Instruction> type : types) {
+				writer.writeClass(type);
+			}
+		}
+
+		writer.writeInt(listInstructions.size());
+		for (Instruction instruction : listInstructions) {
+			writer.writeClass(instruction.getClass());
+			if (instruction instanceof Push) {
+				writer.writeBytes(((Push) instruction).getData());
+			}
+
+			RawInstruction rawInstruction = instruction.getRawInstruction();
+			writer.writeInt(rawInstruction != null ? FLAG_RAW_INSTRUCTION : 0);
+			if (rawInstruction != null) {
+				writer.writeInt(rawInstruction.opcode);
+				writer.writeBytes(rawInstruction.data);
+				writer.writeInt(rawInstruction.offset - baseOffset);
+				writer.writeInt(rawInstruction.instrNumber - baseInstrNumber);
+			}
+
+			writer.writeIds(Arrays.asList(instruction.getInput()), variableIds);
+			writer.writeIds(Arrays.asList(instruction.getOutput()), variableIds);
+			writer.writeInt(toReference(instruction.getPrev(), instructionIds));
+			writer.writeInt(toReference(instruction.getNext(), instructionIds));
+			if (instruction instanceof BranchInstruction) {
+				// branches from other methods are added in the order the methods are decompiled
+				writer.writeReferences(((BranchInstruction) instruction).getIncomingBranches(), instructionIds);
+				writer.writeReferences(((BranchInstruction) instruction).getOutgoingBranches(), instructionIds);
+			}
+		}
+
+		writer.writeIds(instructions, instructionIds);
+	}
+
+
+	/**
+	 * Read instructions written by {@link #write(List, DataOutputStream)}.
+	 * @param in stream to read from.
+	 * @return instructions, in the order they were written.
+	 * @throws IOException if the stream cannot be read or was written with another version of the format.
+	 */
+	public static List<Instruction> read(DataInputStream in) throws IOException {
+		byte[] magic = new byte[MAGIC.length];
+		in.readFully(magic);
+		if (!Arrays.equals(magic, MAGIC)) {
+			throw new IOException("not a serialized instruction list");
+		}
+		Reader reader = new Reader(in);
+		int version = reader.readInt();
+		if (version != VERSION) {
+			throw new IOException("unsupported instruction format version " + version);
+		}
+
+		Variable[] variables = new Variable[reader.readInt()];
+		for (int i = 0; i < variables.length; i++) {
+			Variable variable = new Variable(reader.readString());
+			switch (reader.readInt()) {
+				case CONSTANT_UNDEFINED: variable.setConstantValue(Variable.VALUE_UNDEFINED); break;
+				case CONSTANT_ANY: variable.setConstantValue(Variable.VALUE_ANY); break;
+				default: variable.setConstantValue(reader.readBytes());
+			}
+			for (int types = reader.readInt(); types > 0; types--) {
+				variable.addValueType(reader.readClass());
+			}
+			for (int hashConstants = reader.readInt(); hashConstants > 0; hashConstants--) {
+				variable.addHashConstant(reader.readBytes());
+			}
+			variables[i] = variable;
+		}
+
+		Instruction[] instructions = new Instruction[reader.readInt()];
+		// the instructions reference each other, so create them all before resolving the references
+		int[][][] references = new int[instructions.length][][];
+		for (int i = 0; i < instructions.length; i++) {
+			Instruction instruction = createInstruction(reader.readClass(), reader);
+			int flags = reader.readInt();
+			if ((flags & FLAG_RAW_INSTRUCTION) != 0) {
+				int opcode = reader.readInt();
+				byte[] data = reader.readBytes();
+				int offset = reader.readInt();
+				int instrNumber = reader.readInt();
+				instruction.setRawInstruction(new RawInstruction(opcode, data, offset, instrNumber));
+			}
+			instruction.setInput(toVariables(reader.readIds(), variables));
+			instruction.setOutput(toVariables(reader.readIds(), variables));
+			for (Variable variable : toVariables(reader.readIds(), variables)) {
+				instruction.addMemoryInput(variable);
+			}
+			int[] dependencies = reader.readIds();
+			int[] neighbours = { reader.readId(), reader.readId() };
+			if (instruction instanceof BranchInstruction) {
+				references[i] = new int[][] { dependencies, neighbours, reader.readIds(), reader.readIds() };
+			} else {
+				references[i] = new int[][] { dependencies, neighbours };
+			}
+			if ((flags & FLAG_COMMENT) != 0) {
+				instruction.setComment(reader.readString());
+			}
+			instructions[i] = instruction;
+		}
+
+		for (int i = 0; i < instructions.length; i++) {
+			Instruction instruction = instructions[i];
+			for (int dependency : references[i][0]) {
+				instruction.addDependency(instructions[dependency]);
+			}
+			instruction.setPrev(references[i][1][0] < 0 ? null : instructions[references[i][1][0]]);
+			instruction.setNext(references[i][1][1] < 0 ? null : instructions[references[i][1][1]]);
+			if (instruction instanceof BranchInstruction) {
+				for (int branch : references[i][2]) {
+					((BranchInstruction) instruction).addIncomingBranch(instructions[branch]);
+				}
+				for (int branch : references[i][3]) {
+					((BranchInstruction) instruction).addOutgoingBranch(instructions[branch]);
+				}
+			}
+		}
+
+		List<Instruction> list = new ArrayList<>();
+		for (int id : reader.readIds()) {
+			list.add(instructions[id]);
+		}
+		return list;
+	}
+
+
+	/**
+	 * Write instructions to a file.
+	 * @param instructions instructions to write.
+	 * @param file file to write to.
+	 * @throws IOException
+	 */
+	public static void write(List<Instruction> instructions, File file) throws IOException {
+		try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)))) {
+			write(instructions, out);
+		}
+	}
+
+
+	/**
+	 * Read instructions from a file written by {@link #write(List, File)}.
+	 * @param file file to read from.
+	 * @return instructions, in the order they were written.
+	 * @throws IOException
+	 */
+	public static List<Instruction> read(File file) throws IOException {
+		try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+			return read(in);
+		}
+	}
+
+
+	private static <T> void addId(T element, Map<T, Integer> ids, List<T> elements) {
+		if (element != null && !ids.containsKey(element)) {
+			ids.put(element, elements.size());
+			elements.add(element);
+		}
+	}
+
+	/**
+	 * @return 0 for null, the shifted id of an instruction of the list, or the class tag of another instruction.
+	 */
+	private static int toReference(Instruction instruction, Map<Instruction, Integer> ids) {
+		if (instruction == null)
+			return 0;
+		Integer id = ids.get(instruction);
+		if (id != null)
+			return (id + 1) << 1;
+		Integer tag = CLASS_TAGS.get(instruction.getClass());
+		return ((tag == null ? 0 : tag) << 1) | 1;
+	}
+
+	private static Variable[] toVariables(int[] ids, Variable[] variables) {
+		Variable[] result = new Variable[ids.length];
+		for (int i = 0; i < ids.length; i++) {
+			result[i] = ids[i] < 0 ? null : variables[ids[i]];
+		}
+		return result;
+	}
+
+	private static Instruction createInstruction(Class<? extends Instruction> instructionClass, Reader reader) throws IOException {
+		if (instructionClass == _VirtualMethodHead.class)
+			return new _VirtualMethodHead(reader.readString());
+		if (instructionClass == JumpDest.class)
+			return new JumpDest(reader.readString());
+		if (instructionClass == _VirtualMethodInvoke.class)
+			return new _VirtualMethodInvoke(reader.readString());
+		if (instructionClass == _VirtualMethodReturn.class)
+			return new _VirtualMethodReturn();
+		if (instructionClass == Jump.class)
+			return new Jump(reader.readString());
+		if (instructionClass == JumpI.class)
+			return new JumpI(reader.readString());
+		if (instructionClass == Push.class)
+			return new Push(reader.readBytes());
+		if (instructionClass == Dup.class)
+			return new Dup(null);
+		if (instructionClass == _VirtualAssignment.class)
+			return new _VirtualAssignment(null, null);
+		try {
+			return instructionClass.getDeclaredConstructor().newInstance();
+		} catch (ReflectiveOperationException e) {
+			throw new IOException("cannot create instruction " + instructionClass.getName(), e);
+		}
+	}
+
+
+	private static class Writer {
+
+		private final DataOutputStream out;
+		private final Map<String, Integer> strings = new HashMap<>();
+
+		Writer(DataOutputStream out) {
+			this.out = out;
+		}
+
+		void writeInt(int value) throws IOException {
+			while ((value & ~0x7F) != 0) {
+				out.writeByte((value & 0x7F) | 0x80);
+				value >>>= 7;
+			}
+			out.writeByte(value);
+		}
+
+		<T> void writeId(T element, Map<T, Integer> ids) throws IOException {
+			writeInt(element == null ? 0 : ids.get(element) + 1);
+		}
+
+		<T> void writeIds(Collection<T> elements, Map<T, Integer> ids) throws IOException {
+			writeInt(elements.size());
+			for (T element : elements) {
+				writeId(element, ids);
+			}
+		}
+
+		/**
+		 * Write references to instructions in ascending order, see {@link #toReference(Instruction, Map)}.
+		 */
+		void writeReferences(Collection<Instruction> instructions, Map<Instruction, Integer> ids) throws IOException {
+			int[] references = new int[instructions.size()];
+			int i = 0;
+			for (Instruction instruction : instructions) {
+				references[i++] = toReference(instruction, ids);
+			}
+			Arrays.sort(references);
+			writeInt(references.length);
+			for (int reference : references) {
+				writeInt(reference);
+			}
+		}
+
+		void writeBytes(byte[] bytes) throws IOException {
+			writeInt(bytes == null ? 0 : bytes.length + 1);
+			if (bytes != null) {
+				out.write(bytes);
+			}
+		}
+
+		/**
+		 * Write the index of a string, followed by the string itself on its first occurrence.
+		 */
+		void writeString(String string) throws IOException {
+			Integer index = strings.get(string);
+			if (index != null) {
+				writeInt(index);
+			} else {
+				writeInt(strings.size());
+				strings.put(string, strings.size());
+				out.writeUTF(string);
+			}
+		}
+
+		void writeClass(Class<? extends Instruction> instructionClass) throws IOException {
+			Integer tag = CLASS_TAGS.get(instructionClass);
+			writeInt(tag == null ? 0 : tag);
+			if (tag == null) {
+				writeString(instructionClass.getName());
+			}
+		}
+	}
+
+
+	private static class Reader {
+
+		private final DataInputStream in;
+		private final List<String> strings = new ArrayList<>();
+
+		Reader(DataInputStream in) {
+			this.in = in;
+		}
+
+		int readInt() throws IOException {
+			int value = 0;
+			for (int shift = 0; shift < 32; shift += 7) {
+				int b = in.readUnsignedByte();
+				value |= (b & 0x7F) << shift;
+				if ((b & 0x80) == 0)
+					return value;
+			}
+			throw new IOException("malformed integer");
+		}
+
+		/**
+		 * @return the id, or -1 for null.
+		 */
+		int readId() throws IOException {
+			return readInt() - 1;
+		}
+
+		int[] readIds() throws IOException {
+			int[] ids = new int[readInt()];
+			for (int i = 0; i < ids.length; i++) {
+				ids[i] = readId();
+			}
+			return ids;
+		}
+
+		byte[] readBytes() throws IOException {
+			int length = readInt() - 1;
+			if (length < 0)
+				return null;
+			byte[] bytes = new byte[length];
+			in.readFully(bytes);
+			return bytes;
+		}
+
+		String readString() throws IOException {
+			int index = readInt();
+			if (index < strings.size())
+				return strings.get(index);
+			if (index > strings.size())
+				throw new IOException("malformed string reference");
+			String string = in.readUTF();
+			strings.add(string);
+			return string;
+		}
+
+		@SuppressWarnings("unchecked")
+		Class<? extends Instruction> readClass() throws IOException {
+			int tag = readInt();
+			if (tag > CLASSES.size())
+				throw new IOException("unknown instruction class tag " + tag);
+			if (tag > 0)
+				return CLASSES.get(tag - 1);
+			String name = readString();
+			try {
+				return (Class<? extends Instruction>) Class.forName(name);
+			} catch (ClassNotFoundException e) {
+				throw new IOException("unknown instruction class " + name, e);
+			}
+		}
+	}
+
+
+}
@@ -0,0 +1,61 @@
+/*
+ *  Copyright 2018 Secure, Reliable, and Intelligent Systems Lab, ETH Zurich
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+
+package ch.securify.decompiler;
+
+/**
+ * Number of occurrences of each opcode in a bytecode, counted in one linear pass of {@link EvmParser}.
+ * Since the decompiler parses the bytecode the same way, an opcode that does not occur cannot produce
+ * a decompiled instruction.
+ */
+public class OpcodeHistogram {
+
+	private final int[] counts = new int[256];
+
+
+	/**
+	 * @param bytecode plain bytecode.
+	 */
+	public OpcodeHistogram(byte[] bytecode) {
+		EvmParser.parse(bytecode, (offset, instrNumber, opcode, payload) -> counts[opcode]++);
+	}
+
+
+	/**
+	 * @param opcode opcode, see {@link ch.securify.decompiler.evm.OpCodes}.
+	 * @return number of occurrences of the opcode.
+	 */
+	public int getCount(int opcode) {
+		return counts[opcode];
+	}
+
+
+	/**
+	 * @param opcodes opcodes, see {@link ch.securify.decompiler.evm.OpCodes}.
+	 * @return true if any of the opcodes occurs.
+	 */
+	public boolean containsAny(int... opcodes) {
+		for (int opcode : opcodes) {
+			if (counts[opcode] > 0)
+				return true;
+		}
+		return false;
+	}
+
+
+}
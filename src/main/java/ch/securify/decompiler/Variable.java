@@ -112,14 +112,55 @@ public class Variable {
 	private byte[] constantValue = VALUE_UNDEFINED;
 	private Set<byte[]> hashConstants = new HashSet<>();
 
+	// code in the analysis context that owns it, e.g. ch.securify.analysis.FactBase
+	private Object codeOwner;
+	private int code;
+
 	public Variable() {
 		name = generateVarName();
 	}
 
+	/**
+	 * Create a variable with a given name, e.g. when reading back serialized instructions.
+	 * @param name name of the variable.
+	 */
+	Variable(String name) {
+		this.name = name;
+	}
+
 	public String getName() {
 		return name;
 	}
 
+
+	/**
+	 * @return the analysis context whose code the variable carries, or null, see {@link #setCode(Object, int)}.
+	 */
+	public Object getCodeOwner() {
+		return codeOwner;
+	}
+
+
+	/**
+	 * @return the code of the variable in the context returned by {@link #getCodeOwner()}.
+	 */
+	public int getCode() {
+		return code;
+	}
+
+
+	/**
+	 * Store the dense integer code of the variable in an analysis context (e.g. a fact base), so that the
+	 * context finds the code without a table lookup. The context clears it with a null owner once it is
+	 * no longer used, so that the variable does not keep it alive.
+	 * @param owner analysis context, or null.
+	 * @param code code of the variable in the context.
+	 */
+	public void setCode(Object owner, int code) {
+		this.codeOwner = owner;
+		this.code = code;
+	}
+
 	@Override
 	public String toString() {
 		if (debug) {
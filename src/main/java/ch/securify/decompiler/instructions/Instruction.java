@@ -44,6 +44,10 @@ public abstract class Instruction implements Cloneable {
 
 	private String comment;
 
+	// code in the analysis context that owns it, e.g. ch.securify.analysis.FactBase
+	private Object codeOwner;
+	private int code;
+
 
 	/**
 	 * Set the raw instruction on which this Instruction instance is based on.
@@ -61,6 +65,35 @@ public abstract class Instruction implements Cloneable {
 	}
 
 
+	/**
+	 * @return the analysis context whose code the instruction carries, or null, see {@link #setCode(Object, int)}.
+	 */
+	public Object getCodeOwner() {
+		return codeOwner;
+	}
+
+
+	/**
+	 * @return the code of the instruction in the context returned by {@link #getCodeOwner()}.
+	 */
+	public int getCode() {
+		return code;
+	}
+
+
+	/**
+	 * Store the dense integer code of the instruction in an analysis context (e.g. a fact base), so that the
+	 * context finds the code without a table lookup. The context clears it with a null owner once it is
+	 * no longer used, so that the instruction does not keep it alive.
+	 * @param owner analysis context, or null.
+	 * @param code code of the instruction in the context.
+	 */
+	public void setCode(Object owner, int code) {
+		this.codeOwner = owner;
+		this.code = code;
+	}
+
+
 	/**
 	 * Set the input variables from stack. First variable is the top most on the stack.
 	 * @param input Variables
@@ -250,7 +283,10 @@ public abstract class Instruction implements Cloneable {
 	@Override
 	public Instruction clone() {
 		try {
-			return (Instruction) super.clone();
+			Instruction copy = (Instruction) super.clone();
+			// the copy is another instruction to the analysis
+			copy.codeOwner = null;
+			return copy;
 		}
 		catch (CloneNotSupportedException e) {
 			throw new RuntimeException(e);
@@ -29,6 +29,10 @@ public class Jump extends BranchInstruction {
 		this.targetLabel = targetLabel;
 	}
 
+	public String getTargetLabel() {
+		return targetLabel;
+	}
+
 	@Override
 	public String getStringRepresentation() {
 		return "goto " + targetLabel;
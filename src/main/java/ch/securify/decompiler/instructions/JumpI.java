@@ -41,6 +41,10 @@ public class JumpI extends BranchInstruction {
 		this.targetLabel = targetLabel;
 	}
 
+	public String getTargetLabel() {
+		return targetLabel;
+	}
+
 	@Override
 	public String getStringRepresentation() {
 		Instruction merger = getMergeInstruction();
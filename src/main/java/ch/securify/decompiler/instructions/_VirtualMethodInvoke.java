@@ -33,6 +33,10 @@ public class _VirtualMethodInvoke extends Jump implements _VirtualInstruction {
 		this.methodName = methodName;
 	}
 
+	public String getMethodName() {
+		return methodName;
+	}
+
 	@Override
 	public String getStringRepresentation() {
 		return "(" + Arrays.stream(getOutput()).map(Variable::toString).collect(Collectors.joining(", ")) + ") = " +
@@ -31,6 +31,11 @@ public class ContractResult {
 
 	public SecurifyErrors securifyErrors = new SecurifyErrors();
 	public boolean finished = false;
+	// method bodies checked separately, and those of them whose dataflow was not needed by any pattern
+	public int methodBodies = 0;
+	public int skippedMethodBodies = 0;
+	// patterns that cannot match the opcodes of the contract, and were not checked
+	public List<String> prescreenedPatterns = new LinkedList<>();
 	public final Map<String, PatternResult> patternResults = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
 
 }
@@ -18,6 +18,8 @@
 
 package ch.securify.model;
 
+import ch.securify.analysis.QueryStatistics;
+
 import java.util.ArrayList;
 import java.util.List;
 
@@ -35,6 +37,9 @@ public class PatternResult {
     public List<Integer> safe = new ArrayList<>();
     public List<Integer> conflicts = new ArrayList<>();
 
+    // dataflow queries of the pattern over all checked instruction lists
+    public QueryStatistics queryStatistics = new QueryStatistics();
+
     public void addViolation(Integer id) {
         violations.add(id);
         hasViolations = true;
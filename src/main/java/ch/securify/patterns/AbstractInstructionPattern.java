@@ -19,9 +19,13 @@
 package ch.securify.patterns;
 
 import ch.securify.analysis.AbstractDataflow;
+import ch.securify.decompiler.Variable;
 import ch.securify.decompiler.instructions.Instruction;
+import ch.securify.decompiler.instructions.SStore;
 
 import java.util.List;
+import java.util.SortedSet;
+import java.util.TreeSet;
 
 public abstract class AbstractInstructionPattern extends AbstractPattern {
 
@@ -29,10 +33,34 @@ public abstract class AbstractInstructionPattern extends AbstractPattern {
         super(patternDescription);
     }
 
+    /**
+     * Cheap syntactic check of a method body, before its dataflow is computed.
+     * @param methodInstructions instructions of the method body
+     * @return false if checking the body does not query the dataflow; {@link #checkPattern} may then be
+     * called with an {@link ch.securify.analysis.UnknownDataflow}
+     */
+    public boolean needsDataflow(List<Instruction> methodInstructions) {
+        for (Instruction instr : methodInstructions) {
+            if (isCandidate(instr))
+                return true;
+        }
+        return false;
+    }
+
+    /**
+     * Describe what the result of the pattern on a method body depends on outside the body, so that
+     * cached results of the same body are only reused in contracts with the same description.
+     * By default, null: the result only depends on the method body.
+     * @param contractInstructions instructions of the contract
+     */
+    public String getContractContext(List<Instruction> contractInstructions) {
+        return null;
+    }
+
     @Override
     public void checkPattern(List<Instruction> methodInstructions, List<Instruction> contractInstructions, AbstractDataflow dataflow) {
         for (Instruction instr: methodInstructions) {
-            if (!applicable(instr, dataflow))
+            if (!isCandidate(instr) || !applicable(instr, dataflow))
                 continue;
 
             boolean match = isViolation(instr, methodInstructions, contractInstructions, dataflow);
@@ -51,7 +79,45 @@ public abstract class AbstractInstructionPattern extends AbstractPattern {
     }
 
 
-    protected abstract boolean applicable(Instruction instr, AbstractDataflow dataflow);
+    /**
+     * @return the constant storage offsets written by the instructions
+     */
+    protected static SortedSet<Integer> getConstantStoreOffsets(List<Instruction> instructions) {
+        SortedSet<Integer> offsets = new TreeSet<>();
+        for (Instruction instr : instructions) {
+            if (!(instr instanceof SStore))
+                continue;
+
+            Variable index = instr.getInput()[0];
+            if (index.hasConstantValue()) {
+                offsets.add(AbstractDataflow.getInt(index.getConstantValue()));
+            }
+        }
+        return offsets;
+    }
+
+    /**
+     * Contract context of the patterns whose violations depend on the storage offsets written in the
+     * contract, see {@link #getContractContext(List)}.
+     * @param contractInstructions instructions of the contract
+     */
+    protected static String getStoreOffsetContext(List<Instruction> contractInstructions) {
+        return getConstantStoreOffsets(contractInstructions).toString();
+    }
+
+    /**
+     * Syntactic part of the applicability check, which must not query the dataflow.
+     * @return false if the pattern does not apply to the instruction, whatever the dataflow
+     */
+    protected abstract boolean isCandidate(Instruction instr);
+
+    /**
+     * Part of the applicability check that needs the dataflow, only asked for candidates. By default, true.
+     */
+    protected boolean applicable(Instruction instr, AbstractDataflow dataflow) {
+        return true;
+    }
+
     protected abstract boolean isViolation(Instruction instr, List<Instruction> methodInstructions, List<Instruction> contractInstructions, AbstractDataflow dataflow);
     protected abstract boolean isCompliant(Instruction instr, List<Instruction> methodInstructions, List<Instruction> contractInstructions, AbstractDataflow dataflow);
 }
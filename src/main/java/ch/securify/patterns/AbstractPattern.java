@@ -19,6 +19,8 @@
 package ch.securify.patterns;
 
 import ch.securify.analysis.AbstractDataflow;
+import ch.securify.analysis.QueryPlan;
+import ch.securify.decompiler.OpcodeHistogram;
 import ch.securify.decompiler.instructions.Instruction;
 
 import java.util.Collection;
@@ -56,6 +58,23 @@ public abstract class AbstractPattern {
      */
 	public abstract void checkPattern(List<Instruction> instructions, List<Instruction> allInstructions, AbstractDataflow dataflow);
 
+    /**
+     * Cheap check of the bytecode of the contract, before it is decompiled. By default, true.
+     * @param opcodes opcodes of the contract bytecode
+     * @return false if the pattern cannot report any instruction of the contract
+     */
+    public boolean mayMatch(OpcodeHistogram opcodes) {
+        return true;
+    }
+
+    /**
+     * Declare the dataflow queries the pattern asks. By default, any of them.
+     * @param plan query plan of the dataflows
+     */
+    public void declareQueries(QueryPlan plan) {
+        plan.demandAll();
+    }
+
     /**
      * @return instructions that match the pattern (violations)
      */
@@ -19,17 +19,26 @@
 package ch.securify.patterns;
 
 import ch.securify.analysis.AbstractDataflow;
+import ch.securify.analysis.QueryPlan;
 import ch.securify.analysis.Status;
+import ch.securify.decompiler.OpcodeHistogram;
 import ch.securify.decompiler.Variable;
+import ch.securify.decompiler.evm.OpCodes;
 import ch.securify.decompiler.instructions.Call;
 import ch.securify.decompiler.instructions.Gas;
 import ch.securify.decompiler.instructions.Instruction;
 import ch.securify.decompiler.instructions.SStore;
 
+import java.util.Collections;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.Set;
 
 public class DAO extends AbstractInstructionPattern {
 
+    // SSTOREs of the method body being checked
+    private Set<Instruction> bodySStores;
+
     public DAO() {
         super(new PatternDescription("RecursiveCalls",
                 DAO.class,
@@ -40,7 +49,34 @@ public class DAO extends AbstractInstructionPattern {
     }
 
     @Override
-    protected boolean applicable(Instruction instr, AbstractDataflow dataflow) {
+    public void declareQueries(QueryPlan plan) {
+        plan.mustPrecede(Call.class, SStore.class)
+                .mayFollow(Call.class, SStore.class)
+                .varMayDepOn();
+    }
+
+    @Override
+    public boolean mayMatch(OpcodeHistogram opcodes) {
+        return opcodes.containsAny(OpCodes.CALL);
+    }
+
+    @Override
+    public void checkPattern(List<Instruction> methodInstructions, List<Instruction> contractInstructions, AbstractDataflow dataflow) {
+        bodySStores = Collections.newSetFromMap(new IdentityHashMap<>());
+        for (Instruction instr : methodInstructions) {
+            if (instr instanceof SStore) {
+                bodySStores.add(instr);
+            }
+        }
+        try {
+            super.checkPattern(methodInstructions, contractInstructions, dataflow);
+        } finally {
+            bodySStores = null;
+        }
+    }
+
+    @Override
+    protected boolean isCandidate(Instruction instr) {
         if (!(instr instanceof Call))
             return false;
 
@@ -48,6 +84,11 @@ public class DAO extends AbstractInstructionPattern {
         if (value.hasConstantValue() && AbstractDataflow.getInt(value.getConstantValue()) == 0)
             return false;
 
+        return true;
+    }
+
+    @Override
+    protected boolean applicable(Instruction instr, AbstractDataflow dataflow) {
         Variable gasVar = instr.getInput()[0];
         if (dataflow.varMayDepOn(instr, gasVar, Gas.class) == Status.UNSATISFIABLE)
             return false;
@@ -57,12 +98,9 @@ public class DAO extends AbstractInstructionPattern {
 
     @Override
     protected boolean isViolation(Instruction instr, List<Instruction> methodInstructions, List<Instruction> contractInstructions, AbstractDataflow dataflow) {
-        for (Instruction otherInstr : methodInstructions) {
-            if (otherInstr instanceof SStore) {
-                int s = dataflow.mustPrecede(instr, otherInstr);
-                if (s == Status.SATISFIABLE) {
-                    return true;
-                }
+        for (Instruction sstore : dataflow.mustPrecedeAll(instr, SStore.class)) {
+            if (bodySStores.contains(sstore)) {
+                return true;
             }
         }
         return false;
@@ -70,12 +108,9 @@ public class DAO extends AbstractInstructionPattern {
 
     @Override
     protected boolean isCompliant(Instruction instr, List<Instruction> methodInstructions, List<Instruction> contractInstructions, AbstractDataflow dataflow) {
-        for (Instruction otherInstr : methodInstructions) {
-            if (otherInstr instanceof SStore) {
-                int s = dataflow.mayFollow(instr, otherInstr);
-                if (s == Status.SATISFIABLE) {
-                    return false;
-                }
+        for (Instruction sstore : dataflow.mayFollowAll(instr, SStore.class)) {
+            if (bodySStores.contains(sstore)) {
+                return false;
             }
         }
         return true;
@@ -23,7 +23,10 @@ import java.util.List;
 import ch.securify.analysis.Status;
 
 import ch.securify.analysis.AbstractDataflow;
+import ch.securify.analysis.QueryPlan;
+import ch.securify.decompiler.OpcodeHistogram;
 import ch.securify.decompiler.Variable;
+import ch.securify.decompiler.evm.OpCodes;
 import ch.securify.decompiler.instructions.Call;
 import ch.securify.decompiler.instructions.Gas;
 import ch.securify.decompiler.instructions.Instruction;
@@ -41,7 +44,19 @@ public class DAOConstantGas extends AbstractInstructionPattern {
     }
 
     @Override
-    protected boolean applicable(Instruction instr, AbstractDataflow dataflow) {
+    public void declareQueries(QueryPlan plan) {
+        plan.mustPrecede(Call.class, SStore.class)
+                .mayFollow(Call.class, SStore.class)
+                .varMayDepOn();
+    }
+
+    @Override
+    public boolean mayMatch(OpcodeHistogram opcodes) {
+        return opcodes.containsAny(OpCodes.CALL);
+    }
+
+    @Override
+    protected boolean isCandidate(Instruction instr) {
         if (!(instr instanceof Call))
             return false;
 
@@ -49,6 +64,11 @@ public class DAOConstantGas extends AbstractInstructionPattern {
         if (value.hasConstantValue() && AbstractDataflow.getInt(value.getConstantValue()) == 0)
             return false;
 
+        return true;
+    }
+
+    @Override
+    protected boolean applicable(Instruction instr, AbstractDataflow dataflow) {
         Variable gasVar = instr.getInput()[0];
         if (dataflow.varMayDepOn(instr, gasVar, Gas.class) == Status.SATISFIABLE)
             return false;
@@ -24,6 +24,7 @@ import java.util.List;
 import ch.securify.analysis.Status;
 
 import ch.securify.analysis.AbstractDataflow;
+import ch.securify.analysis.QueryPlan;
 import ch.securify.decompiler.Variable;
 import ch.securify.decompiler.instructions.*;
 import ch.securify.utils.BigIntUtil;
@@ -41,24 +42,20 @@ public class LockedEther extends AbstractContractPattern {
 
     }
 
+    @Override
+    public void declareQueries(QueryPlan plan) {
+        plan.mustPrecede(JumpI.class, Stop.class)
+                .varMustDepOn()
+                .instrMayDepOn();
+    }
+
     @Override
     protected boolean isSafe(List<Instruction> instructions, AbstractDataflow dataflow) {
         // Check if the contract cannot receive ether
         boolean allStopsCannotReceiveEther = true;
         for (Instruction stopInstr : instructions) {
             if (stopInstr instanceof Stop) {
-                boolean stopCannotReceiveEther = false;
-                for (Instruction jumpInstr : instructions) {
-                    if (jumpInstr instanceof JumpI) {
-                        Variable cond = ((JumpI) jumpInstr).getCondition();
-                        if (dataflow.mustPrecede(jumpInstr, stopInstr) == Status.SATISFIABLE
-                                && dataflow.varMustDepOn(jumpInstr, cond, CallValue.class) == Status.SATISFIABLE
-                                && dataflow.varMustDepOn(jumpInstr, cond, IsZero.class) == Status.SATISFIABLE) {
-                            stopCannotReceiveEther = true;
-                            break;
-                        }
-                    }
-                }
+                boolean stopCannotReceiveEther = dataflow.getGuards().isMustGuardedBy(stopInstr, CallValue.class, IsZero.class);
                 if (!stopCannotReceiveEther) {
                     allStopsCannotReceiveEther = false;
                     break;
@@ -19,6 +19,7 @@
 package ch.securify.patterns;
 
 import ch.securify.analysis.AbstractDataflow;
+import ch.securify.analysis.QueryPlan;
 import ch.securify.analysis.Status;
 import ch.securify.decompiler.Variable;
 import ch.securify.decompiler.instructions.*;
@@ -37,10 +38,47 @@ public class MissingInputValidation extends AbstractInstructionPattern {
     }
 
     @Override
-    protected boolean applicable(Instruction instr, AbstractDataflow dataflow) {
+    public void declareQueries(QueryPlan plan) {
+        for (Class<? extends Instruction> useClass : Arrays.asList(SStore.class, SLoad.class, MStore.class, MLoad.class, Sha3.class, Call.class)) {
+            plan.mayFollow(JumpI.class, useClass)
+                    .mustPrecede(JumpI.class, useClass);
+        }
+        plan.varMayDepOn()
+                .varMustDepOn();
+    }
+
+    @Override
+    protected boolean isCandidate(Instruction instr) {
         return instr instanceof _VirtualMethodHead;
     }
 
+    /**
+     * A method without arguments from the call data, or without uses of them, is compliant without
+     * asking the dataflow.
+     */
+    @Override
+    public boolean needsDataflow(List<Instruction> methodInstructions) {
+        boolean hasArguments = false, hasUses = false;
+        for (Instruction instr : methodInstructions) {
+            if (isCandidate(instr)) {
+                for (Variable arg : instr.getOutput()) {
+                    hasArguments |= arg.getValueTypes().contains(CallDataLoad.class);
+                }
+            }
+            hasUses |= isUse(instr);
+        }
+        return hasArguments && hasUses;
+    }
+
+    private static boolean isUse(Instruction instr) {
+        return instr instanceof SStore
+                || instr instanceof SLoad
+                || instr instanceof MStore
+                || instr instanceof MLoad
+                || instr instanceof Sha3
+                || instr instanceof Call;
+    }
+
     @Override
     protected boolean isViolation(Instruction instr, List<Instruction> methodInstructions, List<Instruction> contractInstructions, AbstractDataflow dataflow) {
         Variable[] args = instr.getOutput();
@@ -51,28 +89,12 @@ public class MissingInputValidation extends AbstractInstructionPattern {
             }
 
             for (Instruction useInstr : methodInstructions) {
-                if (!(useInstr instanceof SStore
-                        || useInstr instanceof SLoad
-                        || useInstr instanceof MStore
-                        || useInstr instanceof MLoad
-                        || useInstr instanceof Sha3
-                        || useInstr instanceof Call))
+                if (!isUse(useInstr))
                     continue;
 
                 for (Variable var : useInstr.getInput()) {
                     if (dataflow.varMustDepOn(useInstr, var, arg) == Status.SATISFIABLE) {
-                        boolean varMayBeChecked = false;
-                        for (Instruction checkInstr : methodInstructions) {
-                            if (checkInstr instanceof JumpI) {
-                                if (dataflow.mayFollow(checkInstr, useInstr) == Status.SATISFIABLE) {
-                                    Variable cond = ((JumpI) checkInstr).getCondition();
-                                    if (dataflow.varMayDepOn(checkInstr, cond, arg) == Status.SATISFIABLE) {
-                                        varMayBeChecked = true;
-                                        break;
-                                    }
-                                }
-                            }
-                        }
+                        boolean varMayBeChecked = dataflow.getGuards().isMayGuardedBy(useInstr, arg);
                         if (!varMayBeChecked) {
                             return true;
                         }
@@ -93,28 +115,12 @@ public class MissingInputValidation extends AbstractInstructionPattern {
             }
 
             for (Instruction useInstr : methodInstructions) {
-                if (!(useInstr instanceof SStore
-                        || useInstr instanceof SLoad
-                        || useInstr instanceof MStore
-                        || useInstr instanceof MLoad
-                        || useInstr instanceof Sha3
-                        || useInstr instanceof Call))
+                if (!isUse(useInstr))
                     continue;
 
                 for (Variable var : useInstr.getInput()) {
                     if (dataflow.varMayDepOn(useInstr, var, arg) == Status.SATISFIABLE) {
-                        boolean varChecked = false;
-                        for (Instruction checkInstr : methodInstructions) {
-                            if (checkInstr instanceof JumpI) {
-                                if (dataflow.mustPrecede(checkInstr, useInstr) == Status.SATISFIABLE) {
-                                    Variable cond = ((JumpI) checkInstr).getCondition();
-                                    if (dataflow.varMustDepOn(checkInstr, cond, arg) == Status.SATISFIABLE) {
-                                        varChecked = true;
-                                        break;
-                                    }
-                                }
-                            }
-                        }
+                        boolean varChecked = dataflow.getGuards().isMustGuardedBy(useInstr, arg);
                         if (!varChecked)
                             return false;
                     }
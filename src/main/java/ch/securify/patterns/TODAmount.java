@@ -19,11 +19,13 @@
 package ch.securify.patterns;
 
 import java.util.List;
+import java.util.Set;
 
 import ch.securify.analysis.AbstractDataflow;
-import ch.securify.analysis.Dataflow;
-import ch.securify.analysis.Status;
+import ch.securify.analysis.QueryPlan;
+import ch.securify.decompiler.OpcodeHistogram;
 import ch.securify.decompiler.Variable;
+import ch.securify.decompiler.evm.OpCodes;
 import ch.securify.decompiler.instructions.*;
 
 public class TODAmount extends AbstractInstructionPattern {
@@ -38,7 +40,23 @@ public class TODAmount extends AbstractInstructionPattern {
     }
 
     @Override
-    protected boolean applicable(Instruction instr, AbstractDataflow dataflow) {
+    public void declareQueries(QueryPlan plan) {
+        plan.varMustDepOn()
+                .varMayDepOn();
+    }
+
+    @Override
+    public boolean mayMatch(OpcodeHistogram opcodes) {
+        return opcodes.containsAny(OpCodes.CALL);
+    }
+
+    @Override
+    public String getContractContext(List<Instruction> contractInstructions) {
+        return getStoreOffsetContext(contractInstructions);
+    }
+
+    @Override
+    protected boolean isCandidate(Instruction instr) {
         if (!(instr instanceof Call))
             return false;
 
@@ -53,7 +71,8 @@ public class TODAmount extends AbstractInstructionPattern {
     protected boolean isViolation(Instruction instr, List<Instruction> methodInstructions, List<Instruction> contractInstructions, AbstractDataflow dataflow) {
         if (instr instanceof Call) {
             Variable amount = instr.getInput()[2];
-            if (dataflow.varMustDepOn(instr, amount, SLoad.class) == Status.SATISFIABLE) {
+            Set<Object> mustDeps = dataflow.varMustDepOnAll(instr, amount);
+            if (mustDeps.contains(SLoad.class)) {
 
                 for (Instruction sstore : contractInstructions) {
                     if (!(sstore instanceof SStore))
@@ -63,15 +82,15 @@ public class TODAmount extends AbstractInstructionPattern {
                     if (!index.hasConstantValue())
                         continue;
 
-                    Variable storageVar = ((Dataflow)dataflow).mustExplicitDataflow.getStorageVarForIndex(Dataflow.getInt(index.getConstantValue()));
-                    if (dataflow.varMustDepOn(instr, amount, storageVar) == Status.SATISFIABLE)
+                    Variable storageVar = dataflow.getStorageVarForIndex(AbstractDataflow.getInt(index.getConstantValue()));
+                    if (mustDeps.contains(storageVar))
                         return true;
                 }
 
                 // TODO: Check if the SLOAD instruction loads a constant offset and that there is an SSTORE with this offset
                 //return true;
             }
-            if (dataflow.varMustDepOn(instr, amount, Balance.class) == Status.SATISFIABLE) {
+            if (mustDeps.contains(Balance.class)) {
                 // TODO: Assumes balance is not constant across transactions
                 return true;
             }
@@ -88,18 +107,20 @@ public class TODAmount extends AbstractInstructionPattern {
         if (amount.hasConstantValue())
             return true;
 
-        if (dataflow.varMustDepOn(instr, amount, Caller.class) == Status.SATISFIABLE)
+        Set<Object> mustDeps = dataflow.varMustDepOnAll(instr, amount);
+        if (mustDeps.contains(Caller.class))
             return true;
 
-        if (dataflow.varMustDepOn(instr, amount, CallDataLoad.class) == Status.SATISFIABLE)
+        if (mustDeps.contains(CallDataLoad.class))
             return true;
 
-        if (dataflow.varMayDepOn(instr, amount, Balance.class) == Status.SATISFIABLE) {
+        Set<Object> mayDeps = dataflow.varMayDepOnAll(instr, amount);
+        if (mayDeps.contains(Balance.class)) {
             return false;
         }
 
-        if (dataflow.varMayDepOn(instr, amount, SLoad.class) == Status.SATISFIABLE) {
-            if (dataflow.varMayDepOn(instr, amount, AbstractDataflow.UNK_CONST_VAL) == Status.SATISFIABLE) {
+        if (mayDeps.contains(SLoad.class)) {
+            if (mayDeps.contains(AbstractDataflow.UNK_CONST_VAL)) {
                 return false;
             }
 
@@ -111,8 +132,8 @@ public class TODAmount extends AbstractInstructionPattern {
                 if (!index.hasConstantValue())
                     continue;
 
-                Variable storageVar = ((Dataflow)dataflow).mayImplicitDataflow.getStorageVarForIndex(Dataflow.getInt(index.getConstantValue()));
-                if (dataflow.varMayDepOn(instr, amount, storageVar) == Status.SATISFIABLE) {
+                Variable storageVar = dataflow.getStorageVarForIndex(AbstractDataflow.getInt(index.getConstantValue()));
+                if (mayDeps.contains(storageVar)) {
                     return false;
                 }
             }
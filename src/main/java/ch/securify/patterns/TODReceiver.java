@@ -19,12 +19,14 @@
 package ch.securify.patterns;
 
 import ch.securify.analysis.AbstractDataflow;
-import ch.securify.analysis.Dataflow;
-import ch.securify.analysis.Status;
+import ch.securify.analysis.QueryPlan;
+import ch.securify.decompiler.OpcodeHistogram;
 import ch.securify.decompiler.Variable;
+import ch.securify.decompiler.evm.OpCodes;
 import ch.securify.decompiler.instructions.*;
 
 import java.util.List;
+import java.util.Set;
 
 public class TODReceiver extends AbstractInstructionPattern {
 
@@ -38,7 +40,23 @@ public class TODReceiver extends AbstractInstructionPattern {
     }
 
     @Override
-    protected boolean applicable(Instruction instr, AbstractDataflow dataflow) {
+    public void declareQueries(QueryPlan plan) {
+        plan.varMustDepOn()
+                .varMayDepOn();
+    }
+
+    @Override
+    public boolean mayMatch(OpcodeHistogram opcodes) {
+        return opcodes.containsAny(OpCodes.CALL);
+    }
+
+    @Override
+    public String getContractContext(List<Instruction> contractInstructions) {
+        return getStoreOffsetContext(contractInstructions);
+    }
+
+    @Override
+    protected boolean isCandidate(Instruction instr) {
         if (!(instr instanceof Call))
             return false;
 
@@ -54,7 +72,8 @@ public class TODReceiver extends AbstractInstructionPattern {
         assert (call instanceof Call);
 
         Variable receiver = call.getInput()[1];
-        if (dataflow.varMustDepOn(call, receiver, SLoad.class) == Status.SATISFIABLE) {
+        Set<Object> mustDeps = dataflow.varMustDepOnAll(call, receiver);
+        if (mustDeps.contains(SLoad.class)) {
 
             for (Instruction sstore : contractInstructions) {
                 if (!(sstore instanceof SStore))
@@ -64,8 +83,8 @@ public class TODReceiver extends AbstractInstructionPattern {
                 if (!index.hasConstantValue())
                     continue;
 
-                Variable storageVar = ((Dataflow)dataflow).mustExplicitDataflow.getStorageVarForIndex(Dataflow.getInt(index.getConstantValue()));
-                if (dataflow.varMustDepOn(call, receiver, storageVar) == Status.SATISFIABLE)
+                Variable storageVar = dataflow.getStorageVarForIndex(AbstractDataflow.getInt(index.getConstantValue()));
+                if (mustDeps.contains(storageVar))
                     return true;
             }
             // TODO: Check if the SLOAD instruction loads a constant offset and that there is an SSTORE with this offset
@@ -84,17 +103,19 @@ public class TODReceiver extends AbstractInstructionPattern {
         if (receiver.hasConstantValue())
             return true;
 
-        if (dataflow.varMustDepOn(call, receiver, Caller.class) == Status.SATISFIABLE)
+        Set<Object> mustDeps = dataflow.varMustDepOnAll(call, receiver);
+        if (mustDeps.contains(Caller.class))
             return true;
 
-        if (dataflow.varMustDepOn(call, receiver, CallDataLoad.class) == Status.SATISFIABLE)
+        if (mustDeps.contains(CallDataLoad.class))
             return true;
 
-        if (dataflow.varMustDepOn(call, receiver, Address.class) == Status.SATISFIABLE)
+        if (mustDeps.contains(Address.class))
             return true;
 
-        if (dataflow.varMayDepOn(call, receiver, SLoad.class) == Status.SATISFIABLE) {
-            if (dataflow.varMayDepOn(call, receiver, AbstractDataflow.UNK_CONST_VAL) == Status.SATISFIABLE) {
+        Set<Object> mayDeps = dataflow.varMayDepOnAll(call, receiver);
+        if (mayDeps.contains(SLoad.class)) {
+            if (mayDeps.contains(AbstractDataflow.UNK_CONST_VAL)) {
                 return false;
             }
 
@@ -106,8 +127,8 @@ public class TODReceiver extends AbstractInstructionPattern {
                 if (!index.hasConstantValue())
                     continue;
 
-                Variable storageVar = ((Dataflow)dataflow).mayImplicitDataflow.getStorageVarForIndex(Dataflow.getInt(index.getConstantValue()));
-                if (dataflow.varMayDepOn(call, receiver, storageVar) == Status.SATISFIABLE) {
+                Variable storageVar = dataflow.getStorageVarForIndex(AbstractDataflow.getInt(index.getConstantValue()));
+                if (mayDeps.contains(storageVar)) {
                     return false;
                 }
             }
@@ -22,8 +22,11 @@ import java.util.List;
 
 import ch.securify.analysis.AbstractDataflow;
 import ch.securify.analysis.Dataflow;
+import ch.securify.analysis.QueryPlan;
 import ch.securify.analysis.Status;
+import ch.securify.decompiler.OpcodeHistogram;
 import ch.securify.decompiler.Variable;
+import ch.securify.decompiler.evm.OpCodes;
 import ch.securify.decompiler.instructions.*;
 
 public class TODTransfer extends AbstractInstructionPattern {
@@ -38,7 +41,26 @@ public class TODTransfer extends AbstractInstructionPattern {
     }
 
     @Override
-    protected boolean applicable(Instruction instr, AbstractDataflow dataflow) {
+    public void declareQueries(QueryPlan plan) {
+        plan.mustPrecede(JumpI.class, Call.class)
+                .mayFollow(JumpI.class, Call.class)
+                .varMustDepOn()
+                .varMayDepOn()
+                .instrMayDepOn();
+    }
+
+    @Override
+    public boolean mayMatch(OpcodeHistogram opcodes) {
+        return opcodes.containsAny(OpCodes.CALL);
+    }
+
+    @Override
+    public String getContractContext(List<Instruction> contractInstructions) {
+        return getStoreOffsetContext(contractInstructions);
+    }
+
+    @Override
+    protected boolean isCandidate(Instruction instr) {
         if (!(instr instanceof Call))
             return false;
 
@@ -21,7 +21,10 @@ package ch.securify.patterns;
 import java.util.List;
 
 import ch.securify.analysis.AbstractDataflow;
+import ch.securify.analysis.QueryPlan;
 import ch.securify.analysis.Status;
+import ch.securify.decompiler.OpcodeHistogram;
+import ch.securify.decompiler.evm.OpCodes;
 import ch.securify.decompiler.instructions.Call;
 import ch.securify.decompiler.instructions.Instruction;
 import ch.securify.decompiler.instructions.JumpI;
@@ -38,7 +41,20 @@ public class UnhandledException extends AbstractInstructionPattern {
     }
 
     @Override
-    protected boolean applicable(Instruction instr, AbstractDataflow dataflow) {
+    public void declareQueries(QueryPlan plan) {
+        plan.mayFollow(Call.class, JumpI.class)
+                .mustPrecede(Call.class, JumpI.class)
+                .varMustDepOn()
+                .varMayDepOn();
+    }
+
+    @Override
+    public boolean mayMatch(OpcodeHistogram opcodes) {
+        return opcodes.containsAny(OpCodes.CALL);
+    }
+
+    @Override
+    protected boolean isCandidate(Instruction instr) {
         return instr instanceof Call;
     }
 
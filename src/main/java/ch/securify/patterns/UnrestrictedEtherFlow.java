@@ -21,8 +21,11 @@ package ch.securify.patterns;
 import java.util.List;
 
 import ch.securify.analysis.AbstractDataflow;
+import ch.securify.analysis.QueryPlan;
 import ch.securify.analysis.Status;
+import ch.securify.decompiler.OpcodeHistogram;
 import ch.securify.decompiler.Variable;
+import ch.securify.decompiler.evm.OpCodes;
 import ch.securify.decompiler.instructions.*;
 
 public class UnrestrictedEtherFlow extends AbstractInstructionPattern {
@@ -37,7 +40,19 @@ public class UnrestrictedEtherFlow extends AbstractInstructionPattern {
     }
 
     @Override
-    protected boolean applicable(Instruction instr, AbstractDataflow dataflow) {
+    public void declareQueries(QueryPlan plan) {
+        plan.mustPrecede(JumpI.class, Call.class)
+                .varMustDepOn()
+                .instrMayDepOn();
+    }
+
+    @Override
+    public boolean mayMatch(OpcodeHistogram opcodes) {
+        return opcodes.containsAny(OpCodes.CALL);
+    }
+
+    @Override
+    protected boolean isCandidate(Instruction instr) {
         return instr instanceof Call;
     }
 
@@ -82,20 +97,8 @@ public class UnrestrictedEtherFlow extends AbstractInstructionPattern {
             return true;
         }
 
-        for (Instruction jump : methodInstructions) {
-            if (!(jump instanceof JumpI))
-                continue;
-
-            if (dataflow.mustPrecede(jump, call) == Status.SATISFIABLE) {
-                Variable cond = ((JumpI) jump).getCondition();
-                if (dataflow.varMustDepOn(jump, cond, Caller.class) == Status.SATISFIABLE) {
-                    // there must be a jump instruction that preceeds the call and whose condition depends on the caller
-                    return true;
-                }
-            }
-        }
-
-        return false;
+        // there must be a jump instruction that preceeds the call and whose condition depends on the caller
+        return dataflow.getGuards().isMustGuardedBy(call, Caller.class);
     }
 
 }
@@ -23,7 +23,9 @@ import java.util.List;
 import ch.securify.analysis.Status;
 
 import ch.securify.analysis.AbstractDataflow;
-import ch.securify.decompiler.Variable;
+import ch.securify.analysis.QueryPlan;
+import ch.securify.decompiler.OpcodeHistogram;
+import ch.securify.decompiler.evm.OpCodes;
 import ch.securify.decompiler.instructions.Caller;
 import ch.securify.decompiler.instructions.Instruction;
 import ch.securify.decompiler.instructions.JumpI;
@@ -41,7 +43,20 @@ public class UnrestrictedWrite extends AbstractInstructionPattern {
     }
 
     @Override
-    protected boolean applicable(Instruction instr, AbstractDataflow dataflow) {
+    public void declareQueries(QueryPlan plan) {
+        plan.mustPrecede(JumpI.class, SStore.class)
+                .varMustDepOn()
+                .varMayDepOn()
+                .instrMayDepOn();
+    }
+
+    @Override
+    public boolean mayMatch(OpcodeHistogram opcodes) {
+        return opcodes.containsAny(OpCodes.SSTORE);
+    }
+
+    @Override
+    protected boolean isCandidate(Instruction instr) {
         return instr instanceof SStore;
     }
 
@@ -65,19 +80,8 @@ public class UnrestrictedWrite extends AbstractInstructionPattern {
             return true;
         }
 
-        for (Instruction jump : methodInstructions) {
-            if (!(jump instanceof JumpI))
-                continue;
-
-            if (dataflow.mustPrecede(jump, sstore) == Status.SATISFIABLE) {
-                Variable cond = ((JumpI) jump).getCondition();
-                if (dataflow.varMustDepOn(jump, cond, Caller.class) == Status.SATISFIABLE) {
-                    return true;
-                }
-            }
-        }
-
-        return false;
+        // there must be a jump instruction that precedes the store and whose condition depends on the caller
+        return dataflow.getGuards().isMustGuardedBy(sstore, Caller.class);
     }
 
 }
@@ -0,0 +1,200 @@
+/*
+ *  Copyright 2018 Secure, Reliable, and Intelligent Systems Lab, ETH Zurich
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+
+package ch.securify.utils;
+
+import javax.xml.bind.DatatypeConverter;
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Directory of gzipped entries, one file per key. When the files exceed the size limit, the least
+ * recently used ones are deleted.
+ */
+public class FileCache {
+
+	public interface EntryWriter {
+		void write(DataOutputStream out) throws IOException;
+	}
+
+	public interface EntryReader<T> {
+		T read(DataInputStream in) throws IOException;
+	}
+
+
+	private final File directory;
+	private final String suffix;
+	private final long maxBytes;
+	private long bytes;
+
+	private int hits;
+	private int misses;
+
+
+	/**
+	 * @param directory directory of the cache files, created if needed.
+	 * @param suffix file name suffix of the entries, to tell apart caches sharing a directory.
+	 * @param maxBytes size limit of the cache files.
+	 * @throws IOException if the directory cannot be created.
+	 */
+	public FileCache(File directory, String suffix, long maxBytes) throws IOException {
+		if (!directory.isDirectory() && !directory.mkdirs()) {
+			throw new IOException("cannot create cache directory " + directory);
+		}
+		this.directory = directory;
+		this.suffix = suffix;
+		this.maxBytes = maxBytes;
+		for (File file : listFiles()) {
+			bytes += file.length();
+		}
+	}
+
+
+	/**
+	 * Read an entry.
+	 * @param key key of the entry.
+	 * @param reader reads the content of the entry.
+	 * @return the content, or null if there is no entry for the key. Unreadable entries are deleted.
+	 */
+	public synchronized <T> T get(String key, EntryReader<T> reader) {
+		File file = getFile(key);
+		if (file.isFile()) {
+			try (DataInputStream in = new DataInputStream(new BufferedInputStream(new GZIPInputStream(new FileInputStream(file))))) {
+				T content = reader.read(in);
+				file.setLastModified(System.currentTimeMillis());
+				hits++;
+				return content;
+			} catch (IOException e) {
+				bytes -= file.length();
+				file.delete();
+			}
+		}
+		misses++;
+		return null;
+	}
+
+
+	/**
+	 * Write an entry, replacing any previous one, and evict the least recently used entries if the
+	 * cache exceeds its size limit.
+	 * @param key key of the entry.
+	 * @param writer writes the content of the entry.
+	 * @throws IOException
+	 */
+	public synchronized void put(String key, EntryWriter writer) throws IOException {
+		File file = getFile(key);
+		File tmpFile = File.createTempFile("securify_cache_", ".tmp", directory);
+		try {
+			try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new GZIPOutputStream(new FileOutputStream(tmpFile))))) {
+				writer.write(out);
+			}
+			if (file.isFile()) {
+				bytes -= file.length();
+			}
+			Files.move(tmpFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+			bytes += file.length();
+		} finally {
+			tmpFile.delete();
+		}
+		evict();
+	}
+
+
+	public synchronized int getHits() {
+		return hits;
+	}
+
+
+	public synchronized int getMisses() {
+		return misses;
+	}
+
+
+	/**
+	 * @return a new SHA-256 digest, see {@link #toKey(MessageDigest)}.
+	 */
+	public static MessageDigest newDigest() {
+		try {
+			return MessageDigest.getInstance("SHA-256");
+		} catch (NoSuchAlgorithmException e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+
+	/**
+	 * @param digest digest of the data identifying an entry.
+	 * @return key of the entry.
+	 */
+	public static String toKey(MessageDigest digest) {
+		return DatatypeConverter.printHexBinary(digest.digest()).toLowerCase();
+	}
+
+
+	/**
+	 * @param c a class loaded from a class file.
+	 * @return the content of the class file, to identify the code of the class in a key.
+	 * @throws IOException if the class file cannot be found.
+	 */
+	public static byte[] readClassFile(Class<?> c) throws IOException {
+		try (InputStream in = c.getResourceAsStream(c.getSimpleName() + ".class")) {
+			if (in == null)
+				throw new IOException("class file of " + c.getName() + " not found");
+			ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+			byte[] buffer = new byte[8192];
+			for (int n; (n = in.read(buffer)) > 0; ) {
+				bytes.write(buffer, 0, n);
+			}
+			return bytes.toByteArray();
+		}
+	}
+
+
+	private void evict() {
+		if (bytes <= maxBytes)
+			return;
+		File[] files = listFiles();
+		Arrays.sort(files, Comparator.comparingLong(File::lastModified));
+		for (int i = 0; i < files.length && bytes > maxBytes; i++) {
+			long length = files[i].length();
+			if (files[i].delete()) {
+				bytes -= length;
+			}
+		}
+	}
+
+
+	private File[] listFiles() {
+		File[] files = directory.listFiles((dir, name) -> name.endsWith(suffix));
+		return files == null ? new File[0] : files;
+	}
+
+
+	private File getFile(String key) {
+		return new File(directory, key + suffix);
+	}
+
+
+}
@@ -0,0 +1,82 @@
+/*
+ *  Copyright 2018 Secure, Reliable, and Intelligent Systems Lab, ETH Zurich
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+
+package ch.securify.utils;
+
+import java.util.Arrays;
+
+/**
+ * Growable list of fixed-arity tuples of primitive ints, stored in a single flat array.
+ */
+public class IntTupleList {
+
+	private final int arity;
+	private int[] data;
+	private int size;
+
+
+	public IntTupleList(int arity) {
+		this.arity = arity;
+		this.data = new int[16 * arity];
+	}
+
+
+	public int getArity() {
+		return arity;
+	}
+
+
+	public int size() {
+		return size;
+	}
+
+
+	/**
+	 * Append a tuple.
+	 * @param values exactly <code>arity</code> values
+	 */
+	public void add(int... values) {
+		if (values.length != arity)
+			throw new IllegalArgumentException("Expected " + arity + " values, got " + values.length);
+		if ((size + 1) * arity > data.length) {
+			data = Arrays.copyOf(data, data.length * 2);
+		}
+		System.arraycopy(values, 0, data, size * arity, arity);
+		size++;
+	}
+
+
+	/**
+	 * @param tuple position of the tuple
+	 * @param column column index
+	 * @return value of the column
+	 */
+	public int get(int tuple, int column) {
+		return data[tuple * arity + column];
+	}
+
+
+	/**
+	 * @param tuple position of the tuple
+	 * @return a copy of the tuple
+	 */
+	public int[] get(int tuple) {
+		return Arrays.copyOfRange(data, tuple * arity, (tuple + 1) * arity);
+	}
+
+}
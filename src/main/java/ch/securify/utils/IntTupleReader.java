@@ -0,0 +1,165 @@
+/*
+ *  Copyright 2018 Secure, Reliable, and Intelligent Systems Lab, ETH Zurich
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+
+package ch.securify.utils;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.function.Consumer;
+
+/**
+ * Reads lines of tab-separated decimal numbers, the format of Soufflé output relations, see
+ * {@link IntTupleWriter}. The file is memory-mapped and the digits are parsed in place, without
+ * creating strings or objects per tuple.
+ */
+public class IntTupleReader {
+
+	// larger files are mapped in windows that end at a line break
+	private static final long WINDOW_SIZE = 1L << 28;
+
+
+	/**
+	 * @param file file to read.
+	 * @return the number of columns of the first line, or 0 if the file is empty.
+	 * @throws IOException
+	 */
+	public static int getArity(File file) throws IOException {
+		try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+			ByteBuffer buffer = ByteBuffer.allocate(256);
+			int arity = 0;
+			// the first line may be longer than the buffer
+			while (channel.read(buffer) > 0) {
+				for (int i = 0; i < buffer.position(); i++) {
+					if (buffer.get(i) == '\n')
+						return arity + 1;
+					if (buffer.get(i) == '\t') {
+						arity++;
+					}
+				}
+				buffer.clear();
+			}
+			return channel.size() == 0 ? 0 : arity + 1;
+		}
+	}
+
+
+	/**
+	 * Read all tuples of a file.
+	 * @param file file to read.
+	 * @param arity number of columns of every line.
+	 * @param consumer receives each tuple, in an array that is reused for the next one.
+	 * @return the number of tuples.
+	 * @throws IOException if the file cannot be read or a line is not a tuple of the arity.
+	 */
+	public static int read(File file, int arity, Consumer<int[]> consumer) throws IOException {
+		Parser parser = new Parser(file, arity, consumer);
+		try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+			long size = channel.size();
+			long position = 0;
+			while (position < size) {
+				long length = Math.min(WINDOW_SIZE, size - position);
+				ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, position, length);
+				int end = (int) length;
+				if (position + length < size) {
+					while (end > 0 && buffer.get(end - 1) != '\n') {
+						end--;
+					}
+					if (end == 0)
+						throw new IOException("Line too long in " + file);
+				}
+				parser.parse(buffer, end);
+				position += end;
+			}
+		}
+		parser.endLine();
+		return parser.count;
+	}
+
+
+	private static class Parser {
+
+		private final File file;
+		private final int[] tuple;
+		private final Consumer<int[]> consumer;
+		private int count;
+
+		private int column;
+		private long value;
+		private boolean negative;
+		private boolean digits;
+
+		Parser(File file, int arity, Consumer<int[]> consumer) {
+			this.file = file;
+			this.tuple = new int[arity];
+			this.consumer = consumer;
+		}
+
+		void parse(ByteBuffer buffer, int end) throws IOException {
+			for (int i = 0; i < end; i++) {
+				byte b = buffer.get(i);
+				if (b >= '0' && b <= '9') {
+					value = value * 10 + (b - '0');
+					digits = true;
+					if (value > Integer.MAX_VALUE + 1L)
+						throw new IOException("Number out of range in " + file);
+				} else if (b == '\t') {
+					endValue();
+				} else if (b == '\n') {
+					endLine();
+				} else if (b == '-' && !digits && !negative) {
+					negative = true;
+				} else if (b != '\r') {
+					throw new IOException("Unexpected character '" + (char) b + "' in " + file);
+				}
+			}
+		}
+
+		private void endValue() throws IOException {
+			if (!digits)
+				throw new IOException("Missing number in " + file);
+			if (column == tuple.length)
+				throw new IOException("Unexpected arity " + (column + 1) + " in " + file);
+			long v = negative ? -value : value;
+			if (v > Integer.MAX_VALUE)
+				throw new IOException("Number out of range in " + file);
+			tuple[column++] = (int) v;
+			value = 0;
+			negative = false;
+			digits = false;
+		}
+
+		/**
+		 * End the current line, if it is not empty.
+		 */
+		void endLine() throws IOException {
+			if (column == 0 && !digits && !negative)
+				return;
+			endValue();
+			if (column != tuple.length)
+				throw new IOException("Unexpected arity " + column + " in " + file);
+			consumer.accept(tuple);
+			count++;
+			column = 0;
+		}
+	}
+
+
+}
@@ -0,0 +1,106 @@
+/*
+ *  Copyright 2018 Secure, Reliable, and Intelligent Systems Lab, ETH Zurich
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+
+package ch.securify.utils;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Writes tuples of ints as lines of tab-separated decimal numbers, the format of Soufflé fact files.
+ * The digits are encoded straight into a buffer that is reused for all files, so that writing the
+ * facts allocates no memory proportional to their size.
+ */
+public class IntTupleWriter {
+
+	private static final int BUFFER_SIZE = 1 << 16;
+
+	// sign, 10 digits and separator
+	private static final int MAX_VALUE_LENGTH = 12;
+
+	private final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+	private final byte[] digits = new byte[MAX_VALUE_LENGTH];
+
+
+	/**
+	 * Write tuples to a file, replacing its content.
+	 * @param file file to write to.
+	 * @param tuplesList tuples to write, in order.
+	 * @throws IOException
+	 */
+	public void write(File file, Iterable<IntTupleList> tuplesList) throws IOException {
+		try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE,
+				StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+			write(channel, tuplesList);
+		}
+	}
+
+
+	/**
+	 * Write tuples to a channel, e.g. a pipe read by another process.
+	 * @param channel channel to write to, left open.
+	 * @param tuplesList tuples to write, in order.
+	 * @throws IOException
+	 */
+	public void write(WritableByteChannel channel, Iterable<IntTupleList> tuplesList) throws IOException {
+		buffer.clear();
+		for (IntTupleList tuples : tuplesList) {
+			int arity = tuples.getArity();
+			for (int t = 0; t < tuples.size(); t++) {
+				for (int i = 0; i < arity; i++) {
+					if (buffer.remaining() < MAX_VALUE_LENGTH) {
+						flush(channel);
+					}
+					putInt(tuples.get(t, i));
+					buffer.put(i + 1 < arity ? (byte) '\t' : (byte) '\n');
+				}
+			}
+		}
+		flush(channel);
+	}
+
+
+	private void putInt(int value) {
+		long v = value;
+		if (v < 0) {
+			buffer.put((byte) '-');
+			v = -v;
+		}
+		int start = digits.length;
+		do {
+			digits[--start] = (byte) ('0' + v % 10);
+			v /= 10;
+		} while (v != 0);
+		buffer.put(digits, start, digits.length - start);
+	}
+
+
+	private void flush(WritableByteChannel channel) throws IOException {
+		buffer.flip();
+		while (buffer.hasRemaining()) {
+			channel.write(buffer);
+		}
+		buffer.clear();
+	}
+
+
+}
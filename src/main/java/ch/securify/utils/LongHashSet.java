@@ -0,0 +1,126 @@
+/*
+ *  Copyright 2018 Secure, Reliable, and Intelligent Systems Lab, ETH Zurich
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+
+package ch.securify.utils;
+
+import java.util.Arrays;
+
+/**
+ * Hash set of primitive longs using open addressing with linear probing.
+ */
+public class LongHashSet {
+
+	private static final long FREE = Long.MIN_VALUE;
+
+	private long[] table;
+	private int mask;
+	private int size;
+	private boolean containsFree;
+
+
+	public LongHashSet() {
+		this(16);
+	}
+
+
+	/**
+	 * @param expectedSize number of elements the set should hold without rehashing.
+	 */
+	public LongHashSet(int expectedSize) {
+		allocate(tableSizeFor(expectedSize));
+	}
+
+
+	/**
+	 * Add a value to the set.
+	 * @param value
+	 * @return true if the value was not yet contained in the set.
+	 */
+	public boolean add(long value) {
+		if (value == FREE) {
+			if (containsFree)
+				return false;
+			containsFree = true;
+			size++;
+			return true;
+		}
+		int pos = HashUtil.mix(value) & mask;
+		while (table[pos] != FREE) {
+			if (table[pos] == value)
+				return false;
+			pos = (pos + 1) & mask;
+		}
+		table[pos] = value;
+		if (++size > (mask + 1) >> 1) {
+			rehash(table.length << 1);
+		}
+		return true;
+	}
+
+
+	public boolean contains(long value) {
+		if (value == FREE)
+			return containsFree;
+		int pos = HashUtil.mix(value) & mask;
+		long entry;
+		while ((entry = table[pos]) != FREE) {
+			if (entry == value)
+				return true;
+			pos = (pos + 1) & mask;
+		}
+		return false;
+	}
+
+
+	public int size() {
+		return size;
+	}
+
+
+	private void rehash(int newCapacity) {
+		long[] oldTable = table;
+		allocate(newCapacity);
+		for (long value : oldTable) {
+			if (value != FREE) {
+				int pos = HashUtil.mix(value) & mask;
+				while (table[pos] != FREE) {
+					pos = (pos + 1) & mask;
+				}
+				table[pos] = value;
+			}
+		}
+	}
+
+
+	private void allocate(int capacity) {
+		table = new long[capacity];
+		Arrays.fill(table, FREE);
+		mask = capacity - 1;
+	}
+
+
+	static int tableSizeFor(int expectedSize) {
+		int capacity = Integer.highestOneBit(Math.max(expectedSize, 4) * 2 - 1) << 1;
+		if (capacity <= 0) {
+			throw new IllegalArgumentException("Set too large: " + expectedSize);
+		}
+		return capacity;
+	}
+
+
+}
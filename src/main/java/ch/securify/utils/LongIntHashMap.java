@@ -0,0 +1,151 @@
+/*
+ *  Copyright 2018 Secure, Reliable, and Intelligent Systems Lab, ETH Zurich
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+
+package ch.securify.utils;
+
+import java.util.Arrays;
+
+/**
+ * Hash map from primitive long keys to primitive int values using open addressing with linear probing.
+ */
+public class LongIntHashMap {
+
+	private static final long FREE = Long.MIN_VALUE;
+
+	private final int missingValue;
+
+	private long[] keys;
+	private int[] values;
+	private int mask;
+	private int size;
+	private boolean containsFree;
+	private int freeValue;
+
+
+	/**
+	 * @param missingValue value returned by {@link #get(long)} for absent keys.
+	 */
+	public LongIntHashMap(int missingValue) {
+		this(16, missingValue);
+	}
+
+
+	/**
+	 * @param expectedSize number of entries the map should hold without rehashing.
+	 * @param missingValue value returned by {@link #get(long)} for absent keys.
+	 */
+	public LongIntHashMap(int expectedSize, int missingValue) {
+		this.missingValue = missingValue;
+		allocate(LongHashSet.tableSizeFor(expectedSize));
+	}
+
+
+	public int get(long key) {
+		if (key == FREE)
+			return containsFree ? freeValue : missingValue;
+		int pos = HashUtil.mix(key) & mask;
+		long entry;
+		while ((entry = keys[pos]) != FREE) {
+			if (entry == key)
+				return values[pos];
+			pos = (pos + 1) & mask;
+		}
+		return missingValue;
+	}
+
+
+	/**
+	 * Associate a value with a key, replacing any previous value.
+	 * @param key
+	 * @param value
+	 * @return the previous value, or the missing value if there was none.
+	 */
+	public int put(long key, int value) {
+		if (key == FREE) {
+			int previous = containsFree ? freeValue : missingValue;
+			if (!containsFree) {
+				containsFree = true;
+				size++;
+			}
+			freeValue = value;
+			return previous;
+		}
+		int pos = HashUtil.mix(key) & mask;
+		long entry;
+		while ((entry = keys[pos]) != FREE) {
+			if (entry == key) {
+				int previous = values[pos];
+				values[pos] = value;
+				return previous;
+			}
+			pos = (pos + 1) & mask;
+		}
+		keys[pos] = key;
+		values[pos] = value;
+		if (++size > (mask + 1) >> 1) {
+			rehash(keys.length << 1);
+		}
+		return missingValue;
+	}
+
+
+	public boolean containsKey(long key) {
+		if (key == FREE)
+			return containsFree;
+		int pos = HashUtil.mix(key) & mask;
+		long entry;
+		while ((entry = keys[pos]) != FREE) {
+			if (entry == key)
+				return true;
+			pos = (pos + 1) & mask;
+		}
+		return false;
+	}
+
+
+	public int size() {
+		return size;
+	}
+
+
+	private void rehash(int newCapacity) {
+		long[] oldKeys = keys;
+		int[] oldValues = values;
+		allocate(newCapacity);
+		for (int i = 0; i < oldKeys.length; i++) {
+			if (oldKeys[i] != FREE) {
+				int pos = HashUtil.mix(oldKeys[i]) & mask;
+				while (keys[pos] != FREE) {
+					pos = (pos + 1) & mask;
+				}
+				keys[pos] = oldKeys[i];
+				values[pos] = oldValues[i];
+			}
+		}
+	}
+
+
+	private void allocate(int capacity) {
+		keys = new long[capacity];
+		values = new int[capacity];
+		Arrays.fill(keys, FREE);
+		mask = capacity - 1;
+	}
+
+
+}
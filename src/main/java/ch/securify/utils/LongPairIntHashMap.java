@@ -0,0 +1,134 @@
+/*
+ *  Copyright 2018 Secure, Reliable, and Intelligent Systems Lab, ETH Zurich
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+
+package ch.securify.utils;
+
+/**
+ * Hash map from pairs of primitive longs (i.e. 128 bit keys) to primitive int values using open
+ * addressing with linear probing.
+ */
+public class LongPairIntHashMap {
+
+	private final int missingValue;
+
+	private long[] highKeys;
+	private long[] lowKeys;
+	private int[] values;
+	private boolean[] used;
+	private int mask;
+	private int size;
+
+
+	/**
+	 * @param missingValue value returned by {@link #get(long, long)} for absent keys.
+	 */
+	public LongPairIntHashMap(int missingValue) {
+		this(16, missingValue);
+	}
+
+
+	/**
+	 * @param expectedSize number of entries the map should hold without rehashing.
+	 * @param missingValue value returned by {@link #get(long, long)} for absent keys.
+	 */
+	public LongPairIntHashMap(int expectedSize, int missingValue) {
+		this.missingValue = missingValue;
+		allocate(LongHashSet.tableSizeFor(expectedSize));
+	}
+
+
+	public int get(long high, long low) {
+		int pos = hash(high, low) & mask;
+		while (used[pos]) {
+			if (highKeys[pos] == high && lowKeys[pos] == low)
+				return values[pos];
+			pos = (pos + 1) & mask;
+		}
+		return missingValue;
+	}
+
+
+	/**
+	 * Associate a value with a key, replacing any previous value.
+	 * @param high
+	 * @param low
+	 * @param value
+	 * @return the previous value, or the missing value if there was none.
+	 */
+	public int put(long high, long low, int value) {
+		int pos = hash(high, low) & mask;
+		while (used[pos]) {
+			if (highKeys[pos] == high && lowKeys[pos] == low) {
+				int previous = values[pos];
+				values[pos] = value;
+				return previous;
+			}
+			pos = (pos + 1) & mask;
+		}
+		used[pos] = true;
+		highKeys[pos] = high;
+		lowKeys[pos] = low;
+		values[pos] = value;
+		if (++size > (mask + 1) >> 1) {
+			rehash(used.length << 1);
+		}
+		return missingValue;
+	}
+
+
+	public int size() {
+		return size;
+	}
+
+
+	private static int hash(long high, long low) {
+		return HashUtil.mix(high * 0x9e3779b97f4a7c15L + low);
+	}
+
+
+	private void rehash(int newCapacity) {
+		long[] oldHighKeys = highKeys;
+		long[] oldLowKeys = lowKeys;
+		int[] oldValues = values;
+		boolean[] oldUsed = used;
+		allocate(newCapacity);
+		for (int i = 0; i < oldUsed.length; i++) {
+			if (oldUsed[i]) {
+				int pos = hash(oldHighKeys[i], oldLowKeys[i]) & mask;
+				while (used[pos]) {
+					pos = (pos + 1) & mask;
+				}
+				used[pos] = true;
+				highKeys[pos] = oldHighKeys[i];
+				lowKeys[pos] = oldLowKeys[i];
+				values[pos] = oldValues[i];
+			}
+		}
+	}
+
+
+	private void allocate(int capacity) {
+		highKeys = new long[capacity];
+		lowKeys = new long[capacity];
+		values = new int[capacity];
+		used = new boolean[capacity];
+		mask = capacity - 1;
+	}
+
+
+}
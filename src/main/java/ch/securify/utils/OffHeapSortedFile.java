@@ -0,0 +1,295 @@
+/*
+ *  Copyright 2018 Secure, Reliable, and Intelligent Systems Lab, ETH Zurich
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+
+package ch.securify.utils;
+
+import java.io.*;
+import java.nio.LongBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * Immutable sorted set of longs or pairs of longs in a memory-mapped file, for sets too large for the heap.
+ * The heap only holds a sparse index with the first entry of each block of {@link #BLOCK_SIZE} entries;
+ * a lookup searches the index, then a single block of the file.
+ *
+ * The set is built by a {@link Builder} from sorted runs that are merged into the file.
+ */
+public class OffHeapSortedFile implements SortedLongs, SortedLongPairs, Closeable {
+
+	static final int BLOCK_SIZE = 1024;
+
+	// entries per mapping, as a single mapping is limited to 2 GB
+	private static final int SEGMENT_BITS = 26;
+	private static final int SEGMENT_MASK = (1 << SEGMENT_BITS) - 1;
+
+	private final File file;
+	// 1 for longs, 2 for pairs of longs, stored high part first
+	private final int width;
+	private final int size;
+	private final LongBuffer[] segments;
+	private final long[] indexHigh;
+	private final long[] indexLow;
+
+
+	private OffHeapSortedFile(File file, int width, int size, long[] indexHigh, long[] indexLow) throws IOException {
+		this.file = file;
+		this.width = width;
+		this.size = size;
+		this.indexHigh = indexHigh;
+		this.indexLow = indexLow;
+		segments = new LongBuffer[(size + SEGMENT_MASK) >>> SEGMENT_BITS];
+		try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+			for (int i = 0; i < segments.length; i++) {
+				long from = (long) i << SEGMENT_BITS;
+				long entries = Math.min(1L << SEGMENT_BITS, size - from);
+				segments[i] = channel.map(FileChannel.MapMode.READ_ONLY, from * width * 8, entries * width * 8).asLongBuffer();
+			}
+		}
+	}
+
+
+	@Override
+	public int size() {
+		return size;
+	}
+
+
+	@Override
+	public boolean contains(long value) {
+		return contains(0, value);
+	}
+
+
+	@Override
+	public boolean contains(long high, long low) {
+		int pos = lowerBound(high, low);
+		return pos < size && getHigh(pos) == high && getLow(pos) == low;
+	}
+
+
+	@Override
+	public int lowerBound(long value) {
+		return lowerBound(0, value);
+	}
+
+
+	@Override
+	public int lowerBound(long high, long low) {
+		// last block starting at or before the value
+		int from = 0, to = indexLow.length;
+		while (from < to) {
+			int mid = (from + to) >>> 1;
+			if (SortedLongPairSet.compare(indexHigh[mid], indexLow[mid], high, low) <= 0)
+				from = mid + 1;
+			else
+				to = mid;
+		}
+		if (from == 0)
+			return 0;
+		from = (from - 1) * BLOCK_SIZE;
+		to = Math.min(from + BLOCK_SIZE, size);
+		while (from < to) {
+			int mid = (from + to) >>> 1;
+			if (SortedLongPairSet.compare(getHigh(mid), getLow(mid), high, low) < 0)
+				from = mid + 1;
+			else
+				to = mid;
+		}
+		return from;
+	}
+
+
+	@Override
+	public long get(int index) {
+		return getLow(index);
+	}
+
+
+	@Override
+	public long getHigh(int index) {
+		return width == 1 ? 0 : segments[index >>> SEGMENT_BITS].get((index & SEGMENT_MASK) * 2);
+	}
+
+
+	@Override
+	public long getLow(int index) {
+		return segments[index >>> SEGMENT_BITS].get((index & SEGMENT_MASK) * width + width - 1);
+	}
+
+
+	/**
+	 * Delete the file. The mappings stay valid until they are garbage collected.
+	 */
+	@Override
+	public void close() {
+		file.delete();
+	}
+
+
+	/**
+	 * Collects sorted runs in temporary files and merges them into an {@link OffHeapSortedFile}.
+	 */
+	public static class Builder {
+
+		private final int width;
+		private final List<File> runs = new ArrayList<>();
+
+
+		/**
+		 * @param width 1 for a set of longs, 2 for a set of pairs of longs.
+		 */
+		public Builder(int width) {
+			if (width != 1 && width != 2)
+				throw new IllegalArgumentException("width must be 1 or 2");
+			this.width = width;
+		}
+
+
+		/**
+		 * Sort the first <code>size</code> entries of the arrays in place and write them as a run. The arrays
+		 * can be reused afterwards.
+		 * @param high high parts of the entries, ignored (and may be null) for a set of longs
+		 * @param low entries, or their low parts
+		 * @param size number of entries
+		 */
+		public void addRun(long[] high, long[] low, int size) throws IOException {
+			if (width == 1) {
+				Arrays.sort(low, 0, size);
+			} else {
+				SortedLongPairSet.sort(high, low, 0, size - 1);
+			}
+			File run = File.createTempFile("securify-run-", ".bin");
+			runs.add(run);
+			try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(run), 1 << 16))) {
+				for (int i = 0; i < size; i++) {
+					if (i > 0 && low[i] == low[i - 1] && (width == 1 || high[i] == high[i - 1]))
+						continue;
+					if (width == 2) {
+						out.writeLong(high[i]);
+					}
+					out.writeLong(low[i]);
+				}
+			}
+		}
+
+
+		/**
+		 * Delete the runs without building the set.
+		 */
+		public void close() {
+			runs.forEach(File::delete);
+			runs.clear();
+		}
+
+
+		/**
+		 * Merge the runs into the set, removing duplicates, and delete them.
+		 */
+		public OffHeapSortedFile build() throws IOException {
+			File file = File.createTempFile("securify-relation-", ".bin");
+			PriorityQueue<RunReader> queue = new PriorityQueue<>((r1, r2) -> SortedLongPairSet.compare(r1.high, r1.low, r2.high, r2.low));
+			long count = 0;
+			long[] indexHigh = new long[16], indexLow = new long[16];
+			try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file), 1 << 16))) {
+				for (File run : runs) {
+					RunReader reader = new RunReader(run, width);
+					if (reader.next()) {
+						queue.add(reader);
+					}
+				}
+				long lastHigh = 0, lastLow = 0;
+				while (!queue.isEmpty()) {
+					RunReader reader = queue.poll();
+					if (count == 0 || reader.high != lastHigh || reader.low != lastLow) {
+						if (count == Integer.MAX_VALUE)
+							throw new IOException("too many entries");
+						if (count % BLOCK_SIZE == 0) {
+							int block = (int) (count / BLOCK_SIZE);
+							if (block == indexLow.length) {
+								indexHigh = Arrays.copyOf(indexHigh, block * 2);
+								indexLow = Arrays.copyOf(indexLow, block * 2);
+							}
+							indexHigh[block] = reader.high;
+							indexLow[block] = reader.low;
+						}
+						if (width == 2) {
+							out.writeLong(reader.high);
+						}
+						out.writeLong(reader.low);
+						lastHigh = reader.high;
+						lastLow = reader.low;
+						count++;
+					}
+					if (reader.next()) {
+						queue.add(reader);
+					}
+				}
+			} catch (IOException e) {
+				file.delete();
+				throw e;
+			} finally {
+				for (RunReader reader : queue) {
+					reader.close();
+				}
+				runs.forEach(File::delete);
+				runs.clear();
+			}
+			int blocks = (int) ((count + BLOCK_SIZE - 1) / BLOCK_SIZE);
+			return new OffHeapSortedFile(file, width, (int) count, Arrays.copyOf(indexHigh, blocks), Arrays.copyOf(indexLow, blocks));
+		}
+	}
+
+
+	private static class RunReader {
+
+		private final DataInputStream in;
+		private final int width;
+		long high;
+		long low;
+
+		RunReader(File run, int width) throws IOException {
+			this.in = new DataInputStream(new BufferedInputStream(new FileInputStream(run), 1 << 16));
+			this.width = width;
+		}
+
+		/**
+		 * Read the next entry, or close the run at its end.
+		 */
+		boolean next() throws IOException {
+			try {
+				high = width == 2 ? in.readLong() : 0;
+				low = in.readLong();
+				return true;
+			} catch (EOFException e) {
+				close();
+				return false;
+			}
+		}
+
+		void close() throws IOException {
+			in.close();
+		}
+	}
+
+
+}
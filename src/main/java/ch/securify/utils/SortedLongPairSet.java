@@ -0,0 +1,148 @@
+/*
+ *  Copyright 2018 Secure, Reliable, and Intelligent Systems Lab, ETH Zurich
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+
+package ch.securify.utils;
+
+import java.util.Arrays;
+
+/**
+ * Immutable set of pairs of primitive longs (i.e. 128 bit values), stored as two parallel arrays
+ * sorted by (high, low) and queried by binary search.
+ */
+public class SortedLongPairSet implements SortedLongPairs {
+
+	private final long[] high;
+	private final long[] low;
+
+
+	/**
+	 * Create a set from the first <code>size</code> entries of the given arrays, which are sorted in place.
+	 * @param high
+	 * @param low
+	 * @param size
+	 */
+	public SortedLongPairSet(long[] high, long[] low, int size) {
+		sort(high, low, 0, size - 1);
+		int unique = 0;
+		for (int i = 0; i < size; i++) {
+			if (unique == 0 || high[unique - 1] != high[i] || low[unique - 1] != low[i]) {
+				high[unique] = high[i];
+				low[unique] = low[i];
+				unique++;
+			}
+		}
+		this.high = Arrays.copyOf(high, unique);
+		this.low = Arrays.copyOf(low, unique);
+	}
+
+
+	@Override
+	public boolean contains(long high, long low) {
+		int from = 0, to = this.high.length - 1;
+		while (from <= to) {
+			int mid = (from + to) >>> 1;
+			int cmp = compare(this.high[mid], this.low[mid], high, low);
+			if (cmp < 0)
+				from = mid + 1;
+			else if (cmp > 0)
+				to = mid - 1;
+			else
+				return true;
+		}
+		return false;
+	}
+
+
+	@Override
+	public int size() {
+		return high.length;
+	}
+
+
+	/**
+	 * @param high
+	 * @param low
+	 * @return position of the first entry that is not less than (high, low), or {@link #size()} if there is none.
+	 */
+	@Override
+	public int lowerBound(long high, long low) {
+		int from = 0, to = this.high.length;
+		while (from < to) {
+			int mid = (from + to) >>> 1;
+			if (compare(this.high[mid], this.low[mid], high, low) < 0)
+				from = mid + 1;
+			else
+				to = mid;
+		}
+		return from;
+	}
+
+
+	/**
+	 * @param index position in ascending order
+	 * @return the high part of the entry at the position
+	 */
+	@Override
+	public long getHigh(int index) {
+		return high[index];
+	}
+
+
+	/**
+	 * @param index position in ascending order
+	 * @return the low part of the entry at the position
+	 */
+	@Override
+	public long getLow(int index) {
+		return low[index];
+	}
+
+
+	static int compare(long high1, long low1, long high2, long low2) {
+		int cmp = Long.compare(high1, high2);
+		return cmp != 0 ? cmp : Long.compare(low1, low2);
+	}
+
+
+	static void sort(long[] high, long[] low, int from, int to) {
+		while (from < to) {
+			int mid = (from + to) >>> 1;
+			long pivotHigh = high[mid], pivotLow = low[mid];
+			int i = from, j = to;
+			while (i <= j) {
+				while (compare(high[i], low[i], pivotHigh, pivotLow) < 0) i++;
+				while (compare(high[j], low[j], pivotHigh, pivotLow) > 0) j--;
+				if (i <= j) {
+					long tmp = high[i]; high[i] = high[j]; high[j] = tmp;
+					tmp = low[i]; low[i] = low[j]; low[j] = tmp;
+					i++;
+					j--;
+				}
+			}
+			// recurse into the smaller part to bound the stack depth
+			if (j - from < to - i) {
+				sort(high, low, from, j);
+				from = i;
+			} else {
+				sort(high, low, i, to);
+				to = j;
+			}
+		}
+	}
+
+}
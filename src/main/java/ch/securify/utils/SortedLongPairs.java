@@ -0,0 +1,50 @@
+/*
+ *  Copyright 2018 Secure, Reliable, and Intelligent Systems Lab, ETH Zurich
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+
+package ch.securify.utils;
+
+/**
+ * Immutable set of pairs of primitive longs sorted by (high, low), with positional access, see
+ * {@link SortedLongPairSet} and {@link OffHeapSortedFile}.
+ */
+public interface SortedLongPairs {
+
+	boolean contains(long high, long low);
+
+	int size();
+
+	/**
+	 * @param high
+	 * @param low
+	 * @return position of the first entry that is not less than (high, low), or {@link #size()} if there is none.
+	 */
+	int lowerBound(long high, long low);
+
+	/**
+	 * @param index position in ascending order
+	 * @return the high part of the entry at the position
+	 */
+	long getHigh(int index);
+
+	/**
+	 * @param index position in ascending order
+	 * @return the low part of the entry at the position
+	 */
+	long getLow(int index);
+
+}
@@ -0,0 +1,83 @@
+/*
+ *  Copyright 2018 Secure, Reliable, and Intelligent Systems Lab, ETH Zurich
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+
+package ch.securify.utils;
+
+import java.util.Arrays;
+
+/**
+ * Immutable set of primitive longs, stored as a sorted array and queried by binary search.
+ */
+public class SortedLongSet implements SortedLongs {
+
+	public static final SortedLongSet EMPTY = new SortedLongSet(new long[0], 0);
+
+	private final long[] values;
+
+
+	/**
+	 * Create a set from the first <code>size</code> entries of the given array. The array is sorted in place
+	 * and is not copied if it holds no duplicates and no unused tail.
+	 * @param values
+	 * @param size
+	 */
+	public SortedLongSet(long[] values, int size) {
+		Arrays.sort(values, 0, size);
+		int unique = 0;
+		for (int i = 0; i < size; i++) {
+			if (unique == 0 || values[unique - 1] != values[i]) {
+				values[unique++] = values[i];
+			}
+		}
+		this.values = unique == values.length ? values : Arrays.copyOf(values, unique);
+	}
+
+
+	@Override
+	public boolean contains(long value) {
+		return Arrays.binarySearch(values, value) >= 0;
+	}
+
+
+	@Override
+	public int size() {
+		return values.length;
+	}
+
+
+	/**
+	 * @param value
+	 * @return position of the first entry that is not less than the value, or {@link #size()} if there is none.
+	 */
+	@Override
+	public int lowerBound(long value) {
+		int pos = Arrays.binarySearch(values, value);
+		return pos >= 0 ? pos : -pos - 1;
+	}
+
+
+	/**
+	 * @param index position in ascending order
+	 * @return the entry at the position
+	 */
+	@Override
+	public long get(int index) {
+		return values[index];
+	}
+
+}
@@ -0,0 +1,43 @@
+/*
+ *  Copyright 2018 Secure, Reliable, and Intelligent Systems Lab, ETH Zurich
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+
+package ch.securify.utils;
+
+/**
+ * Immutable sorted set of primitive longs with positional access, see {@link SortedLongSet} and
+ * {@link OffHeapSortedFile}.
+ */
+public interface SortedLongs {
+
+	boolean contains(long value);
+
+	int size();
+
+	/**
+	 * @param value
+	 * @return position of the first entry that is not less than the value, or {@link #size()} if there is none.
+	 */
+	int lowerBound(long value);
+
+	/**
+	 * @param index position in ascending order
+	 * @return the entry at the position
+	 */
+	long get(int index);
+
+}
@@ -0,0 +1,68 @@
+/*
+ *  Copyright 2018 Secure, Reliable, and Intelligent Systems Lab, ETH Zurich
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+package ch.securify;
+
+import ch.securify.analysis.DataflowFactory;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import org.junit.After;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.Reader;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class MainTest {
+
+    @After
+    public void resetDataflow() {
+        DataflowFactory.setDataflowInstanceClass(null);
+        DataflowFactory.setQueryPlan(null);
+    }
+
+    @Test
+    public void viewOnlyBodiesAreCheckedWithoutTheirDataflow() throws IOException, InterruptedException {
+        // neither deposit() nor transfer(), which only reads msg.value, has an instruction the pattern queries
+        File livestatusfile = File.createTempFile("securify_livestatus_", ".json");
+        livestatusfile.deleteOnExit();
+        Main.main(new String[]{"-fh", "src/test/resources/solidity/LockedEther.bin.hex",
+                "--livestatusfile", livestatusfile.getPath(), "--dataflow", "inmemory",
+                "-p", "MissingInputValidation", "-q"});
+
+        JsonObject result;
+        try (Reader reader = new FileReader(livestatusfile)) {
+            result = new JsonParser().parse(reader).getAsJsonObject();
+        }
+        assertTrue(result.get("finished").getAsBoolean());
+        assertEquals(0, result.getAsJsonObject("securifyErrors").getAsJsonArray("errors").size());
+        assertEquals(2, result.get("methodBodies").getAsInt());
+        assertEquals(2, result.get("skippedMethodBodies").getAsInt());
+
+        // methods without arguments are still reported as compliant
+        JsonObject status = result.getAsJsonObject("patternResults").getAsJsonObject("MissingInputValidation");
+        assertTrue(status.get("completed").getAsBoolean());
+        assertFalse(status.has("error"));
+        assertEquals(0, status.getAsJsonArray("violations").size());
+        assertTrue(status.getAsJsonArray("safe").size() > 0);
+    }
+}
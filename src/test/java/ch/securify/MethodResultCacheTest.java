@@ -0,0 +1,171 @@
+/*
+ *  Copyright 2018 Secure, Reliable, and Intelligent Systems Lab, ETH Zurich
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+package ch.securify;
+
+import ch.securify.analysis.DataflowFactory;
+import ch.securify.analysis.MayImplicitDataflow;
+import ch.securify.analysis.MustExplicitDataflow;
+import ch.securify.decompiler.instructions.Instruction;
+import ch.securify.patterns.HelperTestInput;
+import ch.securify.patterns.MissingInputValidation;
+import ch.securify.patterns.UnrestrictedWrite;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+import static org.junit.Assert.*;
+import static org.junit.Assume.assumeTrue;
+
+public class MethodResultCacheTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @After
+    public void resetDataflow() {
+        DataflowFactory.setDataflowInstanceClass(null);
+        DataflowFactory.setQueryPlan(null);
+    }
+
+    private static List<List<Instruction>> decompileMethods(String contract) throws IOException {
+        return Main.splitInstructionsIntoMethods(HelperTestInput.decompile(contract));
+    }
+
+    @Test
+    public void resultsAreMappedOntoTheSameBodyInAnotherContract() throws IOException {
+        MethodResultCache cache = new MethodResultCache(folder.newFolder(), 1 << 20, "inmemory");
+        List<Instruction> body = decompileMethods("TODAmount").get(0);
+        // the same code decompiled again, as in another contract
+        List<Instruction> other = null;
+        for (List<Instruction> otherBody : decompileMethods("TODAmount")) {
+            if (otherBody.get(0).toString().equals(body.get(0).toString()))
+                other = otherBody;
+        }
+        assertArrayEquals(cache.hashBody(body), cache.hashBody(other));
+
+        String key = cache.getKey(cache.hashBody(body), new UnrestrictedWrite(), body);
+        assertNull(cache.get(key));
+        cache.put(key, new MethodResultCache.Result(body, Collections.singletonList(body.get(3)), Collections.emptyList(),
+                Arrays.asList(body.get(1), body.get(2)), Collections.emptyList()));
+
+        MethodResultCache.Result result = cache.get(cache.getKey(cache.hashBody(other), new UnrestrictedWrite(), other));
+        assertEquals(Collections.singletonList(other.get(3)), result.getViolations(other));
+        assertEquals(Collections.emptyList(), result.getWarnings(other));
+        assertEquals(Arrays.asList(other.get(1), other.get(2)), result.getSafe(other));
+        assertEquals(Collections.emptyList(), result.getConflicts(other));
+        assertEquals(1, cache.getHits());
+        assertEquals(1, cache.getMisses());
+    }
+
+    @Test
+    public void keyChangesWithThePatternOrTheDataflow() throws IOException {
+        File directory = folder.newFolder();
+        List<Instruction> body = decompileMethods("TODAmount").get(0);
+        MethodResultCache cache = new MethodResultCache(directory, 1 << 20, "inmemory");
+        byte[] bodyHash = cache.hashBody(body);
+        String key = cache.getKey(bodyHash, new UnrestrictedWrite(), body);
+
+        assertEquals(key, new MethodResultCache(directory, 1 << 20, "InMemory").getKey(bodyHash, new UnrestrictedWrite(), body));
+        assertNotEquals(key, cache.getKey(bodyHash, new MissingInputValidation(), body));
+        assertNotEquals(key, cache.getKey(cache.hashBody(body.subList(1, body.size())), new UnrestrictedWrite(), body));
+    }
+
+    @Test
+    public void keyChangesWithTheSouffleBinaries() throws IOException {
+        // the binaries of the default backend are hashed, so they must have been built
+        assumeTrue(new File(MustExplicitDataflow.SOUFFLE_PROGRAM).isFile() && new File(MayImplicitDataflow.SOUFFLE_PROGRAM).isFile());
+        File directory = folder.newFolder();
+        List<Instruction> body = decompileMethods("TODAmount").get(0);
+        byte[] bodyHash = new MethodResultCache(directory, 1 << 20, "inmemory").hashBody(body);
+
+        assertNotEquals(new MethodResultCache(directory, 1 << 20, "inmemory").getKey(bodyHash, new UnrestrictedWrite(), body),
+                new MethodResultCache(directory, 1 << 20, null).getKey(bodyHash, new UnrestrictedWrite(), body));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void resultOutsideTheBodyIsRejected() throws IOException {
+        List<List<Instruction>> bodies = decompileMethods("TODAmount");
+        new MethodResultCache.Result(bodies.get(0), Collections.singletonList(bodies.get(1).get(1)), Collections.emptyList(),
+                Collections.emptyList(), Collections.emptyList());
+    }
+
+    private JsonObject analyze(String contract, String... options) throws IOException, InterruptedException {
+        File livestatusfile = folder.newFile();
+        List<String> args = new ArrayList<>(Arrays.asList("-fh", HelperTestInput.getHexFile(contract),
+                "--livestatusfile", livestatusfile.getPath(), "--dataflow", "inmemory", "-q"));
+        args.addAll(Arrays.asList(options));
+        Main.main(args.toArray(new String[0]));
+        try (Reader reader = new FileReader(livestatusfile)) {
+            return new JsonParser().parse(reader).getAsJsonObject();
+        }
+    }
+
+    /**
+     * @return the results of the patterns as sets of instruction numbers, which the contract results
+     * report in the order and as often as the patterns found them on the bodies
+     */
+    private static Map<String, Map<String, Set<Integer>>> patternResults(JsonObject status) {
+        Map<String, Map<String, Set<Integer>>> results = new TreeMap<>();
+        for (Map.Entry<String, JsonElement> result : status.getAsJsonObject("patternResults").entrySet()) {
+            Map<String, Set<Integer>> patternResults = new TreeMap<>();
+            for (String kind : new String[]{"violations", "warnings", "safe", "conflicts"}) {
+                Set<Integer> instructions = new TreeSet<>();
+                result.getValue().getAsJsonObject().getAsJsonArray(kind).forEach(instr -> instructions.add(instr.getAsInt()));
+                patternResults.put(kind, instructions);
+            }
+            results.put(result.getKey(), patternResults);
+        }
+        return results;
+    }
+
+    @Test
+    public void cachedResultsAreMergedIntoTheContractResults() throws IOException, InterruptedException {
+        String methodCache = folder.newFolder().getPath();
+        for (String contract : new String[]{"transaction-reordering", "MissingInputValidation"}) {
+            JsonObject uncached = analyze(contract);
+            JsonObject computed = analyze(contract, "--methodcache", methodCache);
+            JsonObject cached = analyze(contract, "--methodcache", methodCache);
+
+            assertEquals(contract, patternResults(uncached), patternResults(computed));
+            assertEquals(contract, patternResults(uncached), patternResults(cached));
+            // all instruction patterns are answered from the cache, so no body needs its dataflow
+            assertTrue(contract, cached.get("methodBodies").getAsInt() > 0);
+            assertEquals(contract, cached.get("methodBodies"), cached.get("skippedMethodBodies"));
+            for (Map.Entry<String, JsonElement> result : cached.getAsJsonObject("patternResults").entrySet()) {
+                assertTrue(contract + " " + result.getKey(), result.getValue().getAsJsonObject().get("completed").getAsBoolean());
+            }
+        }
+    }
+}
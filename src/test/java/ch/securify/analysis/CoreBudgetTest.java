@@ -0,0 +1,78 @@
+/*
+ *  Copyright 2018 Secure, Reliable, and Intelligent Systems Lab, ETH Zurich
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+package ch.securify.analysis;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+public class CoreBudgetTest {
+
+    @Test
+    public void singleEvaluationGetsAllCores() {
+        CoreBudget budget = new CoreBudget(8, 0);
+        assertEquals(8, budget.acquire());
+        budget.release(8);
+        budget.enter(1);
+        assertEquals(8, budget.acquire());
+    }
+
+    @Test
+    public void threadsAreLimitedPerEvaluation() {
+        CoreBudget budget = new CoreBudget(8, 3);
+        budget.enter(1);
+        assertEquals(3, budget.acquire());
+        assertEquals(3, budget.acquire());
+        assertEquals(2, budget.acquire());
+    }
+
+    @Test
+    public void announcedEvaluationsShareTheCores() {
+        CoreBudget budget = new CoreBudget(10, 0);
+        budget.enter(4);
+        // rounded up shares, as long as cores are free
+        assertEquals(3, budget.acquire());
+        assertEquals(3, budget.acquire());
+        assertEquals(3, budget.acquire());
+        assertEquals(1, budget.acquire());
+        budget.release(10);
+        budget.leave(3);
+        assertEquals(10, budget.acquire());
+    }
+
+    @Test
+    public void oversubscribedEvaluationsGetOneThread() {
+        CoreBudget budget = new CoreBudget(2, 0);
+        budget.enter(4);
+        for (int i = 0; i < 4; i++) {
+            assertEquals(1, budget.acquire());
+        }
+        // a late evaluation runs with one thread rather than waiting
+        budget.enter(1);
+        assertEquals(1, budget.acquire());
+        budget.release(5);
+        budget.leave(5);
+        budget.enter(1);
+        assertEquals(2, budget.acquire());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void coresAreNeeded() {
+        new CoreBudget(0, 0);
+    }
+}
@@ -0,0 +1,155 @@
+/*
+ *  Copyright 2018 Secure, Reliable, and Intelligent Systems Lab, ETH Zurich
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+package ch.securify.analysis;
+
+import ch.securify.decompiler.instructions.Instruction;
+import ch.securify.decompiler.instructions.JumpDest;
+import ch.securify.patterns.HelperTestInput;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class DominatorsTest {
+
+    /** One jump destination per node, with the pairs as outgoing branches. */
+    private static List<Instruction> graph(int nodeCount, int[][] pairs) {
+        List<Instruction> instructions = new ArrayList<>();
+        for (int n = 0; n < nodeCount; n++) {
+            instructions.add(new JumpDest("n" + n));
+        }
+        for (int[] pair : pairs) {
+            ((JumpDest) instructions.get(pair[0])).addOutgoingBranch(instructions.get(pair[1]));
+        }
+        return instructions;
+    }
+
+    /** Nodes reachable from the entries of the graph, or of the reversed graph, without going through the removed node. */
+    private static boolean[] reachable(int nodeCount, int[][] pairs, boolean reverse, int removed) {
+        int from = reverse ? 1 : 0, to = reverse ? 0 : 1;
+        boolean[] hasPred = new boolean[nodeCount];
+        for (int[] pair : pairs) {
+            hasPred[pair[to]] = true;
+        }
+        boolean[] seen = new boolean[nodeCount];
+        Deque<Integer> queue = new ArrayDeque<>();
+        for (int n = 0; n < nodeCount; n++) {
+            if (!hasPred[n] && n != removed) {
+                seen[n] = true;
+                queue.add(n);
+            }
+        }
+        while (!queue.isEmpty()) {
+            int n = queue.poll();
+            for (int[] pair : pairs) {
+                if (pair[from] == n && pair[to] != removed && !seen[pair[to]]) {
+                    seen[pair[to]] = true;
+                    queue.add(pair[to]);
+                }
+            }
+        }
+        return seen;
+    }
+
+    /** a dominates b if b is reachable, but no longer once a is removed. */
+    private static boolean reference(int nodeCount, int[][] pairs, boolean reverse, int a, int b) {
+        return a != b && reachable(nodeCount, pairs, reverse, -1)[b] && !reachable(nodeCount, pairs, reverse, a)[b];
+    }
+
+    private static void assertMatchesReference(int nodeCount, int[][] pairs) {
+        List<Instruction> instructions = graph(nodeCount, pairs);
+        Dominators dominators = new Dominators(instructions);
+        for (int a = 0; a < nodeCount; a++) {
+            for (int b = 0; b < nodeCount; b++) {
+                assertEquals(a + " dom " + b, reference(nodeCount, pairs, false, a, b),
+                        dominators.dominates(instructions.get(a), instructions.get(b)));
+                assertEquals(a + " postdom " + b, reference(nodeCount, pairs, true, a, b),
+                        dominators.postDominates(instructions.get(a), instructions.get(b)));
+            }
+        }
+    }
+
+    @Test
+    public void diamondWithLoop() {
+        // 0 -> 1 -> {2, 3} -> 4 -> 5, with the loop 4 -> 1
+        int[][] pairs = {{0, 1}, {1, 2}, {1, 3}, {2, 4}, {3, 4}, {4, 1}, {4, 5}};
+        List<Instruction> instructions = graph(6, pairs);
+        Dominators dominators = new Dominators(instructions);
+
+        assertEquals(instructions.get(1), dominators.getImmediateDominator(instructions.get(4)));
+        assertEquals(instructions.get(4), dominators.getImmediatePostDominator(instructions.get(1)));
+        assertNull(dominators.getImmediateDominator(instructions.get(0)));
+        assertNull(dominators.getImmediatePostDominator(instructions.get(5)));
+        assertFalse(dominators.dominates(instructions.get(2), instructions.get(4)));
+        assertFalse(dominators.dominates(instructions.get(4), instructions.get(4)));
+        assertTrue(dominators.postDominates(instructions.get(5), instructions.get(0)));
+        assertMatchesReference(6, pairs);
+    }
+
+    @Test
+    public void multipleEntriesAndExits() {
+        // entries 0 and 1 join in 2, which branches to the exits 3 and 4
+        assertMatchesReference(5, new int[][]{{0, 2}, {1, 2}, {2, 3}, {2, 4}});
+    }
+
+    @Test
+    public void unreachableCycle() {
+        // the cycle 2 <-> 3 has no entry and no exit
+        int[][] pairs = {{0, 1}, {2, 3}, {3, 2}};
+        List<Instruction> instructions = graph(4, pairs);
+        Dominators dominators = new Dominators(instructions);
+
+        assertNull(dominators.getImmediateDominator(instructions.get(3)));
+        assertNull(dominators.getImmediatePostDominator(instructions.get(2)));
+        assertMatchesReference(4, pairs);
+    }
+
+    @Test
+    public void randomGraphs() {
+        Random random = new Random(42);
+        for (int round = 0; round < 200; round++) {
+            int nodeCount = 1 + random.nextInt(12);
+            int[][] pairs = new int[random.nextInt(2 * nodeCount + 1)][];
+            for (int i = 0; i < pairs.length; i++) {
+                pairs[i] = new int[]{random.nextInt(nodeCount), random.nextInt(nodeCount)};
+            }
+            assertMatchesReference(nodeCount, pairs);
+        }
+    }
+
+    @Test
+    public void contractIsDominatedByItsEntry() throws IOException {
+        List<Instruction> instructions = HelperTestInput.decompile("UnrestrictedWrite");
+        Dominators dominators = new InMemoryDataflow(instructions).getDominators();
+
+        Instruction entry = instructions.get(0);
+        int dominated = 0;
+        for (Instruction instr : instructions) {
+            if (dominators.dominates(entry, instr))
+                dominated++;
+            assertFalse(instr.toString(), dominators.dominates(instr, entry));
+        }
+        assertTrue(dominated > 0);
+    }
+}
@@ -0,0 +1,78 @@
+/*
+ *  Copyright 2018 Secure, Reliable, and Intelligent Systems Lab, ETH Zurich
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+package ch.securify.analysis;
+
+import ch.securify.decompiler.Variable;
+import ch.securify.decompiler.instructions.Instruction;
+import ch.securify.patterns.HelperTestInput;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.lang.ref.WeakReference;
+import java.util.List;
+
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+public class FactBaseTest {
+
+    @Test
+    public void codesArePassedOnAfterRelease() throws IOException {
+        List<Instruction> instructions = HelperTestInput.decompile("UnrestrictedWrite");
+        FactBase first = new FactBase(instructions);
+        first.retain();
+        instructions.forEach(first::getCode);
+        FactBase second = new FactBase(instructions);
+        for (Instruction instr : instructions) {
+            assertSame(first, instr.getCodeOwner());
+            assertSame(instr, second.getObject(second.getCode(instr)));
+        }
+
+        first.release();
+        FactBase third = new FactBase(instructions);
+        for (Instruction instr : instructions) {
+            assertSame(instr, third.getObject(third.getCode(instr)));
+            assertSame(third, instr.getCodeOwner());
+        }
+    }
+
+    @Test
+    public void releasedFactBaseCanBeCollected() throws IOException {
+        List<Instruction> instructions = HelperTestInput.decompile("UnrestrictedWrite");
+        FactBase facts = new FactBase(instructions);
+        facts.retain();
+        for (Instruction instr : instructions) {
+            assertSame(instr, facts.getObject(facts.getCode(instr)));
+            for (Variable var : instr.getOutput())
+                assertSame(var, facts.getObject(facts.getCode(var)));
+        }
+        facts.release();
+        for (Instruction instr : instructions) {
+            assertNull(instr.getCodeOwner());
+            for (Variable var : instr.getOutput())
+                assertNull(var.getCodeOwner());
+        }
+
+        WeakReference<FactBase> released = new WeakReference<>(facts);
+        facts = null;
+        for (int i = 0; i < 100 && released.get() != null; i++) {
+            System.gc();
+        }
+        assertNull(released.get());
+    }
+}
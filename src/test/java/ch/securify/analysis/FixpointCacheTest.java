@@ -0,0 +1,177 @@
+/*
+ *  Copyright 2018 Secure, Reliable, and Intelligent Systems Lab, ETH Zurich
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+package ch.securify.analysis;
+
+import ch.securify.analysis.datalog.MayImplicitProgram;
+import ch.securify.analysis.datalog.MustExplicitProgram;
+import ch.securify.decompiler.Variable;
+import ch.securify.decompiler.instructions.Instruction;
+import ch.securify.patterns.HelperTestInput;
+import ch.securify.utils.IntTupleList;
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.*;
+import java.util.function.Consumer;
+
+import static org.junit.Assert.*;
+
+public class FixpointCacheTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private final int offHeapThreshold = DataflowFactory.getOffHeapThreshold();
+
+    @After
+    public void resetCache() {
+        DataflowFactory.setFixpointCache(null);
+        DataflowFactory.setOffHeapThreshold(offHeapThreshold);
+    }
+
+    private static Map<String, List<IntTupleList>> inputs(int... values) {
+        IntTupleList tuples = new IntTupleList(2);
+        for (int i = 0; i + 1 < values.length; i += 2) {
+            tuples.add(values[i], values[i + 1]);
+        }
+        Map<String, List<IntTupleList>> inputs = new HashMap<>();
+        inputs.put("follows", Collections.singletonList(tuples));
+        inputs.put("unk", Collections.singletonList(new IntTupleList(1)));
+        return inputs;
+    }
+
+    private static FixpointCache.RelationSource source(IntTupleList tuples) {
+        return new FixpointCache.RelationSource() {
+            @Override
+            public int getArity() {
+                return tuples.getArity();
+            }
+
+            @Override
+            public int size() {
+                return tuples.size();
+            }
+
+            @Override
+            public void forEach(Consumer<int[]> consumer) {
+                for (int t = 0; t < tuples.size(); t++) {
+                    consumer.accept(tuples.get(t));
+                }
+            }
+        };
+    }
+
+    /**
+     * @return the objects as sorted strings, where the storage and memory variables created by the fact
+     * base of each dataflow are all written as "location"
+     */
+    private static List<String> normalize(Set<Object> objects, Set<Variable> variables) {
+        List<String> strings = new ArrayList<>();
+        for (Object o : objects) {
+            strings.add(o instanceof Variable && !variables.contains(o) ? "location" : o.toString());
+        }
+        Collections.sort(strings);
+        return strings;
+    }
+
+    @Test
+    public void keyChangesWithTheProgramOrTheInputs() throws IOException {
+        FixpointCache cache = new FixpointCache(folder.newFolder(), 1 << 20);
+        Set<String> outputs = Collections.singleton("mayFollow");
+        String key = cache.getKey(null, new MustExplicitProgram(), inputs(1, 2, 2, 3), outputs);
+
+        assertEquals(key, cache.getKey(null, new MustExplicitProgram(), inputs(1, 2, 2, 3), outputs));
+        assertNotEquals(key, cache.getKey(null, new MayImplicitProgram(), inputs(1, 2, 2, 3), outputs));
+        assertNotEquals(key, cache.getKey(null, new MustExplicitProgram(), inputs(1, 2, 2, 4), outputs));
+        assertNotEquals(key, cache.getKey(null, new MustExplicitProgram(), inputs(1, 2), outputs));
+        assertNotEquals(key, cache.getKey(null, new MustExplicitProgram(), inputs(1, 2, 2, 3), Collections.singleton("mustPrecede")));
+    }
+
+    @Test
+    public void keyChangesWithTheSouffleBinary() throws IOException {
+        File binary = folder.newFile();
+        Files.write(binary.toPath(), new byte[]{1, 2, 3});
+        String key = new FixpointCache(folder.newFolder(), 1 << 20).getKey(binary.getPath(), null, inputs(1, 2), Collections.emptySet());
+        Files.write(binary.toPath(), new byte[]{1, 2, 4});
+        assertNotEquals(key, new FixpointCache(folder.newFolder(), 1 << 20).getKey(binary.getPath(), null, inputs(1, 2), Collections.emptySet()));
+    }
+
+    @Test
+    public void relationsAreReadBack() throws IOException {
+        FixpointCache cache = new FixpointCache(folder.newFolder(), 1 << 20);
+        IntTupleList tuples = new IntTupleList(3);
+        tuples.add(1, 2, 3);
+        tuples.add(4, 5, 6);
+        Map<String, FixpointCache.RelationSource> relations = new LinkedHashMap<>();
+        relations.put("varMayDepOn", source(tuples));
+        relations.put("mustPrecede", source(new IntTupleList(2)));
+        cache.put("key", relations);
+
+        Map<String, IntTupleList> read = new LinkedHashMap<>();
+        assertTrue(cache.get("key", (name, arity, size) -> {
+            IntTupleList relation = new IntTupleList(arity);
+            read.put(name, relation);
+            return relation::add;
+        }));
+        assertEquals(Arrays.asList("varMayDepOn", "mustPrecede"), new ArrayList<>(read.keySet()));
+        assertEquals(2, read.get("varMayDepOn").size());
+        assertArrayEquals(new int[]{4, 5, 6}, read.get("varMayDepOn").get(1));
+        assertEquals(2, read.get("mustPrecede").getArity());
+        assertEquals(0, read.get("mustPrecede").size());
+
+        assertFalse(cache.get("other key", (name, arity, size) -> tuple -> fail()));
+        assertEquals(1, cache.getHits());
+        assertEquals(1, cache.getMisses());
+    }
+
+    @Test
+    public void cachedFixpointAnswersTheSameQueries() throws IOException, InterruptedException {
+        List<Instruction> instructions = HelperTestInput.decompile("UnrestrictedWrite");
+        FixpointCache cache = new FixpointCache(folder.newFolder(), 1 << 20);
+        DataflowFactory.setFixpointCache(cache);
+
+        AbstractDataflow computed = new InMemoryDataflow(instructions);
+        assertEquals(0, cache.getHits());
+        // the cached relations are also read into memory-mapped files
+        DataflowFactory.setOffHeapThreshold(20);
+        AbstractDataflow cached = new InMemoryDataflow(instructions);
+        assertEquals(2, cache.getHits());
+
+        Set<Variable> variables = Collections.newSetFromMap(new IdentityHashMap<>());
+        for (Instruction instr : instructions) {
+            variables.addAll(Arrays.asList(instr.getInput()));
+            variables.addAll(Arrays.asList(instr.getOutput()));
+        }
+        for (Instruction instr : instructions) {
+            assertEquals(computed.mayFollowTargets(instr), cached.mayFollowTargets(instr));
+            assertEquals(computed.mustPrecedeTargets(instr), cached.mustPrecedeTargets(instr));
+            if (instr.getOutput().length > 0) {
+                Variable var = instr.getOutput()[0];
+                assertEquals(normalize(computed.varMayDepOnAll(instr, var), variables), normalize(cached.varMayDepOnAll(instr, var), variables));
+                assertEquals(normalize(computed.varMustDepOnAll(instr, var), variables), normalize(cached.varMustDepOnAll(instr, var), variables));
+            }
+        }
+        computed.dispose();
+        cached.dispose();
+    }
+}
@@ -0,0 +1,74 @@
+/*
+ *  Copyright 2018 Secure, Reliable, and Intelligent Systems Lab, ETH Zurich
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+package ch.securify.analysis;
+
+import ch.securify.decompiler.instructions.Instruction;
+import ch.securify.decompiler.instructions.JumpI;
+import ch.securify.patterns.HelperTestInput;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class GuardIndexTest {
+
+    @Test
+    public void guardsMatchPrecedenceQueries() throws IOException {
+        for (String contract : new String[]{"MissingInputValidation", "UnrestrictedWrite", "LockedEther"}) {
+            List<Instruction> instructions = HelperTestInput.decompile(contract);
+            AbstractDataflow dataflow = new InMemoryDataflow(instructions);
+            GuardIndex guards = new GuardIndex(dataflow, instructions);
+
+            int mustGuarded = 0;
+            for (Instruction instr : instructions) {
+                // the guards as found by one precedence query per jump and instruction
+                List<JumpI> mustGuards = new ArrayList<>(), mayGuards = new ArrayList<>();
+                for (Instruction jump : instructions) {
+                    if (jump instanceof JumpI) {
+                        if (dataflow.mustPrecede(jump, instr) == Status.SATISFIABLE)
+                            mustGuards.add((JumpI) jump);
+                        if (dataflow.mayFollow(jump, instr) == Status.SATISFIABLE)
+                            mayGuards.add((JumpI) jump);
+                    }
+                }
+                assertEquals(contract + " " + instr, mustGuards, guards.getMustGuards(instr));
+                assertEquals(contract + " " + instr, mayGuards, guards.getMayGuards(instr));
+                if (!mustGuards.isEmpty())
+                    mustGuarded++;
+            }
+            assertTrue(contract, mustGuarded > 0);
+        }
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void undeclaredTargetIsRejected() throws IOException {
+        DataflowFactory.setQueryPlan(new QueryPlan().mustPrecede(JumpI.class, JumpI.class));
+        try {
+            List<Instruction> instructions = HelperTestInput.decompile("UnrestrictedWrite");
+            AbstractDataflow dataflow = new InMemoryDataflow(instructions);
+            Instruction notJump = instructions.stream().filter(instr -> !(instr instanceof JumpI)).findFirst().get();
+            dataflow.getGuards().getMustGuards(notJump);
+        } finally {
+            DataflowFactory.setQueryPlan(null);
+        }
+    }
+}
@@ -0,0 +1,158 @@
+/*
+ *  Copyright 2018 Secure, Reliable, and Intelligent Systems Lab, ETH Zurich
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+package ch.securify.analysis;
+
+import ch.securify.utils.IntTupleList;
+import org.junit.Test;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class ReachabilityIndexTest {
+
+    private static IntTupleList edges(int[][] pairs) {
+        IntTupleList edges = new IntTupleList(2);
+        for (int[] pair : pairs) {
+            edges.add(pair[0], pair[1]);
+        }
+        return edges;
+    }
+
+    private static IntTupleList targets(int... codes) {
+        IntTupleList targets = new IntTupleList(1);
+        for (int code : codes) {
+            targets.add(code);
+        }
+        return targets;
+    }
+
+    /** Non-empty paths by breadth-first search. */
+    private static boolean reference(int[][] pairs, int from, int to) {
+        Deque<Integer> queue = new ArrayDeque<>();
+        List<Integer> seen = new ArrayList<>();
+        queue.add(from);
+        while (!queue.isEmpty()) {
+            int n = queue.poll();
+            for (int[] pair : pairs) {
+                if (pair[0] != n)
+                    continue;
+                if (pair[1] == to)
+                    return true;
+                if (!seen.contains(pair[1])) {
+                    seen.add(pair[1]);
+                    queue.add(pair[1]);
+                }
+            }
+        }
+        return false;
+    }
+
+    private static void assertMatchesReference(int[][] pairs, int[] nodes, int[] targetCodes) {
+        ReachabilityIndex index = new ReachabilityIndex(edges(pairs), targets(targetCodes));
+        for (int from : nodes) {
+            List<Integer> expected = new ArrayList<>();
+            for (int to : targetCodes) {
+                boolean reaches = reference(pairs, from, to);
+                boolean inGraph = Arrays.stream(pairs).anyMatch(pair -> pair[0] == to || pair[1] == to);
+                if (inGraph)
+                    assertEquals(from + " -> " + to, reaches, index.reaches(from, to));
+                if (reaches && !expected.contains(to))
+                    expected.add(to);
+            }
+            assertEquals("from " + from, expected, toList(index.reachableTargets(from)));
+        }
+    }
+
+    private static List<Integer> toList(int[] codes) {
+        List<Integer> list = new ArrayList<>();
+        for (int code : codes) {
+            list.add(code);
+        }
+        return list;
+    }
+
+    @Test
+    public void pathsAcrossComponents() {
+        // 1 has a self-loop, {2, 3} feeds {4, 5, 6}, which feeds 7; 8 -> 9 is not connected to the rest
+        int[][] pairs = {{1, 1}, {1, 2}, {2, 3}, {3, 2}, {3, 4}, {4, 5}, {5, 6}, {6, 4}, {6, 7}, {8, 9}};
+        int[] nodes = {1, 2, 3, 4, 5, 6, 7, 8, 9};
+        assertMatchesReference(pairs, nodes, nodes);
+
+        ReachabilityIndex index = new ReachabilityIndex(edges(pairs), targets(nodes));
+        assertTrue(index.reaches(1, 1));
+        assertTrue(index.reaches(2, 2));
+        assertTrue(index.reaches(5, 4));
+        assertFalse(index.reaches(7, 7));
+        assertFalse(index.reaches(4, 3));
+        assertFalse(index.reaches(8, 8));
+        assertFalse(index.reaches(1, 9));
+    }
+
+    @Test
+    public void onlyDeclaredTargetsAreReported() {
+        int[][] pairs = {{1, 2}, {2, 1}, {2, 3}, {3, 4}, {4, 3}, {4, 5}, {5, 6}};
+        // the order of the targets is kept, codes outside the graph are ignored
+        ReachabilityIndex index = new ReachabilityIndex(edges(pairs), targets(5, 42, 1, 3));
+        assertEquals(Arrays.asList(5, 1, 3), toList(index.reachableTargets(2)));
+        assertEquals(Arrays.asList(5, 3), toList(index.reachableTargets(4)));
+        assertEquals(0, index.reachableTargets(6).length);
+        assertEquals(0, index.reachableTargets(5).length);
+        assertEquals(0, index.reachableTargets(42).length);
+        assertFalse(index.reaches(42, 1));
+        assertFalse(index.reaches(1, 42));
+        try {
+            index.reaches(1, 6);
+            fail();
+        } catch (IllegalArgumentException e) {
+            assertEquals("Not a target: 6", e.getMessage());
+        }
+        assertMatchesReference(pairs, new int[]{1, 2, 3, 4, 5, 6}, new int[]{5, 1, 3});
+    }
+
+    @Test
+    public void emptyGraphReachesNothing() {
+        ReachabilityIndex index = new ReachabilityIndex(edges(new int[0][]), targets(1));
+        assertFalse(index.reaches(1, 1));
+        assertEquals(0, index.reachableTargets(1).length);
+    }
+
+    @Test
+    public void randomGraphsMatchReference() {
+        Random random = new Random(7);
+        for (int round = 0; round < 20; round++) {
+            // up to 100 targets, so the bitsets may have several words
+            int nodeCount = 10 + random.nextInt(190);
+            int[][] pairs = new int[nodeCount + random.nextInt(2 * nodeCount)][];
+            for (int e = 0; e < pairs.length; e++) {
+                pairs[e] = new int[]{random.nextInt(nodeCount), random.nextInt(nodeCount)};
+            }
+            int[] nodes = new int[nodeCount];
+            for (int n = 0; n < nodeCount; n++) {
+                nodes[n] = n;
+            }
+            int[] targetCodes = random.ints(0, nodeCount).distinct().limit(nodeCount / 2 + 1).toArray();
+            assertMatchesReference(pairs, nodes, targetCodes);
+        }
+    }
+}
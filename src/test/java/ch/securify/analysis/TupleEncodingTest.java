@@ -0,0 +1,196 @@
+/*
+ *  Copyright 2018 Secure, Reliable, and Intelligent Systems Lab, ETH Zurich
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+package ch.securify.analysis;
+
+import ch.securify.analysis.datalog.MayImplicitProgram;
+import ch.securify.utils.IntTupleList;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+
+import static org.junit.Assert.*;
+
+public class TupleEncodingTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static final int MAX_NARROW_CODE = (1 << 21) - 1;
+
+    @Test
+    public void bitsCoverTheLargestCode() {
+        assertEquals(1, new TupleEncoding(0).getBits());
+        assertEquals(1, new TupleEncoding(1).getBits());
+        assertEquals(2, new TupleEncoding(2).getBits());
+        assertEquals(21, new TupleEncoding(MAX_NARROW_CODE).getBits());
+        assertEquals(22, new TupleEncoding(MAX_NARROW_CODE + 1).getBits());
+        assertEquals(31, new TupleEncoding(Integer.MAX_VALUE).getBits());
+    }
+
+    @Test
+    public void ternaryTuplesAreWideBeyond63Bits() {
+        assertFalse(new TupleEncoding(MAX_NARROW_CODE).isWide(3));
+        assertTrue(new TupleEncoding(MAX_NARROW_CODE + 1).isWide(3));
+        // pairs always fit
+        assertFalse(new TupleEncoding(Integer.MAX_VALUE).isWide(2));
+    }
+
+    @Test
+    public void codesAreDecoded() {
+        for (int maxCode : new int[]{1, 1000, MAX_NARROW_CODE}) {
+            TupleEncoding encoding = new TupleEncoding(maxCode);
+            int[][] tuples = {{0, 0, 0}, {maxCode, 0, maxCode}, {maxCode, maxCode, maxCode}, {1, maxCode / 2, 0}};
+            for (int[] tuple : tuples) {
+                long packed = encoding.encode(tuple[0], tuple[1], tuple[2]);
+                assertTrue(packed >= 0);
+                for (int i = 0; i < 3; i++) {
+                    assertEquals(tuple[i], encoding.decode(packed, 3, i));
+                }
+                assertEquals(tuple[2], encoding.decodeLast(packed));
+                packed = encoding.encode(tuple[0], tuple[1]);
+                assertEquals(tuple[0], encoding.decode(packed, 2, 0));
+                assertEquals(tuple[1], encoding.decodeLast(packed));
+            }
+        }
+        TupleEncoding encoding = new TupleEncoding(Integer.MAX_VALUE);
+        long packed = encoding.encode(Integer.MAX_VALUE, 5);
+        assertEquals(Integer.MAX_VALUE, encoding.decode(packed, 2, 0));
+        assertEquals(5, encoding.decodeLast(packed));
+    }
+
+    @Test
+    public void packedTuplesAreOrderedLikeTheTuples() {
+        TupleEncoding encoding = new TupleEncoding(MAX_NARROW_CODE);
+        assertTrue(encoding.encode(0, MAX_NARROW_CODE, MAX_NARROW_CODE) < encoding.encode(1, 0, 0));
+        assertTrue(encoding.encode(1, 0, MAX_NARROW_CODE) < encoding.encode(1, 1, 0));
+        assertTrue(encoding.encode(MAX_NARROW_CODE - 1, MAX_NARROW_CODE) < encoding.encode(MAX_NARROW_CODE, 0));
+    }
+
+    @Test
+    public void codesOutsideTheCodeSpaceAreRejected() {
+        TupleEncoding encoding = new TupleEncoding(100);
+        assertTrue(encoding.covers(0));
+        assertTrue(encoding.covers(100));
+        assertFalse(encoding.covers(101));
+        assertFalse(encoding.covers(-1));
+        assertEquals(100, encoding.check(100));
+        try {
+            encoding.check(101);
+            fail();
+        } catch (IllegalStateException e) {
+            assertEquals("Code 101 exceeds the code space of 7 bits (max. code 100)", e.getMessage());
+        }
+    }
+
+    /**
+     * Derive the memory relation of the may analysis from a few facts whose codes start at the given base.
+     */
+    private static Fixpoint memoryFixpoint(int base) throws InterruptedException {
+        Fixpoint fixpoint = new Fixpoint(null, new MayImplicitProgram());
+        inputs(base).forEach((name, tuples) -> fixpoint.addInput(name, tuples.get(0)));
+        fixpoint.demandOutputs(Collections.singleton("memory"));
+        fixpoint.compute(60000);
+        return fixpoint;
+    }
+
+    private static Map<String, List<IntTupleList>> inputs(int base) {
+        IntTupleList assignType = new IntTupleList(3), mstore = new IntTupleList(3), follows = new IntTupleList(2);
+        // var 2 has type 3, is stored at offset 5 by instruction 4, which is followed by instruction 6
+        assignType.add(base + 1, base + 2, base + 3);
+        mstore.add(base + 4, base + 5, base + 2);
+        follows.add(base + 4, base + 6);
+        Map<String, List<IntTupleList>> inputs = new LinkedHashMap<>();
+        inputs.put("assignType", Collections.singletonList(assignType));
+        inputs.put("mstore", Collections.singletonList(mstore));
+        inputs.put("follows", Collections.singletonList(follows));
+        return inputs;
+    }
+
+    private static void assertMemory(Fixpoint fixpoint, int base) {
+        assertEquals(Status.SATISFIABLE, fixpoint.query("memory", base + 4, base + 5, base + 3));
+        assertEquals(Status.SATISFIABLE, fixpoint.query("memory", base + 6, base + 5, base + 3));
+        assertEquals(Status.UNSATISFIABLE, fixpoint.query("memory", base + 6, base + 5, base + 2));
+        assertEquals(Status.UNSATISFIABLE, fixpoint.query("memory", base + 6, base + 7, base + 3));
+        assertArrayEquals(new int[]{base + 3}, fixpoint.select("memory", base + 6, base + 5));
+        assertArrayEquals(new int[0], fixpoint.select("memory", base + 1, base + 5));
+    }
+
+    @Test
+    public void relationsAtTheLargestNarrowCodeAreQueried() throws Exception {
+        for (int base : new int[]{0, MAX_NARROW_CODE - 6}) {
+            Fixpoint fixpoint = memoryFixpoint(base);
+            assertMemory(fixpoint, base);
+            fixpoint.dispose();
+        }
+    }
+
+    @Test
+    public void wideRelationsAreEvaluated() throws Exception {
+        for (int base : new int[]{MAX_NARROW_CODE + 1, Integer.MAX_VALUE - 7}) {
+            Fixpoint fixpoint = memoryFixpoint(base);
+            assertMemory(fixpoint, base);
+            fixpoint.dispose();
+        }
+    }
+
+    @Test
+    public void wideRelationsAreReadFromTheCache() throws Exception {
+        int base = MAX_NARROW_CODE + 1;
+        IntTupleList memory = new IntTupleList(3);
+        memory.add(base + 4, base + 5, base + 3);
+        memory.add(base + 6, base + 5, base + 3);
+        FixpointCache cache = new FixpointCache(folder.newFolder(), 1 << 20);
+        Map<String, FixpointCache.RelationSource> relations = new HashMap<>();
+        relations.put("memory", new FixpointCache.RelationSource() {
+            @Override
+            public int getArity() {
+                return 3;
+            }
+
+            @Override
+            public int size() {
+                return memory.size();
+            }
+
+            @Override
+            public void forEach(Consumer<int[]> consumer) {
+                for (int t = 0; t < memory.size(); t++) {
+                    consumer.accept(memory.get(t));
+                }
+            }
+        });
+        cache.put(cache.getKey(null, new MayImplicitProgram(), inputs(base), Collections.singleton("memory")), relations);
+
+        DataflowFactory.setFixpointCache(cache);
+        try {
+            Fixpoint fixpoint = memoryFixpoint(base);
+            assertEquals(1, cache.getHits());
+            assertMemory(fixpoint, base);
+            fixpoint.dispose();
+        } finally {
+            DataflowFactory.setFixpointCache(null);
+        }
+    }
+}
@@ -0,0 +1,118 @@
+/*
+ *  Copyright 2018 Secure, Reliable, and Intelligent Systems Lab, ETH Zurich
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+package ch.securify.decompiler;
+
+import ch.securify.Main;
+import ch.securify.decompiler.instructions.Instruction;
+import ch.securify.patterns.HelperTestInput;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+public class DecompilationCacheTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static final byte[] CODE = {0x60, 0x00, 0x56};
+
+    /**
+     * @return the code followed by a CBOR map of the given length and the length trailer
+     */
+    private static byte[] withMetadata(byte[] code, int mapHeader, int mapLength) {
+        byte[] bytecode = Arrays.copyOf(code, code.length + mapLength + 2);
+        bytecode[code.length] = (byte) mapHeader;
+        for (int i = 1; i < mapLength; i++) {
+            bytecode[code.length + i] = (byte) i;
+        }
+        bytecode[bytecode.length - 2] = (byte) (mapLength >> 8);
+        bytecode[bytecode.length - 1] = (byte) mapLength;
+        return bytecode;
+    }
+
+    private static List<String> toStrings(List<Instruction> instructions) {
+        return instructions.stream().map(Instruction::toString).collect(Collectors.toList());
+    }
+
+    @Test
+    public void metadataIsStripped() {
+        assertArrayEquals(CODE, DecompilationCache.stripMetadata(withMetadata(CODE, 0xa1, 4)));
+        assertArrayEquals(CODE, DecompilationCache.stripMetadata(withMetadata(CODE, 0xb7, 300)));
+    }
+
+    @Test
+    public void bytecodeWithoutMetadataIsKept() {
+        // not a CBOR map
+        byte[] bytecode = withMetadata(CODE, 0x60, 4);
+        assertSame(bytecode, DecompilationCache.stripMetadata(bytecode));
+        // length beyond the bytecode
+        bytecode = Arrays.copyOf(CODE, CODE.length + 2);
+        bytecode[bytecode.length - 1] = 10;
+        assertSame(bytecode, DecompilationCache.stripMetadata(bytecode));
+        bytecode = new byte[]{0x00};
+        assertSame(bytecode, DecompilationCache.stripMetadata(bytecode));
+    }
+
+    @Test
+    public void keyIgnoresMetadata() throws IOException {
+        DecompilationCache cache = new DecompilationCache(folder.newFolder(), 1 << 20);
+        byte[] otherCode = {0x60, 0x01, 0x56};
+        assertEquals(cache.getKey(CODE), cache.getKey(withMetadata(CODE, 0xa1, 4)));
+        assertEquals(cache.getKey(withMetadata(CODE, 0xa2, 8)), cache.getKey(withMetadata(CODE, 0xa1, 4)));
+        assertNotEquals(cache.getKey(CODE), cache.getKey(otherCode));
+        // the same decompiler gives the same keys
+        assertEquals(cache.getKey(CODE), new DecompilationCache(folder.newFolder(), 1 << 20).getKey(CODE));
+    }
+
+    @Test
+    public void storedContractIsFound() throws IOException {
+        byte[] bin = HelperTestInput.readBinary("TODAmount");
+        List<Instruction> instructions = Main.decompileContract(bin);
+        File directory = folder.newFolder();
+
+        DecompilationCache cache = new DecompilationCache(directory, 1 << 20);
+        assertNull(cache.get(bin));
+        cache.put(bin, instructions);
+        assertEquals(toStrings(instructions), toStrings(cache.get(bin)));
+        assertEquals(1, cache.getHits());
+        assertEquals(1, cache.getMisses());
+
+        // the entry outlives the cache instance
+        DecompilationCache reopened = new DecompilationCache(directory, 1 << 20);
+        assertEquals(toStrings(instructions), toStrings(reopened.get(bin)));
+        assertNull(reopened.get(CODE));
+        // the same code compiled from another source file has another swarm hash in its metadata
+        byte[] redeployed = bin.clone();
+        redeployed[redeployed.length - 5] ^= 1;
+        assertEquals(toStrings(instructions), toStrings(reopened.get(redeployed)));
+        assertEquals(2, reopened.getHits());
+        assertEquals(1, reopened.getMisses());
+    }
+}
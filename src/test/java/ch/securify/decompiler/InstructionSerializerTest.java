@@ -0,0 +1,125 @@
+/*
+ *  Copyright 2018 Secure, Reliable, and Intelligent Systems Lab, ETH Zurich
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+package ch.securify.decompiler;
+
+import ch.securify.decompiler.instructions.BranchInstruction;
+import ch.securify.decompiler.instructions.Instruction;
+import ch.securify.patterns.HelperTestInput;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+public class InstructionSerializerTest {
+
+    private static List<String> toStrings(List<Instruction> instructions) {
+        return instructions.stream().map(Instruction::toString).collect(Collectors.toList());
+    }
+
+    private static byte[] write(List<Instruction> instructions) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        InstructionSerializer.write(instructions, new DataOutputStream(bytes));
+        return bytes.toByteArray();
+    }
+
+    private static byte[] writeNormalized(List<Instruction> instructions) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        InstructionSerializer.writeNormalized(instructions, new DataOutputStream(bytes));
+        return bytes.toByteArray();
+    }
+
+    private static List<Instruction> read(byte[] bytes) throws IOException {
+        return InstructionSerializer.read(new DataInputStream(new ByteArrayInputStream(bytes)));
+    }
+
+    /**
+     * @return positions of the instructions in the list, -1 for those outside of it
+     */
+    private static List<Integer> positions(List<Instruction> list, Collection<? extends Instruction> instructions) {
+        List<Integer> positions = new ArrayList<>();
+        for (Instruction instruction : instructions) {
+            int position = -1;
+            for (int i = 0; i < list.size() && position < 0; i++) {
+                if (list.get(i) == instruction)
+                    position = i;
+            }
+            positions.add(position);
+        }
+        return positions;
+    }
+
+    private static List<Integer> positions(List<Instruction> list, Instruction instruction) {
+        return positions(list, instruction == null ? Collections.emptyList() : Collections.singletonList(instruction));
+    }
+
+    @Test
+    public void readInstructionsAreTheSame() throws IOException {
+        for (String contract : new String[]{"MissingInputValidation", "TODAmount", "reentrancy", "transaction-reordering"}) {
+            List<Instruction> instructions = HelperTestInput.decompile(contract);
+            byte[] written = write(instructions);
+            List<Instruction> read = read(written);
+
+            assertEquals(contract, toStrings(instructions), toStrings(read));
+            for (int i = 0; i < instructions.size(); i++) {
+                Instruction instruction = instructions.get(i), readInstruction = read.get(i);
+                assertSame(contract, instruction.getClass(), readInstruction.getClass());
+                assertEquals(contract, positions(instructions, instruction.getPrev()), positions(read, readInstruction.getPrev()));
+                assertEquals(contract, positions(instructions, instruction.getNext()), positions(read, readInstruction.getNext()));
+                if (instruction instanceof BranchInstruction) {
+                    assertEquals(contract, positions(instructions, ((BranchInstruction) instruction).getOutgoingBranches()),
+                            positions(read, ((BranchInstruction) readInstruction).getOutgoingBranches()));
+                }
+                for (int j = 0; j < instruction.getOutput().length; j++) {
+                    assertEquals(contract, instruction.getOutput()[j].getValueTypes(), readInstruction.getOutput()[j].getValueTypes());
+                }
+            }
+            assertArrayEquals(contract, writeNormalized(instructions), writeNormalized(read));
+        }
+    }
+
+    @Test
+    public void otherVersionIsRejected() throws IOException {
+        byte[] written = write(HelperTestInput.decompile("TODAmount"));
+        // the version follows the 4 bytes of the magic number
+        written[4] = (byte) (InstructionSerializer.VERSION + 1);
+        try {
+            read(written);
+            fail();
+        } catch (IOException e) {
+            assertEquals("unsupported instruction format version " + (InstructionSerializer.VERSION + 1), e.getMessage());
+        }
+    }
+
+    @Test(expected = IOException.class)
+    public void otherDataIsRejected() throws IOException {
+        read(new byte[]{'E', 'V', 'M', 0, 0, 0});
+    }
+}
@@ -0,0 +1,167 @@
+/*
+ *  Copyright 2018 Secure, Reliable, and Intelligent Systems Lab, ETH Zurich
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+package ch.securify.patterns;
+
+import ch.securify.analysis.Config;
+import ch.securify.analysis.Dataflow;
+import ch.securify.analysis.DataflowFactory;
+import ch.securify.analysis.TimeoutException;
+import ch.securify.analysis.datalog.DatalogProgram;
+import ch.securify.analysis.datalog.MayImplicitProgram;
+import ch.securify.analysis.datalog.MustExplicitProgram;
+import ch.securify.decompiler.instructions.Caller;
+import ch.securify.decompiler.instructions.Instruction;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class ConcurrentFixpointsTest {
+
+    private List<Instruction> instructions;
+    private Instruction instr;
+
+    @Before
+    public void decompile() throws IOException {
+        instructions = HelperTestInput.decompile("UnrestrictedWrite");
+        instr = instructions.stream().filter(i -> i.getOutput().length > 0).findFirst().get();
+    }
+
+    @After
+    public void resetTimeout() {
+        DataflowFactory.setFixpointTimeout(Config.PATTERN_TIMEOUT * 1000L);
+    }
+
+    /** Evaluates until it runs out of time or is cancelled. */
+    private static class SlowMayProgram extends MayImplicitProgram {
+        final CountDownLatch started = new CountDownLatch(1);
+        volatile boolean cancelled = false;
+
+        @Override
+        protected void evaluate() {
+            started.countDown();
+            try {
+                while (true) {
+                    checkDeadline();
+                }
+            } catch (TimeoutException e) {
+                cancelled = Thread.currentThread().isInterrupted();
+                throw e;
+            }
+        }
+    }
+
+    private static class SlowMustProgram extends MustExplicitProgram {
+        @Override
+        protected void evaluate() {
+            while (true) {
+                checkDeadline();
+            }
+        }
+    }
+
+    /** Fails once the may run has started, so that it has to be cancelled. */
+    private static class FailingMustProgram extends MustExplicitProgram {
+        private final CountDownLatch mayStarted;
+
+        FailingMustProgram(CountDownLatch mayStarted) {
+            this.mayStarted = mayStarted;
+        }
+
+        @Override
+        protected void evaluate() {
+            try {
+                mayStarted.await(10, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            throw new IllegalStateException("must run failed");
+        }
+    }
+
+    private static class FailingMayProgram extends MayImplicitProgram {
+        @Override
+        protected void evaluate() {
+            throw new IllegalStateException("may run failed");
+        }
+    }
+
+    private Dataflow dataflow(DatalogProgram mustProgram, DatalogProgram mayProgram) {
+        return new Dataflow(instructions, mustProgram, mayProgram) { };
+    }
+
+    private void assertMustTimesOut(Dataflow dataflow) {
+        try {
+            dataflow.varMustDepOn(instr, instr.getOutput()[0], Caller.class);
+            fail("must query answered");
+        } catch (TimeoutException e) {
+            // the must fixpoint is not available
+        }
+    }
+
+    private void assertMayTimesOut(Dataflow dataflow) {
+        try {
+            dataflow.varMayDepOn(instr, instr.getOutput()[0], Caller.class);
+            fail("may query answered");
+        } catch (TimeoutException e) {
+            // the may fixpoint is not available
+        }
+    }
+
+    @Test
+    public void runsShareOneDeadline() {
+        long timeout = 1000;
+        DataflowFactory.setFixpointTimeout(timeout);
+        long start = System.currentTimeMillis();
+        Dataflow dataflow = dataflow(new SlowMustProgram(), new SlowMayProgram());
+        long elapsed = System.currentTimeMillis() - start;
+
+        // one after the other, the runs would take two timeouts
+        assertTrue("took " + elapsed + " ms", elapsed >= timeout && elapsed < 2 * timeout);
+        assertMustTimesOut(dataflow);
+        assertMayTimesOut(dataflow);
+    }
+
+    @Test
+    public void failedMustRunCancelsTheMayRun() {
+        DataflowFactory.setFixpointTimeout(60 * 1000);
+        SlowMayProgram mayProgram = new SlowMayProgram();
+        long start = System.currentTimeMillis();
+        Dataflow dataflow = dataflow(new FailingMustProgram(mayProgram.started), mayProgram);
+
+        assertTrue(System.currentTimeMillis() - start < 30 * 1000);
+        assertMustTimesOut(dataflow);
+        // the query waits for the cancelled run to stop
+        assertMayTimesOut(dataflow);
+        assertTrue(mayProgram.cancelled);
+    }
+
+    @Test
+    public void failedMayRunKeepsTheMustFixpoint() {
+        Dataflow dataflow = dataflow(new MustExplicitProgram(), new FailingMayProgram());
+
+        dataflow.varMustDepOn(instr, instr.getOutput()[0], Caller.class);
+        assertMayTimesOut(dataflow);
+    }
+}
@@ -27,6 +27,8 @@ import java.io.IOException;
 import java.util.List;
 
 public class HelperTestInput {
+    private static final String CONTRACT_DIRECTORY = "src/test/resources/solidity/";
+
     List<Instruction> instructions;
     List<List<Instruction>> methodBodies;
     AbstractDataflow dataflow;
@@ -38,4 +40,28 @@ public class HelperTestInput {
         methodBodies = Main.splitInstructionsIntoMethods(instructions);
         dataflow = DataflowFactory.getDataflow(instructions);
     }
+
+    /**
+     * @param contract name of a test contract, without the .bin.hex extension
+     * @return path of the hex file of the contract
+     */
+    public static String getHexFile(String contract) {
+        return CONTRACT_DIRECTORY + contract + ".bin.hex";
+    }
+
+    /**
+     * @param contract name of a test contract, without the .bin.hex extension
+     * @return the runtime bytecode of the contract
+     */
+    public static byte[] readBinary(String contract) throws IOException {
+        return CompilationHelpers.extractBinaryFromHexFile(getHexFile(contract));
+    }
+
+    /**
+     * @param contract name of a test contract, without the .bin.hex extension
+     * @return the decompiled instructions of the contract, without a dataflow
+     */
+    public static List<Instruction> decompile(String contract) throws IOException {
+        return Main.decompileContract(readBinary(contract));
+    }
 }
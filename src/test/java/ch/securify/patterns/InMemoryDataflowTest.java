@@ -0,0 +1,151 @@
+/*
+ *  Copyright 2018 Secure, Reliable, and Intelligent Systems Lab, ETH Zurich
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+package ch.securify.patterns;
+
+import ch.securify.analysis.AbstractDataflow;
+import ch.securify.analysis.Dataflow;
+import ch.securify.analysis.DataflowFactory;
+import ch.securify.analysis.QueryPlan;
+import ch.securify.analysis.QueryStatistics;
+import ch.securify.decompiler.instructions.Instruction;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class InMemoryDataflowTest {
+
+    @Before
+    public void selectInMemoryDataflow() {
+        DataflowFactory.setDataflowInstanceClass("inmemory");
+    }
+
+    @After
+    public void resetDataflow() {
+        DataflowFactory.setDataflowInstanceClass(null);
+        DataflowFactory.setQueryPlan(null);
+    }
+
+    @Test
+    public void daoIsViolation() throws IOException {
+        String hexViolating = "src/test/resources/solidity/reentrancy.bin.hex";
+        HelperInstructionPattern helperInstructionPattern = new HelperInstructionPattern(hexViolating, new DAO());
+        assertEquals(1, helperInstructionPattern.pattern.violations.size());
+    }
+
+    @Test
+    public void daoIsCompliant() throws IOException {
+        String hexSafe = "src/test/resources/solidity/no-reentrancy.bin.hex";
+        HelperInstructionPattern helperInstructionPattern = new HelperInstructionPattern(hexSafe, new DAO());
+        assertEquals(1, helperInstructionPattern.pattern.safe.size());
+    }
+
+    @Test
+    public void daoIsViolationWithQueryPlan() throws IOException {
+        DAO pattern = new DAO();
+        QueryPlan queryPlan = new QueryPlan();
+        pattern.declareQueries(queryPlan);
+        DataflowFactory.setQueryPlan(queryPlan);
+        HelperInstructionPattern helperInstructionPattern = new HelperInstructionPattern("src/test/resources/solidity/reentrancy.bin.hex", pattern);
+        assertEquals(1, helperInstructionPattern.pattern.violations.size());
+    }
+
+    @Test
+    public void unrestrictedWriteIsViolation() throws IOException {
+        String hex = "src/test/resources/solidity/UnrestrictedWrite.bin.hex";
+        HelperInstructionPattern helperInstructionPattern = new HelperInstructionPattern(hex, new UnrestrictedWrite());
+        assertEquals(1, helperInstructionPattern.pattern.violations.size());
+    }
+
+    @Test
+    public void lockedEtherIsViolation() throws IOException {
+        String hex = "src/test/resources/solidity/LockedEther.bin.hex";
+        ContractPatternTest instructionPatternTest = new ContractPatternTest(hex, new LockedEther());
+        assertEquals(2, instructionPatternTest.pattern.violations.size());
+    }
+
+    @Test
+    public void daoIsViolationWithBatchedMethods() throws IOException {
+        HelperTestInput helperTestInput = new HelperTestInput("src/test/resources/solidity/reentrancy.bin.hex");
+        List<AbstractDataflow> dataflows = DataflowFactory.getDataflows(helperTestInput.methodBodies);
+        DAO pattern = new DAO();
+        for (int i = 0; i < helperTestInput.methodBodies.size(); i++) {
+            List<Instruction> methodBody = helperTestInput.methodBodies.get(i);
+            pattern.checkPattern(methodBody, helperTestInput.instructions, dataflows.get(i));
+        }
+        assertEquals(1, pattern.violations.size());
+    }
+
+    @Test
+    public void daoIsViolationWithOffHeapRelations() throws IOException {
+        int threshold = DataflowFactory.getOffHeapThreshold();
+        // every relation of more than 16 tuples is merged from runs into a memory-mapped file
+        DataflowFactory.setOffHeapThreshold(16);
+        try {
+            HelperInstructionPattern violating = new HelperInstructionPattern("src/test/resources/solidity/reentrancy.bin.hex", new DAO());
+            assertEquals(1, violating.pattern.violations.size());
+            HelperInstructionPattern safe = new HelperInstructionPattern("src/test/resources/solidity/no-reentrancy.bin.hex", new DAO());
+            assertEquals(1, safe.pattern.safe.size());
+        } finally {
+            DataflowFactory.setOffHeapThreshold(threshold);
+        }
+    }
+
+    @Test
+    public void repeatedQueriesAreMemoized() throws IOException {
+        HelperTestInput helperTestInput = new HelperTestInput("src/test/resources/solidity/reentrancy.bin.hex");
+        List<AbstractDataflow> dataflows = DataflowFactory.getDataflows(helperTestInput.methodBodies);
+        QueryStatistics firstRun = new QueryStatistics(), secondRun = new QueryStatistics();
+        for (QueryStatistics statistics : new QueryStatistics[]{firstRun, secondRun}) {
+            DAO pattern = new DAO();
+            for (int i = 0; i < helperTestInput.methodBodies.size(); i++) {
+                ((Dataflow) dataflows.get(i)).setQueryStatistics(statistics);
+                pattern.checkPattern(helperTestInput.methodBodies.get(i), helperTestInput.instructions, dataflows.get(i));
+            }
+            assertEquals(1, pattern.violations.size());
+        }
+        // DAO asks varMayDepOn for every call; the second run finds all answers in the memo
+        QueryStatistics.Kind kind = QueryStatistics.Kind.varMayDepOn;
+        assertTrue(firstRun.getQueries(kind) > 0);
+        assertEquals(firstRun.getQueries(kind), secondRun.getQueries(kind));
+        assertEquals(secondRun.getQueries(kind), secondRun.getHits(kind));
+    }
+
+    @Test
+    public void repeatedSetQueriesAreMemoized() throws IOException {
+        HelperTestInput helperTestInput = new HelperTestInput("src/test/resources/solidity/TODAmount.bin.hex");
+        QueryStatistics firstRun = new QueryStatistics(), secondRun = new QueryStatistics();
+        for (QueryStatistics statistics : new QueryStatistics[]{firstRun, secondRun}) {
+            ((Dataflow) helperTestInput.dataflow).setQueryStatistics(statistics);
+            TODAmount pattern = new TODAmount();
+            for (List<Instruction> methodBody : helperTestInput.methodBodies) {
+                pattern.checkPattern(methodBody, helperTestInput.instructions, helperTestInput.dataflow);
+            }
+        }
+        // TODAmount asks varMustDepOnAll for the amount of every call
+        QueryStatistics.Kind kind = QueryStatistics.Kind.varMustDepOnAll;
+        assertTrue(firstRun.getQueries(kind) > firstRun.getHits(kind));
+        assertEquals(firstRun.getQueries(kind), secondRun.getQueries(kind));
+        assertEquals(secondRun.getQueries(kind), secondRun.getHits(kind));
+    }
+}
@@ -0,0 +1,112 @@
+/*
+ *  Copyright 2018 Secure, Reliable, and Intelligent Systems Lab, ETH Zurich
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+package ch.securify.utils;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+public class IntTupleReaderTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private File write(String content) throws IOException {
+        File file = folder.newFile();
+        Files.write(file.toPath(), content.getBytes(StandardCharsets.US_ASCII));
+        return file;
+    }
+
+    private static List<int[]> read(File file, int arity) throws IOException {
+        List<int[]> tuples = new ArrayList<>();
+        int count = IntTupleReader.read(file, arity, tuple -> tuples.add(tuple.clone()));
+        assertEquals(count, tuples.size());
+        return tuples;
+    }
+
+    private static void assertRejected(File file, int arity, String message) {
+        try {
+            IntTupleReader.read(file, arity, tuple -> {});
+            fail();
+        } catch (IOException e) {
+            assertEquals(message + " in " + file, e.getMessage());
+        }
+    }
+
+    @Test
+    public void emptyFileHasNoTuples() throws IOException {
+        File file = write("");
+        assertEquals(0, IntTupleReader.getArity(file));
+        assertEquals(0, IntTupleReader.read(file, 3, tuple -> fail()));
+    }
+
+    @Test
+    public void tuplesAreParsed() throws IOException {
+        File file = write("0\t-7\t2147483647\r\n-2147483648\t12\t3");
+        assertEquals(3, IntTupleReader.getArity(file));
+        List<int[]> tuples = read(file, 3);
+        assertEquals(2, tuples.size());
+        assertArrayEquals(new int[]{0, -7, Integer.MAX_VALUE}, tuples.get(0));
+        assertArrayEquals(new int[]{Integer.MIN_VALUE, 12, 3}, tuples.get(1));
+    }
+
+    @Test
+    public void wideFileIsReadBack() throws IOException {
+        // the first line is longer than the buffer of getArity
+        int arity = 100;
+        IntTupleList tuples = new IntTupleList(arity);
+        int[] tuple = new int[arity];
+        for (int t = 0; t < 1000; t++) {
+            for (int i = 0; i < arity; i++) {
+                tuple[i] = Integer.MIN_VALUE + t * 1000 + i;
+            }
+            tuples.add(tuple);
+        }
+        File file = folder.newFile();
+        new IntTupleWriter().write(file, Collections.singletonList(tuples));
+
+        assertEquals(arity, IntTupleReader.getArity(file));
+        List<int[]> read = read(file, arity);
+        assertEquals(tuples.size(), read.size());
+        for (int t = 0; t < tuples.size(); t++) {
+            assertArrayEquals(tuples.get(t), read.get(t));
+        }
+    }
+
+    @Test
+    public void malformedFilesAreRejected() throws IOException {
+        assertRejected(write("1\t2\n3\n"), 2, "Unexpected arity 1");
+        assertRejected(write("1\t2\t3\n"), 2, "Unexpected arity 3");
+        assertRejected(write("1\t\n"), 2, "Missing number");
+        assertRejected(write("1\tx\n"), 2, "Unexpected character 'x'");
+        assertRejected(write("1\t2147483648\n"), 2, "Number out of range");
+        assertRejected(write("1\t-2147483649\n"), 2, "Number out of range");
+    }
+}
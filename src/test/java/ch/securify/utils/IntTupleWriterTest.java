@@ -0,0 +1,93 @@
+/*
+ *  Copyright 2018 Secure, Reliable, and Intelligent Systems Lab, ETH Zurich
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+package ch.securify.utils;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.Assert.assertEquals;
+
+public class IntTupleWriterTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static String read(File file) throws IOException {
+        return new String(Files.readAllBytes(file.toPath()), StandardCharsets.US_ASCII);
+    }
+
+    @Test
+    public void valuesAreWrittenInDecimal() throws IOException {
+        IntTupleList tuples = new IntTupleList(3);
+        tuples.add(0, 7, -7);
+        tuples.add(Integer.MAX_VALUE, Integer.MIN_VALUE, 1000000000);
+        File file = folder.newFile();
+        new IntTupleWriter().write(file, Collections.singletonList(tuples));
+        assertEquals("0\t7\t-7\n2147483647\t-2147483648\t1000000000\n", read(file));
+    }
+
+    @Test
+    public void listsAreWrittenInOrder() throws IOException {
+        IntTupleList first = new IntTupleList(1), second = new IntTupleList(1);
+        first.add(1);
+        second.add(2);
+        second.add(3);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        new IntTupleWriter().write(Channels.newChannel(out), Arrays.asList(first, new IntTupleList(1), second));
+        assertEquals("1\n2\n3\n", new String(out.toByteArray(), StandardCharsets.US_ASCII));
+    }
+
+    @Test
+    public void emptyFileIsWritten() throws IOException {
+        File file = folder.newFile();
+        Files.write(file.toPath(), new byte[]{'1', '\n'});
+        new IntTupleWriter().write(file, Collections.singletonList(new IntTupleList(2)));
+        assertEquals("", read(file));
+    }
+
+    @Test
+    public void largeFilesAreFlushedAsTheBufferFills() throws IOException {
+        // several times the buffer, and files written one after the other with the same writer
+        IntTupleWriter writer = new IntTupleWriter();
+        for (int arity : new int[]{1, 5, 40}) {
+            IntTupleList tuples = new IntTupleList(arity);
+            StringBuilder expected = new StringBuilder();
+            int[] tuple = new int[arity];
+            for (int t = 0; t < 20000; t++) {
+                for (int i = 0; i < arity; i++) {
+                    tuple[i] = (t * 31 + i) * (i % 2 == 0 ? 99991 : -7);
+                    expected.append(tuple[i]).append(i + 1 < arity ? '\t' : '\n');
+                }
+                tuples.add(tuple);
+            }
+            File file = folder.newFile();
+            writer.write(file, Collections.singletonList(tuples));
+            assertEquals(expected.toString(), read(file));
+        }
+    }
+}
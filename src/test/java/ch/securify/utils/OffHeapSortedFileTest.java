@@ -0,0 +1,154 @@
+/*
+ *  Copyright 2018 Secure, Reliable, and Intelligent Systems Lab, ETH Zurich
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+package ch.securify.utils;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.TreeSet;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+public class OffHeapSortedFileTest {
+
+    private static final int THRESHOLD = 100;
+
+    /**
+     * Build a set of longs from runs of the threshold size, as the fixpoint does with its output relations.
+     */
+    private static OffHeapSortedFile buildLongs(long[] values) throws IOException {
+        OffHeapSortedFile.Builder builder = new OffHeapSortedFile.Builder(1);
+        long[] run = new long[THRESHOLD];
+        for (int from = 0; from < values.length || from == 0; from += THRESHOLD) {
+            int size = Math.min(THRESHOLD, values.length - from);
+            System.arraycopy(values, from, run, 0, size);
+            builder.addRun(null, run, size);
+        }
+        return builder.build();
+    }
+
+    private static OffHeapSortedFile buildPairs(long[] high, long[] low) throws IOException {
+        OffHeapSortedFile.Builder builder = new OffHeapSortedFile.Builder(2);
+        long[] runHigh = new long[THRESHOLD], runLow = new long[THRESHOLD];
+        for (int from = 0; from < low.length || from == 0; from += THRESHOLD) {
+            int size = Math.min(THRESHOLD, low.length - from);
+            System.arraycopy(high, from, runHigh, 0, size);
+            System.arraycopy(low, from, runLow, 0, size);
+            builder.addRun(runHigh, runLow, size);
+        }
+        return builder.build();
+    }
+
+    private static void assertSameLongs(TreeSet<Long> expected, OffHeapSortedFile set) {
+        assertEquals(expected.size(), set.size());
+        List<Long> values = new ArrayList<>(expected);
+        for (int i = 0; i < values.size(); i++) {
+            long value = values.get(i);
+            assertEquals(value, set.get(i));
+            assertEquals(i, set.lowerBound(value));
+            // the values are even
+            assertEquals(i, set.lowerBound(value - 1));
+            assertFalse(set.contains(value + 1));
+        }
+        assertEquals(values.size(), set.lowerBound(Long.MAX_VALUE));
+        assertFalse(set.contains(Long.MAX_VALUE));
+    }
+
+    private static int runFiles() {
+        File[] files = new File(System.getProperty("java.io.tmpdir")).listFiles((dir, name) -> name.startsWith("securify-run-"));
+        return files == null ? 0 : files.length;
+    }
+
+    @Test
+    public void runsAreMergedWithoutDuplicates() throws IOException {
+        Random random = new Random(1);
+        // around the block size, and overlapping runs of the threshold with duplicates within and across them
+        for (int size : new int[]{1, THRESHOLD - 1, THRESHOLD, THRESHOLD + 1, OffHeapSortedFile.BLOCK_SIZE,
+                2 * OffHeapSortedFile.BLOCK_SIZE + 1, 10 * OffHeapSortedFile.BLOCK_SIZE}) {
+            long[] values = new long[size];
+            TreeSet<Long> expected = new TreeSet<>();
+            for (int i = 0; i < size; i++) {
+                values[i] = (random.nextInt(size) - size / 2) * 2L;
+                expected.add(values[i]);
+            }
+            try (OffHeapSortedFile set = buildLongs(values)) {
+                assertSameLongs(expected, set);
+            }
+        }
+    }
+
+    @Test
+    public void pairsAreOrderedByHighPart() throws IOException {
+        Random random = new Random(2);
+        int size = 3 * OffHeapSortedFile.BLOCK_SIZE;
+        long[] high = new long[size], low = new long[size];
+        // the low parts are even
+        TreeSet<List<Long>> expected = new TreeSet<>((p1, p2) -> SortedLongPairSet.compare(p1.get(0), p1.get(1), p2.get(0), p2.get(1)));
+        for (int i = 0; i < size; i++) {
+            high[i] = random.nextInt(20) - 10;
+            low[i] = (random.nextInt(400) - 200L) * 2;
+            List<Long> pair = new ArrayList<>();
+            pair.add(high[i]);
+            pair.add(low[i]);
+            expected.add(pair);
+        }
+        try (OffHeapSortedFile set = buildPairs(high, low)) {
+            assertEquals(expected.size(), set.size());
+            int i = 0;
+            for (List<Long> pair : expected) {
+                assertEquals((long) pair.get(0), set.getHigh(i));
+                assertEquals((long) pair.get(1), set.getLow(i));
+                assertEquals(i, set.lowerBound(pair.get(0), pair.get(1)));
+                assertEquals(i, set.lowerBound(pair.get(0), pair.get(1) - 1));
+                assertFalse(set.contains(pair.get(0), pair.get(1) + 1));
+                i++;
+            }
+            assertEquals(0, set.lowerBound(Long.MIN_VALUE, 0));
+            assertEquals(set.size(), set.lowerBound(Long.MAX_VALUE, 0));
+        }
+    }
+
+    @Test
+    public void emptySetHasNoEntries() throws IOException {
+        try (OffHeapSortedFile set = buildLongs(new long[0])) {
+            assertEquals(0, set.size());
+            assertEquals(0, set.lowerBound(0));
+            assertFalse(set.contains(0));
+        }
+    }
+
+    @Test
+    public void runsAreDeleted() throws IOException {
+        int runs = runFiles();
+        OffHeapSortedFile.Builder builder = new OffHeapSortedFile.Builder(1);
+        builder.addRun(null, new long[]{3, 1, 2}, 3);
+        builder.addRun(null, new long[]{2, 5}, 2);
+        assertEquals(runs + 2, runFiles());
+        builder.build().close();
+        assertEquals(runs, runFiles());
+
+        builder.addRun(null, new long[]{1}, 1);
+        builder.close();
+        assertEquals(runs, runFiles());
+    }
+}
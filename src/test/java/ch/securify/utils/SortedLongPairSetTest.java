@@ -0,0 +1,85 @@
+/*
+ *  Copyright 2018 Secure, Reliable, and Intelligent Systems Lab, ETH Zurich
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+package ch.securify.utils;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.TreeSet;
+
+import static org.junit.Assert.*;
+
+public class SortedLongPairSetTest {
+
+    @Test
+    public void entriesAreSortedByHighThenLowPart() {
+        long[] high = {2, 1, 2, 1, -1, 2, 7};
+        long[] low = {0, 5, -4, 5, Long.MAX_VALUE, 0, 7};
+        SortedLongPairSet set = new SortedLongPairSet(high, low, 6);
+        assertEquals(4, set.size());
+        long[][] expected = {{-1, Long.MAX_VALUE}, {1, 5}, {2, -4}, {2, 0}};
+        for (int i = 0; i < expected.length; i++) {
+            assertEquals(expected[i][0], set.getHigh(i));
+            assertEquals(expected[i][1], set.getLow(i));
+            assertTrue(set.contains(expected[i][0], expected[i][1]));
+            assertEquals(i, set.lowerBound(expected[i][0], expected[i][1]));
+        }
+        // beyond the given size
+        assertFalse(set.contains(7, 7));
+        // the low part does not match a neighbouring high part
+        assertFalse(set.contains(1, -4));
+        assertEquals(1, set.lowerBound(0, Long.MIN_VALUE));
+        assertEquals(2, set.lowerBound(1, 6));
+        assertEquals(4, set.lowerBound(2, 1));
+    }
+
+    @Test
+    public void emptySetHasNoEntries() {
+        SortedLongPairSet set = new SortedLongPairSet(new long[0], new long[0], 0);
+        assertEquals(0, set.size());
+        assertEquals(0, set.lowerBound(0, 0));
+        assertFalse(set.contains(0, 0));
+    }
+
+    @Test
+    public void randomSetsMatchTreeSet() {
+        Random random = new Random(4);
+        for (int size : new int[]{1, 10, 1000, 100000}) {
+            long[] high = new long[size], low = new long[size];
+            // the low parts are even
+            TreeSet<List<Long>> expected = new TreeSet<>((p1, p2) -> SortedLongPairSet.compare(p1.get(0), p1.get(1), p2.get(0), p2.get(1)));
+            for (int i = 0; i < size; i++) {
+                high[i] = random.nextInt(10);
+                low[i] = (random.nextInt(size) - size / 2) * 2L;
+                expected.add(Arrays.asList(high[i], low[i]));
+            }
+            SortedLongPairSet set = new SortedLongPairSet(high, low, size);
+            assertEquals(expected.size(), set.size());
+            int i = 0;
+            for (List<Long> pair : expected) {
+                assertEquals((long) pair.get(0), set.getHigh(i));
+                assertEquals((long) pair.get(1), set.getLow(i));
+                assertEquals(i, set.lowerBound(pair.get(0), pair.get(1) - 1));
+                assertFalse(set.contains(pair.get(0), pair.get(1) + 1));
+                i++;
+            }
+        }
+    }
+}
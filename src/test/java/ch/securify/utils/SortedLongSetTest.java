@@ -0,0 +1,79 @@
+/*
+ *  Copyright 2018 Secure, Reliable, and Intelligent Systems Lab, ETH Zurich
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+package ch.securify.utils;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.TreeSet;
+
+import static org.junit.Assert.*;
+
+public class SortedLongSetTest {
+
+    @Test
+    public void entriesAreSortedWithoutDuplicates() {
+        long[] values = {5, -3, Long.MAX_VALUE, 5, Long.MIN_VALUE, 0, -3, 9};
+        SortedLongSet set = new SortedLongSet(values, 7);
+        assertEquals(5, set.size());
+        long[] expected = {Long.MIN_VALUE, -3, 0, 5, Long.MAX_VALUE};
+        for (int i = 0; i < expected.length; i++) {
+            assertEquals(expected[i], set.get(i));
+            assertTrue(set.contains(expected[i]));
+            assertEquals(i, set.lowerBound(expected[i]));
+        }
+        // beyond the given size
+        assertFalse(set.contains(9));
+        assertFalse(set.contains(1));
+        assertEquals(3, set.lowerBound(1));
+        assertEquals(1, set.lowerBound(-4));
+    }
+
+    @Test
+    public void emptySetHasNoEntries() {
+        assertEquals(0, SortedLongSet.EMPTY.size());
+        assertEquals(0, SortedLongSet.EMPTY.lowerBound(0));
+        assertFalse(SortedLongSet.EMPTY.contains(0));
+        assertEquals(0, new SortedLongSet(new long[]{1, 2}, 0).size());
+    }
+
+    @Test
+    public void randomSetsMatchTreeSet() {
+        Random random = new Random(3);
+        for (int size : new int[]{1, 10, 1000}) {
+            long[] values = new long[size];
+            TreeSet<Long> expected = new TreeSet<>();
+            for (int i = 0; i < size; i++) {
+                values[i] = random.nextInt(size) * 2L;
+                expected.add(values[i]);
+            }
+            SortedLongSet set = new SortedLongSet(values, size);
+            assertEquals(expected.size(), set.size());
+            List<Long> sorted = new ArrayList<>(expected);
+            for (int i = 0; i < sorted.size(); i++) {
+                assertEquals((long) sorted.get(i), set.get(i));
+                // the values are even
+                assertEquals(i, set.lowerBound(sorted.get(i) - 1));
+                assertFalse(set.contains(sorted.get(i) + 1));
+            }
+            assertEquals(set.size(), set.lowerBound(Long.MAX_VALUE));
+        }
+    }
+}